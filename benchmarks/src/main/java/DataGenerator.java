@@ -0,0 +1,100 @@
+import bench.SecurityNumbers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+// Synthetic school data for benchmarks and trying things out at scale. The same sizes and seed give the same data.
+//   students     enrolled in up to four courses each
+//   courses      taught by one or two of courses / 2 teachers
+//   journal      grades of enrolled students by a teacher of the course, dated over two school years in order
+// Usage: DataGenerator <file> <students> <courses> <journalEntries> [seed]; a file named *.bin is written in binary.
+public class DataGenerator {
+    private static final String[] FIRST_NAMES = {"Anna", "Erik", "Maria", "Lars", "Karin", "Anders", "Eva", "Johan",
+            "Sara", "Per", "Åsa", "Östen", "Linnea", "Mikael", "Ingrid", "Oskar", "Elin", "Björn", "Frida", "Nils"};
+    private static final String[] LAST_NAMES = {"Andersson", "Johansson", "Karlsson", "Nilsson", "Eriksson", "Larsson",
+            "Olsson", "Persson", "Svensson", "Gustafsson", "Lindqvist", "Ågren", "Lund-Berg", "Holm", "Ek", "Björk"};
+    private static final String[] SUBJECTS = {"Mathematics", "Swedish", "English", "History", "Biology", "Chemistry",
+            "Physics", "Art", "Music", "Geography", "Religion", "Civics", "Technology", "Spanish", "German", "Sports"};
+    private static final String[] COMMENTS = {"Well done", "Needs to hand in the lab report", "Great improvement",
+            "Missed the final test", "Solid work"};
+    private static final Grade[] GRADES = Grade.values();
+    private static final LocalDate FIRST_DAY = LocalDate.of(2023, 8, 21);
+    private static final int DAYS = 2 * 365;
+
+    public static SchoolData generate(int studentCount, int courseCount, int journalEntries, long seed) {
+        Random random = new Random(seed);
+        int nextId = 1;
+        List<Course> courses = new ArrayList<>(courseCount);
+        for (int i = 0; i < courseCount; i++) {
+            Course course = new Course(SUBJECTS[i % SUBJECTS.length] + " " + (i / SUBJECTS.length + 1));
+            course.setId(nextId++);
+            courses.add(course);
+        }
+        List<Teacher> teachers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, courseCount / 2); i++) {
+            Teacher teacher = new Teacher(name(random), SecurityNumbers.of(800_000_000 + i), "teacher" + i + "@school.example",
+                    1 + random.nextInt(30));
+            teacher.setId(nextId++);
+            teachers.add(teacher);
+        }
+        for (Course course : courses) {
+            int teachersOfCourse = 1 + random.nextInt(2);
+            for (int i = 0; i < teachersOfCourse; i++) {
+                teachers.get(random.nextInt(teachers.size())).assignCourse(course);
+            }
+        }
+        List<Student> students = new ArrayList<>(studentCount);
+        for (int i = 0; i < studentCount; i++) {
+            Student student = new Student(name(random), SecurityNumbers.of(100_000_000 + i), "student" + i + "@school.example",
+                    1 + random.nextInt(9));
+            student.setId(nextId++);
+            if (!courses.isEmpty()) {
+                int coursesOfStudent = 1 + random.nextInt(4);
+                for (int j = 0; j < coursesOfStudent; j++) {
+                    student.assignCourse(courses.get(random.nextInt(courses.size())));
+                }
+            }
+            students.add(student);
+        }
+        JournalStore journal = new JournalStore(journalEntries);
+        for (int i = 0; i < journalEntries && !students.isEmpty() && !courses.isEmpty(); i++) {
+            Student student = students.get(random.nextInt(students.size()));
+            Course course = student.getCourses().stream().skip(random.nextInt(student.getCourses().size())).findFirst().orElseThrow();
+            List<Teacher> teachersOfCourse = List.copyOf(course.getTeachers());
+            Teacher teacher = teachersOfCourse.get(random.nextInt(teachersOfCourse.size()));
+            // Mostly A-F, now and then NA, ABSENT or SPECIAL
+            Grade grade = GRADES[random.nextInt(10) < 9 ? random.nextInt(6) : 6 + random.nextInt(GRADES.length - 6)];
+            String comment = random.nextInt(4) == 0 ? COMMENTS[random.nextInt(COMMENTS.length)] : null;
+            int day = (int) FIRST_DAY.toEpochDay() + (int) ((long) i * DAYS / Math.max(1, journalEntries));
+            journal.append(course, teacher, student, grade, comment, day);
+        }
+        return new SchoolData(new HashSet<>(courses), new HashSet<>(students), new HashSet<>(teachers), journal,
+                nextId - 1, 0);
+    }
+
+    public static void write(Path file, SchoolData data) throws IOException {
+        SnapshotFormat.forFileName(file).writeAtomically(file, data, false);
+    }
+
+    private static String name(Random random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: DataGenerator <file> <students> <courses> <journalEntries> [seed]");
+            return;
+        }
+        Path file = Path.of(args[0]);
+        SchoolData data = generate(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                args.length > 4 ? Long.parseLong(args[4]) : 42);
+        write(file, data);
+        System.out.println("Wrote " + data.students().size() + " students, " + data.teachers().size() + " teachers, "
+                + data.courses().size() + " courses and " + data.journal().size() + " journal entries to " + file);
+    }
+}
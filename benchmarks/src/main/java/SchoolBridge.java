@@ -0,0 +1,138 @@
+import bench.School;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// The application side of bench.School, in the unnamed package like the application itself
+public class SchoolBridge implements School {
+    private static final long SEED = 42;
+
+    private SchoolSystem system;
+    private Path directory;
+    private List<Course> courses = List.of();
+    private List<Student> students = List.of();
+    // Most students each course may have since setCapacity(): its capacity, or the students it had then if more
+    private Map<Course, Integer> seatLimits = Map.of();
+
+    @Override
+    public void open(String dataFileName, int students, int courses, int journalEntries, boolean logged) throws IOException {
+        directory = Files.createTempDirectory("school-bench");
+        Path dataFile = directory.resolve(dataFileName);
+        DataGenerator.write(dataFile, DataGenerator.generate(students, courses, journalEntries, SEED));
+        // SchoolSystem reads the property once, when it is first used
+        System.setProperty("school.dataFile", dataFile.toString());
+        system = SchoolSystem.getInstance();
+        if (logged) {
+            system.start();
+        } else {
+            system.loadData();
+        }
+        this.courses = system.getCourses().stream().sorted(Comparator.comparing(Course::getSubject)).toList();
+        this.students = system.getStudents().stream().sorted(Comparator.comparingInt(Student::getId)).toList();
+    }
+
+    @Override
+    public void close() throws IOException {
+        system.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Override
+    public int courseCount() {
+        return courses.size();
+    }
+
+    @Override
+    public void displayAllCourses() {
+        system.displayAllCourses();
+    }
+
+    @Override
+    public void showCourseDetails(int course) {
+        system.showCourseDetails(courses.get(course));
+    }
+
+    @Override
+    public void saveData() {
+        system.saveData();
+    }
+
+    @Override
+    public void loadData() {
+        system.loadData();
+    }
+
+    @Override
+    public boolean addStudent(String name, String securityNumber, String email, int classYear) {
+        return system.addStudent(name, securityNumber, email, classYear);
+    }
+
+    @Override
+    public String validatePersonalData(String name, String securityNumber, String email, int year) {
+        return Validator.validatePersonalData(name, securityNumber, email, year);
+    }
+
+    @Override
+    public int checkPersonalData(String name, String securityNumber, String email, int year) {
+        return Validator.checkPersonalData(name, securityNumber, email, year);
+    }
+
+    @Override
+    public int checkSecurityNumber(String securityNumber) {
+        return Validator.checkSecurityNumber(securityNumber);
+    }
+
+    @Override
+    public int[] validateAll(List<String[]> records) {
+        return Validator.validateAll(records, r -> r[0], r -> r[1], r -> r[2], r -> Integer.parseInt(r[3]));
+    }
+
+    @Override
+    public int studentCount() {
+        return students.size();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        Map<Course, Integer> limits = new HashMap<>();
+        for (Course course : courses) {
+            system.setCapacity(course, capacity);
+            limits.put(course, Math.max(capacity, course.getStudents().size()));
+        }
+        seatLimits = limits;
+    }
+
+    @Override
+    public boolean enrollOrLeave(int student, int course) {
+        Student s = students.get(student);
+        Course c = courses.get(course);
+        return s.getCourses().contains(c) || s.isWaitingFor(c) ? system.removeCourse(s, c) : system.assignCourse(s, c);
+    }
+
+    @Override
+    public String checkSeats() {
+        for (Course course : courses) {
+            int enrolled = course.getStudents().size();
+            if (enrolled > seatLimits.getOrDefault(course, Integer.MAX_VALUE)) {
+                return course.getSubject() + " has " + enrolled + " students for " + course.getCapacity() + " seats";
+            }
+            if (enrolled != course.getSeatsTaken()) {
+                return course.getSubject() + " has " + enrolled + " students in " + course.getSeatsTaken() + " seats";
+            }
+            if (course.hasWaitlist() && course.getFreeSeats() > 0) {
+                return course.getSubject() + " has " + course.getFreeSeats() + " free seats while students wait";
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,58 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Adding a new student to a school of the given size. With logged, every add waits for the mutation log,
+// as in the application; without, only validation, indexing and the in-memory change are measured.
+// The school grows by every student added, so keep iterations short.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddStudentBenchmark {
+    // Above the serials the generator uses
+    private static final int FIRST_SERIAL = 500_000_000;
+
+    @Param({"1000", "100000"})
+    int students;
+
+    @Param({"false", "true"})
+    boolean logged;
+
+    private School school;
+    private int serial = FIRST_SERIAL;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        school = School.connect();
+        school.open("data.bin", students, 20, 0, logged);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        school.close();
+    }
+
+    @Benchmark
+    public boolean addStudent() {
+        int n = serial++;
+        return school.addStudent("Added Student " + n, SecurityNumbers.of(n), "added" + n + "@school.example", 1 + n % 9);
+    }
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Threads enrolling random students in a few small courses, and taking them out again, so that seats are
+// contended, courses fill up and students move up from the waitlists. Every iteration ends by checking that
+// no course took more students than it had seats for, and fails the run if one did.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class EnrollmentBenchmark {
+    @Param({"5", "50"})
+    int capacity;
+
+    private School school;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        school = School.connect();
+        school.open("data.bin", 2000, 4, 0, false);
+        school.setCapacity(capacity);
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkSeats() {
+        String problem = school.checkSeats();
+        if (problem != null) {
+            throw new IllegalStateException(problem);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        school.close();
+    }
+
+    @Benchmark
+    public boolean enrollOrLeave() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return school.enrollOrLeave(random.nextInt(school.studentCount()), random.nextInt(school.courseCount()));
+    }
+}
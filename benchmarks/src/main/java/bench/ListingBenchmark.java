@@ -0,0 +1,67 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// The course listing and course details screens, printed into an OutputSink
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingBenchmark {
+    @Param({"1000", "10000"})
+    int students;
+
+    @Param({"50"})
+    int courses;
+
+    @Param({"100000"})
+    int journalEntries;
+
+    private School school;
+    private OutputSink sink;
+    private int courseCount;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        school = School.connect();
+        school.open("data.bin", students, courses, journalEntries, false);
+        courseCount = school.courseCount();
+        sink = OutputSink.install();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sink.uninstall();
+        school.close();
+    }
+
+    @Benchmark
+    public void displayAllCourses() {
+        school.displayAllCourses();
+    }
+
+    // A different course every call, as they differ in size
+    @Benchmark
+    public void showCourseDetails() {
+        school.showCourseDetails(next);
+        next = (next + 1) % courseCount;
+    }
+}
@@ -0,0 +1,41 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+// Stands in for System.out while printing methods are measured. The text is still formatted and encoded,
+// as it would be for a console, but the bytes are only counted, so the terminal isn't measured.
+public class OutputSink extends OutputStream {
+    private final PrintStream original;
+    private long bytes;
+
+    private OutputSink(PrintStream original) {
+        this.original = original;
+    }
+
+    public static OutputSink install() {
+        OutputSink sink = new OutputSink(System.out);
+        System.setOut(new PrintStream(sink, false, StandardCharsets.UTF_8));
+        return sink;
+    }
+
+    public void uninstall() {
+        System.out.flush();
+        System.setOut(original);
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void write(int b) {
+        bytes++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        bytes += len;
+    }
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Saving and loading the whole data file. data.txt is the JSON format written through the GsonProvider
+// adapters, data.bin the binary snapshot for comparison.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param({"data.txt", "data.bin"})
+    String dataFile;
+
+    @Param({"10000"})
+    int students;
+
+    @Param({"200"})
+    int courses;
+
+    @Param({"100000"})
+    int journalEntries;
+
+    private School school;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        school = School.connect();
+        school.open(dataFile, students, courses, journalEntries, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        school.close();
+    }
+
+    @Benchmark
+    public void saveData() {
+        school.saveData();
+    }
+
+    @Benchmark
+    public void loadData() {
+        school.loadData();
+    }
+}
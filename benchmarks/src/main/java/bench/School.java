@@ -0,0 +1,60 @@
+package bench;
+
+import java.io.IOException;
+import java.util.List;
+
+// The application is in the unnamed package, which JMH doesn't accept for benchmark classes and which classes
+// in a package can't import. Benchmarks reach it through this interface, implemented by SchoolBridge in the
+// unnamed package. It has a single implementation, so the JIT inlines calls through it.
+public interface School {
+    // Loads SchoolBridge. SchoolSystem is a singleton, so open() once per JVM; JMH forks one for every trial.
+    static School connect() {
+        try {
+            return (School) Class.forName("SchoolBridge").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("SchoolBridge is not on the class path", e);
+        }
+    }
+
+    // Generates a school into a data file of the given name in a new temporary directory and starts
+    // SchoolSystem on it, with the mutation log if logged, as the application runs
+    void open(String dataFileName, int students, int courses, int journalEntries, boolean logged) throws IOException;
+
+    // Shuts SchoolSystem down and deletes the temporary directory
+    void close() throws IOException;
+
+    int courseCount();
+
+    void displayAllCourses();
+
+    // course is an index into the courses in subject order
+    void showCourseDetails(int course);
+
+    void saveData();
+
+    void loadData();
+
+    boolean addStudent(String name, String securityNumber, String email, int classYear);
+
+    String validatePersonalData(String name, String securityNumber, String email, int year);
+
+    int checkPersonalData(String name, String securityNumber, String email, int year);
+
+    int checkSecurityNumber(String securityNumber);
+
+    // Records of name, security number, email and year as text
+    int[] validateAll(List<String[]> records);
+
+    int studentCount();
+
+    // Sets the capacity of every course. Courses keep the students they have beyond it.
+    void setCapacity(int capacity);
+
+    // Enrolls the student in the course, or puts them on its waitlist, or takes them out of either if they are
+    // in it already. student and course are indexes in id and subject order.
+    boolean enrollOrLeave(int student, int course);
+
+    // Describes the first course with more students than it had seats for since setCapacity(), a seat count that
+    // doesn't match its students, or a free seat while students wait. null if there is none.
+    String checkSeats();
+}
@@ -0,0 +1,24 @@
+package bench;
+
+// Valid security numbers for test data: nine digits and the Luhn check digit Validator expects
+public class SecurityNumbers {
+    // serial must have nine digits
+    public static String of(int serial) {
+        String digits = Integer.toString(serial);
+        if (digits.length() != 9) {
+            throw new IllegalArgumentException("Not nine digits: " + serial);
+        }
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            int digit = digits.charAt(i) - '0';
+            if ((i & 1) == 0) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
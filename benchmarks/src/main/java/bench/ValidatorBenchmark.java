@@ -0,0 +1,159 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Old string based Validator against the error code one, over the same records.
+// Run with -prof gc to compare allocation per operation as well.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+    // Share of records with at least one error
+    @Param({"0", "10"})
+    int invalidPercent;
+
+    private static final int RECORDS = 1024;
+
+    private final List<String[]> records = new ArrayList<>(RECORDS);
+    private int next = 0;
+    private School school;
+
+    @Setup
+    public void setUp() {
+        school = School.connect();
+        Random random = new Random(42);
+        for (int i = 0; i < RECORDS; i++) {
+            String securityNumber = SecurityNumbers.of(100_000_000 + random.nextInt(900_000_000));
+            String email = "person" + i + "@school.se";
+            if (random.nextInt(100) < invalidPercent) {
+                switch (random.nextInt(3)) {
+                    case 0 -> securityNumber = securityNumber.substring(0, 9) + "x";
+                    case 1 -> securityNumber = securityNumber.substring(1);
+                    default -> email = "person" + i;
+                }
+            }
+            records.add(new String[]{"Person " + i, securityNumber, email, Integer.toString(1 + random.nextInt(9))});
+        }
+    }
+
+    private String[] nextRecord() {
+        String[] record = records.get(next);
+        next = (next + 1) % RECORDS;
+        return record;
+    }
+
+    @Benchmark
+    public String legacyValidatePersonalData() {
+        String[] r = nextRecord();
+        return LegacyValidator.validatePersonalData(r[0], r[1], r[2], Integer.parseInt(r[3]));
+    }
+
+    @Benchmark
+    public String validatePersonalData() {
+        String[] r = nextRecord();
+        return school.validatePersonalData(r[0], r[1], r[2], Integer.parseInt(r[3]));
+    }
+
+    @Benchmark
+    public int checkPersonalData() {
+        String[] r = nextRecord();
+        return school.checkPersonalData(r[0], r[1], r[2], Integer.parseInt(r[3]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void legacyValidateBatch(Blackhole blackhole) {
+        for (String[] r : records) {
+            blackhole.consume(LegacyValidator.validatePersonalData(r[0], r[1], r[2], Integer.parseInt(r[3])));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int[] validateAll() {
+        return school.validateAll(records);
+    }
+
+    @Benchmark
+    public int[] checkSecurityNumbers() {
+        int[] results = new int[8];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = school.checkSecurityNumber(nextRecord()[1]);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public String[] legacyValidateSecurityNumbers() {
+        String[] results = new String[8];
+        Arrays.setAll(results, i -> LegacyValidator.validateSecurityNumber(nextRecord()[1]));
+        return results;
+    }
+
+    // Validator as it was before the error codes, kept here as the baseline
+    static class LegacyValidator {
+        static String validatePersonalData(String name, String securityNumber, String email, int year) {
+            ArrayList<String> errors = new ArrayList<>() {
+                @Override
+                public boolean add(String s) {
+                    return !s.isBlank() && super.add(s);
+                }
+            };
+            if (name.isBlank()) {
+                errors.add("blank name");
+            }
+            errors.add(validateSecurityNumber(securityNumber));
+            errors.add(validateEmail(email));
+            if (year <= 0) {
+                errors.add("year must be positive");
+            }
+            return capitalize(String.join(", ", errors));
+        }
+
+        static String validateEmail(String email) {
+            if (email.isBlank()) {
+                return "empty email";
+            } else if (!email.contains("@") || !email.contains(".")) {
+                return "email is not in the format <address>@<domain>.<ext>";
+            }
+            return "";
+        }
+
+        static String capitalize(String string) {
+            return string.isBlank() ? string : string.substring(0, 1).toUpperCase() + string.substring(1);
+        }
+
+        static String validateSecurityNumber(String securityNumber) {
+            if (securityNumber.isBlank()) {
+                return "empty security number";
+            } else if (securityNumber.length() != 10 && securityNumber.length() != 12) {
+                return "security number length must be 10 or 12 digits";
+            } else if (!Pattern.compile("\\d+").matcher(securityNumber).matches()) {
+                return "security number must have decimal digits only";
+            }
+            return "";
+        }
+    }
+}
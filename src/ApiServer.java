@@ -0,0 +1,467 @@
+import Helpers.Metrics;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// JSON over HTTP access to SchoolSystem, listening on localhost only.
+//   GET  /students, /teachers, /courses     lists
+//   GET  /courses/{id}                      teachers, students and their current grades, seats, waitlist, sessions
+//   PUT  /courses/{id}                      {"capacity":n} with 0 for no limit, and/or {"sessions":["MON 08:00-09:30 A101"]},
+//                                           both set as one change
+//   GET  /clashes                           teachers, students and rooms with two sessions at once
+//   POST /students, /teachers, /courses     add, body like {"name":..,"securityNumber":..,"email":..,"classYear":..};
+//                                           409 if the security number, email or subject is taken
+//   POST /enrollments, DELETE /enrollments  {"role":"STUDENT"|"TEACHER","person":id,"course":id}; a student who
+//                                           finds the course full is "waitlisted" and enrolled when a seat frees
+//   GET  /grades?from=2025-08-01&to=2025-12-31&limit=500&offset=0
+//                                           journal entries by date, both dates included and optional, a page of
+//                                           at most limit (500, up to 5000) as {"grades":[..],"nextOffset":n},
+//                                           nextOffset being left out on the last page
+//   POST /grades                            {"course":id,"teacher":id,"student":id,"grade":"A","gradeComment":..}
+//   POST /save                              500 if the data file can't be written
+//   GET  /metrics                           metrics in the Prometheus text format
+// Every request runs on its own thread, a virtual one when the JDK has them (21+). Loading the data file again
+// is left to the menu, as it replaces the model under the requests being answered.
+public class ApiServer {
+    private static final int BACKLOG = 4096;
+    private static final int GRADES_PAGE = 500;
+    private static final int MAX_GRADES_PAGE = 5000;
+
+    private final SchoolSystem system;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Gson gson = GsonProvider.buildGson();
+
+    // Thrown by handlers to answer with an error status and message
+    private static class ApiError extends RuntimeException {
+        private final int status;
+
+        ApiError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public ApiServer(SchoolSystem system, int port) throws IOException {
+        this.system = system;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/students", handler(this::students));
+        server.createContext("/teachers", handler(this::teachers));
+        server.createContext("/courses", handler(this::courses));
+        server.createContext("/enrollments", handler(this::enrollments));
+        server.createContext("/grades", handler(this::grades));
+        server.createContext("/clashes", handler(exchange -> {
+            requireMethod(exchange, "GET");
+            requirePath(exchange, "/clashes");
+            return system.getTimetable().clashes(system.getTeachers(), system.getStudents()).stream()
+                    .map(Timetable.Clash::describe)
+                    .toList();
+        }));
+        server.createContext("/save", handler(exchange -> {
+            requireMethod(exchange, "POST");
+            try {
+                system.saveDataOrThrow(false);
+            } catch (IOException e) {
+                throw new ApiError(500, "Error saving: " + e.getMessage());
+            }
+            return status("saved");
+        }));
+        server.createContext("/metrics", this::metrics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        Object handle(HttpExchange exchange) throws IOException;
+    }
+
+    private HttpHandler handler(Endpoint endpoint) {
+        return exchange -> {
+            long start = Metrics.start();
+            try (exchange) {
+                int status = 200;
+                Object result;
+                try {
+                    result = endpoint.handle(exchange);
+                    // 201 when a POST created something, 200 when it only reports a status
+                    if (exchange.getRequestMethod().equals("POST") && !(result instanceof JsonObject)) {
+                        status = 201;
+                    }
+                } catch (ApiError e) {
+                    status = e.status;
+                    result = error(e.getMessage());
+                } catch (DuplicatePersonalData | DuplicateCourseData e) {
+                    status = 409;
+                    result = error(e.getMessage());
+                } catch (InvalidPersonalData | InvalidCourseData | JsonParseException | IllegalArgumentException e) {
+                    status = 400;
+                    result = error(e.getMessage() != null ? e.getMessage() : "Bad request");
+                } catch (UnloggedChange e) {
+                    status = 500;
+                    result = error(e.getMessage());
+                } catch (RuntimeException e) {
+                    // A bug rather than a bad request
+                    e.printStackTrace();
+                    status = 500;
+                    result = error("Internal error");
+                }
+                byte[] body = gson.toJson(result).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                if (Metrics.ENABLED) {
+                    Metrics.timer("school_api_request_seconds", "Time to answer API requests", "endpoint",
+                            exchange.getRequestMethod() + " " + exchange.getHttpContext().getPath()).stop(start);
+                }
+            }
+        };
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body = Metrics.prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private Object students(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equals("GET")) {
+            requirePath(exchange, "/students");
+            return system.getStudents().stream().sorted(Comparator.comparing(Student::getName)).toList();
+        }
+        requireMethod(exchange, "POST");
+        JsonObject body = readBody(exchange);
+        return system.createStudent(string(body, "name"), string(body, "securityNumber"), string(body, "email"),
+                number(body, "classYear"));
+    }
+
+    private Object teachers(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equals("GET")) {
+            requirePath(exchange, "/teachers");
+            return system.getTeachers().stream().sorted(Comparator.comparing(Teacher::getName)).toList();
+        }
+        requireMethod(exchange, "POST");
+        JsonObject body = readBody(exchange);
+        return system.createTeacher(string(body, "name"), string(body, "securityNumber"), string(body, "email"),
+                number(body, "experienceYear"));
+    }
+
+    private Object courses(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (exchange.getRequestMethod().equals("GET")) {
+            if (path.equals("/courses") || path.equals("/courses/")) {
+                return system.getCourses().stream().sorted(Comparator.comparing(Course::getSubject)).toList();
+            }
+            return courseDetails(courseInPath(path));
+        }
+        if (exchange.getRequestMethod().equals("PUT")) {
+            Course course = courseInPath(path);
+            JsonObject body = readBody(exchange);
+            if (!body.has("capacity") && !body.has("sessions")) {
+                throw new ApiError(400, "Missing field: capacity or sessions");
+            }
+            // Everything is checked before either is set, and both are set as one change
+            List<Session> sessions = null;
+            if (body.has("sessions")) {
+                if (!body.get("sessions").isJsonArray()) {
+                    throw new ApiError(400, "Not a list: sessions");
+                }
+                sessions = new ArrayList<>();
+                for (JsonElement session : body.getAsJsonArray("sessions")) {
+                    if (!session.isJsonPrimitive()) {
+                        throw new ApiError(400, "Not a session: " + session);
+                    }
+                    sessions.add(Session.parse(session.getAsString()));
+                }
+            }
+            Integer capacity = body.has("capacity") ? number(body, "capacity") : null;
+            if (capacity != null && capacity < 0) {
+                throw new ApiError(400, "Capacity can't be negative: " + capacity);
+            }
+            List<Session> newSessions = sessions;
+            system.group(() -> {
+                if (newSessions != null) {
+                    system.setSessions(course, newSessions);
+                }
+                if (capacity != null) {
+                    system.setCapacity(course, capacity);
+                }
+            });
+            return courseDetails(course);
+        }
+        requireMethod(exchange, "POST");
+        requirePath(exchange, "/courses");
+        return system.createCourse(string(readBody(exchange), "subject"));
+    }
+
+    private Course courseInPath(String path) {
+        try {
+            return course(Integer.parseInt(path.substring("/courses/".length())));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new ApiError(404, "No such resource: " + path);
+        }
+    }
+
+    private JsonObject courseDetails(Course course) {
+        JsonObject details = new JsonObject();
+        details.addProperty("id", course.getId());
+        details.addProperty("subject", course.getSubject());
+        JsonArray teachers = new JsonArray();
+        course.getTeachers().stream().sorted(Comparator.comparing(Teacher::getName)).forEach(teacher -> {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", teacher.getId());
+            item.addProperty("name", teacher.getName());
+            teachers.add(item);
+        });
+        details.add("teachers", teachers);
+        JsonArray students = new JsonArray();
+        course.getStudents().stream().sorted(Comparator.comparing(Student::getName)).forEach(student -> {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", student.getId());
+            item.addProperty("name", student.getName());
+            JournalEntry entry = system.getJournalIndex().latest(student, course);
+            if (entry != null) {
+                item.addProperty("grade", entry.getGrade().name());
+                item.addProperty("gradeComment", entry.getGradeComment());
+                item.addProperty("date", entry.getDate().toString());
+            }
+            students.add(item);
+        });
+        details.add("students", students);
+        details.addProperty("capacity", course.getCapacity());
+        details.addProperty("seatsTaken", course.getSeatsTaken());
+        JsonArray waitlist = new JsonArray();
+        course.getWaitlist().forEach(student -> {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", student.getId());
+            item.addProperty("name", student.getName());
+            waitlist.add(item);
+        });
+        details.add("waitlist", waitlist);
+        JsonArray sessions = new JsonArray();
+        course.getSessions().forEach(session -> sessions.add(session.getName()));
+        details.add("sessions", sessions);
+        return details;
+    }
+
+    private Object enrollments(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!method.equals("POST") && !method.equals("DELETE")) {
+            throw new ApiError(405, "Method not allowed: " + method);
+        }
+        JsonObject body = readBody(exchange);
+        int personId = number(body, "person");
+        Person person = switch (Roles.valueOf(string(body, "role"))) {
+            case STUDENT -> system.findStudent(personId);
+            case TEACHER -> system.findTeacher(personId);
+        };
+        if (person == null) {
+            throw new ApiError(404, "No such person: " + personId);
+        }
+        Course course = course(number(body, "course"));
+        boolean changed = method.equals("POST") ? system.assignCourse(person, course) : system.removeCourse(person, course);
+        if (!changed) {
+            throw new ApiError(409, method.equals("POST") ? "Already enrolled or waitlisted" : "Not enrolled or waitlisted");
+        }
+        if (method.equals("DELETE")) {
+            return status("removed");
+        }
+        return status(person.getCourses().contains(course) ? "enrolled" : "waitlisted");
+    }
+
+    private Object grades(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equals("GET")) {
+            requirePath(exchange, "/grades");
+            Map<String, String> query = query(exchange);
+            int limit = parameter(query, "limit", GRADES_PAGE);
+            int offset = parameter(query, "offset", 0);
+            if (limit < 1 || limit > MAX_GRADES_PAGE || offset < 0) {
+                throw new ApiError(400, "limit must be 1 to " + MAX_GRADES_PAGE + " and offset not negative");
+            }
+            // One more than asked for tells whether there is a next page
+            List<JournalEntry> entries = system.getJournalDates()
+                    .between(date(query, "from", LocalDate.MIN), date(query, "to", LocalDate.MAX))
+                    .skip(offset)
+                    .limit(limit + 1L)
+                    .toList();
+            JsonObject page = new JsonObject();
+            page.add("grades", gson.toJsonTree(entries.subList(0, Math.min(limit, entries.size()))));
+            if (entries.size() > limit) {
+                page.addProperty("nextOffset", offset + limit);
+            }
+            return page;
+        }
+        requireMethod(exchange, "POST");
+        JsonObject body = readBody(exchange);
+        Course course = course(number(body, "course"));
+        Teacher teacher = system.findTeacher(number(body, "teacher"));
+        Student student = system.findStudent(number(body, "student"));
+        if (teacher == null || student == null) {
+            throw new ApiError(404, "No such teacher or student");
+        }
+        if (!course.getTeachers().contains(teacher) || !course.getStudents().contains(student)) {
+            throw new ApiError(409, "Teacher and student must both be in the course");
+        }
+        JsonElement comment = body.get("gradeComment");
+        JournalEntry entry = new JournalEntry(course, teacher, student, Grade.valueOf(string(body, "grade")),
+                comment == null || comment.isJsonNull() ? null : comment.getAsString(), LocalDate.now());
+        system.addJournalEntry(entry);
+        return entry;
+    }
+
+    private Course course(int id) {
+        Course course = system.findCourse(id);
+        if (course == null) {
+            throw new ApiError(404, "No such course: " + id);
+        }
+        return course;
+    }
+
+    private JsonObject readBody(HttpExchange exchange) throws IOException {
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            JsonObject body = gson.fromJson(reader, JsonObject.class);
+            if (body == null) {
+                throw new ApiError(400, "Missing request body");
+            }
+            return body;
+        }
+    }
+
+    private static String string(JsonObject body, String field) {
+        JsonElement value = body.get(field);
+        if (value == null || value.isJsonNull()) {
+            throw new ApiError(400, "Missing field: " + field);
+        } else if (!value.isJsonPrimitive()) {
+            throw new ApiError(400, "Not a string: " + field);
+        }
+        return value.getAsString();
+    }
+
+    private static int number(JsonObject body, String field) {
+        JsonElement value = body.get(field);
+        if (value == null || value.isJsonNull()) {
+            throw new ApiError(400, "Missing field: " + field);
+        } else if (!value.isJsonPrimitive()) {
+            throw new ApiError(400, "Not a number: " + field);
+        }
+        try {
+            return value.getAsInt();
+        } catch (NumberFormatException e) {
+            throw new ApiError(400, "Not a number: " + field);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static int parameter(Map<String, String> query, String parameter, int missing) {
+        String value = query.get(parameter);
+        if (value == null) {
+            return missing;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ApiError(400, "Not a number: " + parameter);
+        }
+    }
+
+    private static LocalDate date(Map<String, String> query, String parameter, LocalDate missing) {
+        String value = query.get(parameter);
+        if (value == null) {
+            return missing;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ApiError(400, "Not a date (yyyy-mm-dd): " + parameter);
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new ApiError(405, "Method not allowed: " + exchange.getRequestMethod());
+        }
+    }
+
+    private static void requirePath(HttpExchange exchange, String path) {
+        String requested = exchange.getRequestURI().getPath();
+        if (!requested.equals(path) && !requested.equals(path + "/")) {
+            throw new ApiError(404, "No such resource: " + requested);
+        }
+    }
+
+    private static JsonObject error(String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        return error;
+    }
+
+    private static JsonObject status(String message) {
+        JsonObject status = new JsonObject();
+        status.addProperty("status", message);
+        return status;
+    }
+}
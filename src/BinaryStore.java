@@ -0,0 +1,330 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+// Binary snapshot, read through a memory mapping of the whole file. Layout, all numbers big-endian:
+//   header       magic, version, logSequence (long), maxId, and the number of courses, students,
+//                teachers, enrollments, waitlist entries, sessions, journal entries, sealed journal entries and strings
+//   strings      every name, email, security number, subject, room and comment once: byte length + UTF-8 bytes
+//   courses      fixed 12 bytes: id, subject, capacity (0 for unlimited)
+//   sessions     fixed 16 bytes: course id, start and end as minutes from the start of the week, room
+//   students     fixed 20 bytes: id, name, securityNumber, email, classYear
+//   teachers     fixed 20 bytes: id, name, securityNumber, email, experienceYear
+//   enrollments  fixed 8 bytes: person id, course id
+//   waitlists    fixed 16 bytes: student id, course id, ticket (long)
+//   journal      one column after another: course ids, teacher ids, student ids, comments (-1 for none),
+//                epoch days as ints, then grade ordinals as single bytes
+// Strings are stored as their index in the string table. The journal section only holds the entries after the
+// sealed ones, which are in JournalSegments. Version 1 files have no sealed entries and no count of them, and
+// files before version 3 have no capacities and no waitlists, and before version 4 no sessions.
+public class BinaryStore {
+    static final int MAGIC = 0x534B4F4C; // "SKOL"
+    private static final int VERSION = 4;
+    private static final int NO_STRING = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static void write(Path path, SchoolData data) throws IOException {
+        HashMap<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int sessionCount = 0;
+        for (Course course : data.courses()) {
+            intern(course.getSubject(), stringIndex, strings);
+            for (Session session : course.getSessions()) {
+                intern(session.room(), stringIndex, strings);
+                sessionCount++;
+            }
+        }
+        for (Person person : people(data)) {
+            intern(person.getName(), stringIndex, strings);
+            intern(person.getSecurityNumber(), stringIndex, strings);
+            intern(person.getEmail(), stringIndex, strings);
+        }
+        JournalStore journal = data.journal();
+        int sealed = journal.sealedRows();
+        for (int row = sealed; row < journal.size(); row++) {
+            intern(journal.getComment(row), stringIndex, strings);
+        }
+        int enrollmentCount = 0;
+        for (Person person : people(data)) {
+            enrollmentCount += person.getCourses().size();
+        }
+        int waitlistCount = 0;
+        for (Student student : data.students()) {
+            waitlistCount += student.getWaitlistTickets().size();
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(data.logSequence());
+            out.writeInt(data.maxId());
+            out.writeInt(data.courses().size());
+            out.writeInt(data.students().size());
+            out.writeInt(data.teachers().size());
+            out.writeInt(enrollmentCount);
+            out.writeInt(waitlistCount);
+            out.writeInt(sessionCount);
+            out.writeInt(journal.size());
+            out.writeInt(sealed);
+            out.writeInt(strings.size());
+
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (Course course : data.courses()) {
+                out.writeInt(course.getId());
+                out.writeInt(stringIndex.get(course.getSubject()));
+                out.writeInt(course.getCapacity());
+            }
+            for (Course course : data.courses()) {
+                for (Session session : course.getSessions()) {
+                    out.writeInt(course.getId());
+                    out.writeInt(session.startMinute());
+                    out.writeInt(session.endMinute());
+                    out.writeInt(stringIndex.get(session.room()));
+                }
+            }
+            for (Student student : data.students()) {
+                writePerson(out, student, student.getClassYear(), stringIndex);
+            }
+            for (Teacher teacher : data.teachers()) {
+                writePerson(out, teacher, teacher.getExperienceYear(), stringIndex);
+            }
+            for (Person person : people(data)) {
+                for (Course course : person.getCourses()) {
+                    out.writeInt(person.getId());
+                    out.writeInt(course.getId());
+                }
+            }
+            for (Student student : data.students()) {
+                for (Map.Entry<Course, Long> entry : student.getWaitlistTickets().entrySet()) {
+                    out.writeInt(student.getId());
+                    out.writeInt(entry.getKey().getId());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            for (int row = sealed; row < journal.size(); row++) {
+                out.writeInt(journal.getCourseId(row));
+            }
+            for (int row = sealed; row < journal.size(); row++) {
+                out.writeInt(journal.getTeacherId(row));
+            }
+            for (int row = sealed; row < journal.size(); row++) {
+                out.writeInt(journal.getStudentId(row));
+            }
+            for (int row = sealed; row < journal.size(); row++) {
+                String comment = journal.getComment(row);
+                out.writeInt(comment == null ? NO_STRING : stringIndex.get(comment));
+            }
+            for (int row = sealed; row < journal.size(); row++) {
+                out.writeInt(journal.getEpochDay(row));
+            }
+            for (int row = sealed; row < journal.size(); row++) {
+                out.writeByte(journal.getGrade(row).ordinal());
+            }
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    // Throws IOException if the file is truncated or its counts and string indexes don't add up
+    public static SchoolData read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(path, buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | DateTimeException e) {
+            throw new IOException(path + " is truncated or corrupt: " + e, e);
+        }
+    }
+
+    private static SchoolData read(Path path, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IOException(path + " is not a binary snapshot");
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported binary snapshot version " + version);
+        }
+        long logSequence = buffer.getLong();
+        int maxId = buffer.getInt();
+        int courseCount = buffer.getInt();
+        int studentCount = buffer.getInt();
+        int teacherCount = buffer.getInt();
+        int enrollmentCount = buffer.getInt();
+        int waitlistCount = version < 3 ? 0 : buffer.getInt();
+        int sessionCount = version < 4 ? 0 : buffer.getInt();
+        int journalCount = buffer.getInt();
+        int sealed = version == 1 ? 0 : buffer.getInt();
+        int tailCount = journalCount - sealed;
+        int stringCount = buffer.getInt();
+        if (courseCount < 0 || studentCount < 0 || teacherCount < 0 || enrollmentCount < 0 || waitlistCount < 0
+                || sessionCount < 0 || sealed < 0 || tailCount < 0 || stringCount < 0
+                || stringCount > buffer.remaining() / 4) {
+            throw corrupt(path, "negative or too large counts in the header");
+        }
+        String[] strings = readStrings(path, buffer, stringCount);
+        long sections = courseCount * (version >= 3 ? 12L : 8L) + sessionCount * 16L + studentCount * 20L
+                + teacherCount * 20L + enrollmentCount * 8L + waitlistCount * 16L + tailCount * 21L;
+        if (sections != buffer.remaining()) {
+            throw corrupt(path, "the header counts make " + sections + " bytes after the strings, the file has "
+                    + buffer.remaining());
+        }
+
+        ReferenceResolver resolver = new ReferenceResolver();
+        HashSet<Course> courses = new HashSet<>();
+        for (int i = 0; i < courseCount; i++) {
+            int id = buffer.getInt();
+            Course course = new Course(string(path, strings, buffer.getInt()));
+            course.setId(id);
+            if (version >= 3) {
+                course.setCapacity(buffer.getInt());
+            }
+            resolver.register(course);
+            courses.add(course);
+        }
+        HashMap<Course, List<Session>> sessions = new HashMap<>();
+        for (int i = 0; i < sessionCount; i++) {
+            Course course = resolver.course(buffer.getInt());
+            int start = buffer.getInt();
+            int end = buffer.getInt();
+            sessions.computeIfAbsent(course, c -> new ArrayList<>()).add(session(start, end, string(path, strings, buffer.getInt())));
+        }
+        sessions.forEach(Course::setSessions);
+        HashSet<Student> students = new HashSet<>();
+        for (int i = 0; i < studentCount; i++) {
+            int id = buffer.getInt();
+            Student student = new Student(string(path, strings, buffer.getInt()), string(path, strings, buffer.getInt()),
+                    string(path, strings, buffer.getInt()), buffer.getInt());
+            student.setId(id);
+            resolver.register(student);
+            students.add(student);
+        }
+        HashSet<Teacher> teachers = new HashSet<>();
+        HashMap<Integer, Teacher> teachersById = new HashMap<>();
+        for (int i = 0; i < teacherCount; i++) {
+            int id = buffer.getInt();
+            Teacher teacher = new Teacher(string(path, strings, buffer.getInt()), string(path, strings, buffer.getInt()),
+                    string(path, strings, buffer.getInt()), buffer.getInt());
+            teacher.setId(id);
+            resolver.register(teacher);
+            teachers.add(teacher);
+            teachersById.put(id, teacher);
+        }
+        for (int i = 0; i < enrollmentCount; i++) {
+            int personId = buffer.getInt();
+            Course course = resolver.course(buffer.getInt());
+            Person person = teachersById.containsKey(personId) ? teachersById.get(personId) : resolver.student(personId);
+            person.assignCourse(course);
+        }
+        for (int i = 0; i < waitlistCount; i++) {
+            Student student = resolver.student(buffer.getInt());
+            student.joinWaitlist(resolver.course(buffer.getInt()), buffer.getLong());
+        }
+
+        IntBuffer courseIds = intColumn(buffer, tailCount);
+        IntBuffer teacherIds = intColumn(buffer, tailCount);
+        IntBuffer studentIds = intColumn(buffer, tailCount);
+        IntBuffer comments = intColumn(buffer, tailCount);
+        IntBuffer epochDays = intColumn(buffer, tailCount);
+        ByteBuffer grades = buffer.slice(buffer.position(), tailCount);
+        Grade[] gradeValues = Grade.values();
+        JournalStore journal = new JournalStore(tailCount, sealed);
+        for (int i = 0; i < tailCount; i++) {
+            int comment = comments.get(i);
+            if (grades.get(i) < 0 || grades.get(i) >= gradeValues.length) {
+                throw corrupt(path, "unknown grade " + grades.get(i) + " in journal entry " + (sealed + i));
+            }
+            journal.append(
+                    resolver.course(courseIds.get(i)),
+                    resolver.teacher(teacherIds.get(i)),
+                    resolver.student(studentIds.get(i)),
+                    gradeValues[grades.get(i)],
+                    comment == NO_STRING ? null : string(path, strings, comment),
+                    epochDays.get(i));
+        }
+        return new SchoolData(courses, students, teachers, journal, maxId, logSequence);
+    }
+
+    private static Session session(int startMinute, int endMinute, String room) {
+        DayOfWeek day = DayOfWeek.of(startMinute / Session.MINUTES_PER_DAY + 1);
+        return new Session(day, LocalTime.ofSecondOfDay(startMinute % Session.MINUTES_PER_DAY * 60L),
+                LocalTime.ofSecondOfDay((endMinute - (day.getValue() - 1) * Session.MINUTES_PER_DAY) * 60L), room);
+    }
+
+    private static void intern(String string, HashMap<String, Integer> stringIndex, List<String> strings) {
+        if (string != null && stringIndex.putIfAbsent(string, strings.size()) == null) {
+            strings.add(string);
+        }
+    }
+
+    private static List<Person> people(SchoolData data) {
+        List<Person> people = new ArrayList<>(data.students().size() + data.teachers().size());
+        people.addAll(data.students());
+        people.addAll(data.teachers());
+        return people;
+    }
+
+    private static void writePerson(DataOutputStream out, Person person, int year, HashMap<String, Integer> stringIndex) throws IOException {
+        out.writeInt(person.getId());
+        out.writeInt(stringIndex.get(person.getName()));
+        out.writeInt(stringIndex.get(person.getSecurityNumber()));
+        out.writeInt(stringIndex.get(person.getEmail()));
+        out.writeInt(year);
+    }
+
+    private static String[] readStrings(Path path, ByteBuffer buffer, int count) throws IOException {
+        String[] strings = new String[count];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw corrupt(path, "string " + i + " of " + length + " bytes with " + buffer.remaining() + " left");
+            }
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static String string(Path path, String[] strings, int index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw corrupt(path, "string index " + index + " outside the " + strings.length + " strings");
+        }
+        return strings[index];
+    }
+
+    private static IOException corrupt(Path path, String why) {
+        return new IOException(path + " is corrupt: " + why);
+    }
+
+    // A view of the next count ints that moves the buffer past them
+    private static IntBuffer intColumn(ByteBuffer buffer, int count) {
+        IntBuffer column = buffer.slice(buffer.position(), count * 4).asIntBuffer();
+        buffer.position(buffer.position() + count * 4);
+        return column;
+    }
+}
@@ -0,0 +1,317 @@
+import Helpers.Metrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Loads CSV files in bulk. The header row tells what a file holds:
+//   subject                                    courses
+//   name,securityNumber,email,classYear        students
+//   name,securityNumber,email,experienceYear   teachers
+//   role,securityNumber,subject                enrollments, role being STUDENT or TEACHER
+// Rows are read in chunks and go through parse -> validate -> dedupe -> insert. Parsing and validation run
+// in parallel; deduplication and the insert keep file order, and every chunk is added as one change.
+// People are matched by security number and email and courses by subject, both against the school and earlier rows.
+// Rejected rows are reported with their line numbers in <file>.errors.csv. Students enrolled in a full course
+// join its waitlist, and count as imported.
+public class BulkImporter {
+    private static final int CHUNK_SIZE = 8192;
+    private static final Metrics.Timer CHECK_TIMER = Metrics.timer("school_import_check_seconds",
+            "Time to parse and validate a chunk of imported rows");
+    private static final Metrics.Counter IMPORTED_ROWS = Metrics.counter("school_import_rows_total", "Rows of imported files",
+            "result", "imported");
+    private static final Metrics.Counter REJECTED_ROWS = Metrics.counter("school_import_rows_total", "Rows of imported files",
+            "result", "rejected");
+
+    public enum Kind {
+        COURSES("subject"),
+        STUDENTS("name", "securityNumber", "email", "classYear"),
+        TEACHERS("name", "securityNumber", "email", "experienceYear"),
+        ENROLLMENTS("role", "securityNumber", "subject");
+
+        private final String[] columns;
+
+        Kind(String... columns) {
+            this.columns = columns;
+        }
+
+        static Kind forHeader(String[] header) {
+            for (Kind kind : values()) {
+                if (Arrays.equals(kind.columns, header)) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("Unknown CSV header " + String.join(",", header));
+        }
+    }
+
+    public record RowError(long line, String message) {}
+
+    public record Report(Path file, Kind kind, long rows, int imported, int waitlisted, List<RowError> errors, long nanos) {
+        public String summary() {
+            String summary = String.format("%s: %d of %d %s rows imported in %.2f s (%.0f rows/s)", file, imported, rows,
+                    kind.name().toLowerCase(), nanos / 1e9, rows / Math.max(nanos / 1e9, 1e-9));
+            if (waitlisted > 0) {
+                summary += ", " + waitlisted + " of them on waitlists";
+            }
+            return errors.isEmpty() ? summary
+                    : summary + ", " + errors.size() + " rejected, see " + errorReportFile(file);
+        }
+    }
+
+    // A row after the parallel stage: its fields, or why it was rejected
+    private record Checked(long line, String[] fields, String error) {}
+
+    private record Line(long number, String text) {}
+
+    private final SchoolSystem system;
+
+    public BulkImporter(SchoolSystem system) {
+        this.system = system;
+    }
+
+    public Report importFile(Path file) throws IOException {
+        long start = System.nanoTime();
+        List<RowError> errors = new ArrayList<>();
+        long rows = 0;
+        int imported = 0;
+        int waitlisted = 0;
+        Kind kind;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IllegalArgumentException("Empty file " + file);
+            }
+            // A byte order mark is left in by some spreadsheet exports
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+            kind = Kind.forHeader(Arrays.stream(parseLine(header)).map(String::trim).toArray(String[]::new));
+            List<Line> chunk = new ArrayList<>(CHUNK_SIZE);
+            long number = 1;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                number++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                chunk.add(new Line(number, text));
+                if (chunk.size() == CHUNK_SIZE) {
+                    SchoolSystem.ImportResult result = importChunk(kind, chunk, errors);
+                    imported += result.added();
+                    waitlisted += result.waitlisted();
+                    rows += chunk.size();
+                    chunk.clear();
+                }
+            }
+            SchoolSystem.ImportResult result = importChunk(kind, chunk, errors);
+            imported += result.added();
+            waitlisted += result.waitlisted();
+            rows += chunk.size();
+        }
+        // Rows rejected by the insert come after those rejected by the checks of their chunk
+        errors.sort(Comparator.comparingLong(RowError::line));
+        writeErrorReport(file, errors);
+        IMPORTED_ROWS.add(imported);
+        REJECTED_ROWS.add(errors.size());
+        return new Report(file, kind, rows, imported, waitlisted, errors, System.nanoTime() - start);
+    }
+
+    private SchoolSystem.ImportResult importChunk(Kind kind, List<Line> chunk, List<RowError> errors) {
+        if (chunk.isEmpty()) {
+            return new SchoolSystem.ImportResult(0, 0, Map.of());
+        }
+        long start = Metrics.start();
+        List<Checked> checked = chunk.parallelStream().map(line -> check(kind, line)).toList();
+        CHECK_TIMER.stop(start);
+
+        List<Course> newCourses = new ArrayList<>();
+        List<Student> newStudents = new ArrayList<>();
+        List<Teacher> newTeachers = new ArrayList<>();
+        List<SchoolSystem.Enrollment> enrollments = new ArrayList<>();
+        // Keys of the rows of this chunk; earlier chunks are already in the school
+        UniqueIndex<Course> chunkSubjects = SchoolSystem.subjectIndex();
+        UniqueIndex<Person> chunkSecurityNumbers = SchoolSystem.securityNumberIndex(kind.name().toLowerCase());
+        UniqueIndex<Person> chunkEmails = SchoolSystem.emailIndex(kind.name().toLowerCase());
+        Set<SchoolSystem.Enrollment> seenEnrollments = new HashSet<>();
+        // Line of each entity and enrollment passed on, for those the insert rejects
+        Map<Object, Long> lines = new IdentityHashMap<>();
+        for (Checked row : checked) {
+            if (row.error() != null) {
+                errors.add(new RowError(row.line(), row.error()));
+                continue;
+            }
+            String[] f = row.fields();
+            String duplicate = switch (kind) {
+                case COURSES -> {
+                    Course course = new Course(f[0]);
+                    if (system.findCourseBySubject(f[0]) != null || !chunkSubjects.add(course)) {
+                        yield "course " + f[0] + " already exists";
+                    }
+                    newCourses.add(course);
+                    lines.put(course, row.line());
+                    yield null;
+                }
+                case STUDENTS -> {
+                    if (system.findStudentBySecurityNumber(f[1]) != null || chunkSecurityNumbers.containsKey(f[1])) {
+                        yield "student with security number " + f[1] + " already exists";
+                    } else if (system.findStudentByEmail(f[2]) != null || chunkEmails.containsKey(f[2])) {
+                        yield "student with email " + f[2] + " already exists";
+                    }
+                    Student student = new Student(f[0], f[1], f[2], Integer.parseInt(f[3]));
+                    chunkSecurityNumbers.add(student);
+                    chunkEmails.add(student);
+                    newStudents.add(student);
+                    lines.put(student, row.line());
+                    yield null;
+                }
+                case TEACHERS -> {
+                    if (system.findTeacherBySecurityNumber(f[1]) != null || chunkSecurityNumbers.containsKey(f[1])) {
+                        yield "teacher with security number " + f[1] + " already exists";
+                    } else if (system.findTeacherByEmail(f[2]) != null || chunkEmails.containsKey(f[2])) {
+                        yield "teacher with email " + f[2] + " already exists";
+                    }
+                    Teacher teacher = new Teacher(f[0], f[1], f[2], Integer.parseInt(f[3]));
+                    chunkSecurityNumbers.add(teacher);
+                    chunkEmails.add(teacher);
+                    newTeachers.add(teacher);
+                    lines.put(teacher, row.line());
+                    yield null;
+                }
+                case ENROLLMENTS -> {
+                    Roles role = Roles.valueOf(f[0].toUpperCase());
+                    Person person = switch (role) {
+                        case STUDENT -> system.findStudentBySecurityNumber(f[1]);
+                        case TEACHER -> system.findTeacherBySecurityNumber(f[1]);
+                    };
+                    Course course = system.findCourseBySubject(f[2]);
+                    if (person == null) {
+                        yield "no " + role.name().toLowerCase() + " with security number " + f[1];
+                    } else if (course == null) {
+                        yield "no course " + f[2];
+                    }
+                    SchoolSystem.Enrollment enrollment = new SchoolSystem.Enrollment(person, course);
+                    if (person.getCourses().contains(course) || !seenEnrollments.add(enrollment)) {
+                        yield person.getName() + " is already in " + course.getSubject();
+                    } else if (person instanceof Student student && student.isWaitingFor(course)) {
+                        yield person.getName() + " is already waiting for " + course.getSubject();
+                    }
+                    enrollments.add(enrollment);
+                    lines.put(enrollment, row.line());
+                    yield null;
+                }
+            };
+            if (duplicate != null) {
+                errors.add(new RowError(row.line(), duplicate));
+            }
+        }
+        SchoolSystem.ImportResult result = system.importBatch(newCourses, newStudents, newTeachers, enrollments);
+        result.rejected().forEach((item, reason) -> errors.add(new RowError(lines.get(item), reason)));
+        return result;
+    }
+
+    // Runs on the worker threads: must not touch the maps
+    private static Checked check(Kind kind, Line line) {
+        String[] fields;
+        try {
+            fields = parseLine(line.text());
+        } catch (IllegalArgumentException e) {
+            return new Checked(line.number(), null, e.getMessage());
+        }
+        if (fields.length != kind.columns.length) {
+            return new Checked(line.number(), null,
+                    "expected " + kind.columns.length + " columns, found " + fields.length);
+        }
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+        String error = switch (kind) {
+            case COURSES -> fields[0].isEmpty() ? "empty course name" : "";
+            case STUDENTS, TEACHERS -> {
+                int year;
+                try {
+                    year = Integer.parseInt(fields[3]);
+                } catch (NumberFormatException e) {
+                    yield kind.columns[3] + " is not a number";
+                }
+                yield Validator.describe(Validator.checkPersonalData(fields[0], fields[1], fields[2], year));
+            }
+            case ENROLLMENTS -> {
+                if (!fields[0].equalsIgnoreCase(Roles.STUDENT.name()) && !fields[0].equalsIgnoreCase(Roles.TEACHER.name())) {
+                    yield "role must be student or teacher";
+                }
+                int securityNumberErrors = Validator.checkSecurityNumber(fields[1]);
+                if (securityNumberErrors != Validator.VALID) {
+                    yield Validator.describe(securityNumberErrors);
+                }
+                yield fields[2].isEmpty() ? "empty course name" : "";
+            }
+        };
+        return error.isEmpty() ? new Checked(line.number(), fields, null) : new Checked(line.number(), null, error);
+    }
+
+    // Splits one line of RFC 4180 CSV. Quoted fields may contain commas and doubled quotes, but not line breaks.
+    static String[] parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    static Path errorReportFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".errors.csv");
+    }
+
+    static void writeErrorReport(Path file, List<RowError> errors) throws IOException {
+        Path report = errorReportFile(file);
+        if (errors.isEmpty()) {
+            Files.deleteIfExists(report);
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            writer.write("line,error");
+            writer.newLine();
+            for (RowError error : errors) {
+                writer.write(error.line() + ",\"" + error.message().replace("\"", "\"\"") + "\"");
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -1,25 +1,235 @@
 import Helpers.Named;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Course implements Named {
-    private String subject;
+    public static final int UNLIMITED = 0;
+
+    private int id;
+    private volatile String subject;
+    // Most students the course takes, or UNLIMITED
+    private volatile int capacity = UNLIMITED;
+    // Seats held by the enrolled students. A seat is taken with compareAndSet before a student is added,
+    // so that concurrent enrollments never take more seats than the capacity, and given back when one leaves.
+    private final AtomicInteger seatsTaken = new AtomicInteger();
+    // Reverse side of Student's waitlist, in the order of the tickets the students got when they joined it
+    private final ConcurrentSkipListMap<Long, Student> waitlist = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextTicket = new AtomicLong(1);
+    // The weekly sessions in order of the week, replaced as a whole
+    private volatile List<Session> sessions = List.of();
+    // Reverse side of Person.courses, kept in sync by Person.assignCourse/unassignCourse.
+    // Not saved, the data file only stores enrollments on the person side.
+    private final Set<Teacher> teachers = ConcurrentHashMap.newKeySet();
+    private final Set<Student> students = ConcurrentHashMap.newKeySet();
+    // Index of the school this course belongs to, null for copies
+    private volatile UniqueIndex<?> subjectIndex;
+    private volatile SnapshotClock clock;
+    // When the subject, capacity or sessions last changed, and what they were before if that was after the
+    // snapshot being saved
+    private long changedAt;
+    private String subjectAtSnapshot;
+    private int capacityAtSnapshot;
+    private List<Session> sessionsAtSnapshot;
     
     Course(String subject)
     {
         this.subject = subject;
     }
 
+    public int getId()
+    {
+        return id;
+    }
+
+    void setId(int id)
+    {
+        this.id = id;
+    }
+
+    void setSubjectIndex(UniqueIndex<?> subjectIndex)
+    {
+        this.subjectIndex = subjectIndex;
+    }
+
+    void setSnapshotClock(SnapshotClock clock)
+    {
+        this.clock = clock;
+    }
+
     public String getSubject()
     {
         return subject;
     }
 
-    public void setSubject(String subject)
+    // Throws InvalidCourseData if another course has the subject
+    public synchronized void setSubject(String subject)
     {
+        UniqueIndex<?> index = subjectIndex;
+        if (index != null) {
+            index.rekey(this, this.subject, subject);
+        }
+        changing();
         this.subject = subject;
     }
 
+    // Called with the course locked, before a saved field changes
+    private void changing()
+    {
+        SnapshotClock snapshots = clock;
+        if (snapshots == null) {
+            return;
+        }
+        if (snapshots.keepsState(changedAt)) {
+            subjectAtSnapshot = subject;
+            capacityAtSnapshot = capacity;
+            sessionsAtSnapshot = sessions;
+        }
+        changedAt = snapshots.now();
+    }
+
+    // The subject as it was when the snapshot pinned at the given time was taken
+    public synchronized String getSubject(long snapshotTime)
+    {
+        return changedAt <= snapshotTime ? subject : subjectAtSnapshot;
+    }
+
     @Override
     public String getName() {
         return subject;
     }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Lowering the capacity below the students enrolled leaves them in; new ones wait until enough have left
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity can't be negative: " + capacity);
+        }
+        changing();
+        this.capacity = capacity;
+    }
+
+    // The capacity as it was when the snapshot pinned at the given time was taken
+    public synchronized int getCapacity(long snapshotTime) {
+        return changedAt <= snapshotTime ? capacity : capacityAtSnapshot;
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    public synchronized void setSessions(List<Session> sessions) {
+        changing();
+        this.sessions = sessions.stream().sorted(Comparator.comparingInt(Session::startMinute)).toList();
+    }
+
+    // The sessions as they were when the snapshot pinned at the given time was taken
+    public synchronized List<Session> getSessions(long snapshotTime) {
+        return changedAt <= snapshotTime ? sessions : sessionsAtSnapshot;
+    }
+
+    public int getSeatsTaken() {
+        return seatsTaken.get();
+    }
+
+    public int getFreeSeats() {
+        int limit = capacity;
+        return limit == UNLIMITED ? Integer.MAX_VALUE : Math.max(0, limit - seatsTaken.get());
+    }
+
+    // Takes a seat for a student about to be enrolled, or returns false if the course is full
+    boolean takeSeat() {
+        while (true) {
+            int taken = seatsTaken.get();
+            int limit = capacity;
+            if (limit != UNLIMITED && taken >= limit) {
+                return false;
+            }
+            if (seatsTaken.compareAndSet(taken, taken + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Students waiting for a seat, first in line first
+    public List<Student> getWaitlist() {
+        return List.copyOf(waitlist.values());
+    }
+
+    public boolean hasWaitlist() {
+        return !waitlist.isEmpty();
+    }
+
+    // The student who has waited longest, or null if nobody is waiting
+    Student firstWaiting() {
+        Map.Entry<Long, Student> first = waitlist.firstEntry();
+        return first == null ? null : first.getValue();
+    }
+
+    long newTicket() {
+        return nextTicket.getAndIncrement();
+    }
+
+    // Tickets of loaded waitlists are kept, and new ones come after them
+    void addWaiting(long ticket, Student student) {
+        nextTicket.accumulateAndGet(ticket + 1, Math::max);
+        waitlist.put(ticket, student);
+    }
+
+    void removeWaiting(long ticket) {
+        waitlist.remove(ticket);
+    }
+
+    public Set<Teacher> getTeachers() {
+        return Collections.unmodifiableSet(teachers);
+    }
+
+    public Set<Student> getStudents() {
+        return Collections.unmodifiableSet(students);
+    }
+
+    // A seated student already holds a seat from takeSeat(). Otherwise, as when loading, the student takes one
+    // whatever the capacity.
+    void enroll(Person person, boolean seated) {
+        if (person instanceof Teacher teacher) {
+            teachers.add(teacher);
+        } else if (person instanceof Student student) {
+            if (!seated) {
+                seatsTaken.incrementAndGet();
+            }
+            students.add(student);
+        }
+    }
+
+    void withdraw(Person person) {
+        if (person instanceof Teacher teacher) {
+            teachers.remove(teacher);
+        } else if (person instanceof Student student && students.remove(student)) {
+            seatsTaken.decrementAndGet();
+        }
+    }
+
+    // Courses are the same when they have the same id; until an id is assigned, only to themselves
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return id != 0 && o instanceof Course other && id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id != 0 ? Integer.hashCode(id) : System.identityHashCode(this);
+    }
 }
@@ -0,0 +1,6 @@
+// A course with the same subject already exists
+public class DuplicateCourseData extends InvalidCourseData {
+    public DuplicateCourseData(String description) {
+        super(description);
+    }
+}
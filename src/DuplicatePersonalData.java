@@ -0,0 +1,6 @@
+// A student or teacher with the same security number or email already exists
+public class DuplicatePersonalData extends InvalidPersonalData {
+    public DuplicatePersonalData(String message) {
+        super(message);
+    }
+}
@@ -1,7 +1,32 @@
 import Helpers.Named;
 
 public enum Grade implements Named {
-    A, B, C, D, E, F, NA, ABSENT, SPECIAL;
+    A(5), B(4), C(3), D(2), E(1), F(0), NA, ABSENT, SPECIAL;
+
+    private static final int NOT_GRADED = -1;
+
+    private final int points;
+
+    Grade(int points) {
+        this.points = points;
+    }
+
+    Grade() {
+        this(NOT_GRADED);
+    }
+
+    // Whether the grade is on the A-F scale and counts towards averages
+    public boolean isGraded() {
+        return points != NOT_GRADED;
+    }
+
+    // 5 for A down to 0 for F
+    public int getPoints() {
+        if (!isGraded()) {
+            throw new IllegalStateException(this + " has no points");
+        }
+        return points;
+    }
 
     @Override
     public String getName() {
@@ -0,0 +1,193 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Grade counts per course, per teacher and per class year. Only the grade that currently stands for a student
+// in a course is counted: a newer entry for the same student and course takes the place of the older one.
+// Kept up to date as rows are appended to the journal, so queries are lookups instead of journal scans.
+// Rows must be added in journal order by one thread at a time; queries take only the lock of the group they read.
+public class GradeStats {
+    private static final Grade[] GRADES = Grade.values();
+
+    // Grade counts of one group, indexed by Grade ordinal
+    private static final class Counts {
+        private final int[] counts = new int[GRADES.length];
+
+        synchronized void add(int grade, int delta) {
+            counts[grade] += delta;
+        }
+
+        synchronized Distribution snapshot() {
+            return new Distribution(counts.clone());
+        }
+    }
+
+    // The group a student's standing grade in a course was counted in, so that it can be taken out again
+    private record Counted(int teacherId, int classYear, int grade) {}
+
+    // Counts of all groups together, so that the factories below can fill them in before handing them out
+    private record State(Map<Integer, Counts> byCourse, Map<Integer, Counts> byTeacher, Map<Integer, Counts> byClassYear,
+                         Map<Long, Counted> standing) {
+        State() {
+            this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+    }
+
+    // Grade counts of a group at one point in time
+    public static final class Distribution {
+        private static final Distribution EMPTY = new Distribution(new int[GRADES.length]);
+
+        private final int[] counts;
+
+        private Distribution(int[] counts) {
+            this.counts = counts;
+        }
+
+        public int count(Grade grade) {
+            return counts[grade.ordinal()];
+        }
+
+        public int total() {
+            return Arrays.stream(counts).sum();
+        }
+
+        // Number of A-F grades
+        public int graded() {
+            int graded = 0;
+            for (Grade grade : GRADES) {
+                if (grade.isGraded()) {
+                    graded += counts[grade.ordinal()];
+                }
+            }
+            return graded;
+        }
+
+        // Mean points of the A-F grades, A being 5 and F 0; NaN without any
+        public double average() {
+            int points = 0;
+            for (Grade grade : GRADES) {
+                if (grade.isGraded()) {
+                    points += grade.getPoints() * counts[grade.ordinal()];
+                }
+            }
+            int graded = graded();
+            return graded == 0 ? Double.NaN : (double) points / graded;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Distribution other && Arrays.equals(counts, other.counts);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(counts);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(counts);
+        }
+    }
+
+    private volatile State state = new State();
+
+    // Counts the row as the student's grade in its course, in place of the grade it replaces
+    public void add(JournalStore journal, int row) {
+        add(state, journal, row);
+    }
+
+    // Counts the journal from scratch on all cores, independently of the running counts, to check them against
+    public static GradeStats recompute(JournalStore journal) {
+        // Rows are in journal order, so the standing grade of a student in a course is the highest row
+        Map<Long, Integer> standingRows = IntStream.range(0, journal.size()).parallel().boxed()
+                .collect(Collectors.toConcurrentMap(row -> key(journal.getStudentId(row), journal.getCourseId(row)),
+                        row -> row, Math::max));
+        State recomputed = new State();
+        // Counted in journal order, so that each part of the work reads the rows of only a few journal segments
+        int[] rows = standingRows.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+        Arrays.stream(rows).parallel().forEach(row -> count(recomputed, journal, row));
+        GradeStats stats = new GradeStats();
+        stats.state = recomputed;
+        return stats;
+    }
+
+    // Counts only the given rows, each in place of the grade counted before it for the same student and course
+    public static GradeStats of(JournalStore journal, IntStream rows) {
+        State counted = new State();
+        rows.forEachOrdered(row -> add(counted, journal, row));
+        GradeStats stats = new GradeStats();
+        stats.state = counted;
+        return stats;
+    }
+
+    public Distribution forCourse(Course course) {
+        return distribution(state.byCourse().get(course.getId()));
+    }
+
+    public Distribution forTeacher(Teacher teacher) {
+        return distribution(state.byTeacher().get(teacher.getId()));
+    }
+
+    public Distribution forClassYear(int classYear) {
+        return distribution(state.byClassYear().get(classYear));
+    }
+
+    // Class years with at least one standing grade, keyed by class year
+    public Map<Integer, Distribution> byClassYear() {
+        return snapshot(state.byClassYear());
+    }
+
+    // Whether both have the same counts in every group
+    public boolean sameCounts(GradeStats other) {
+        State mine = state;
+        State theirs = other.state;
+        return snapshot(mine.byCourse()).equals(snapshot(theirs.byCourse()))
+                && snapshot(mine.byTeacher()).equals(snapshot(theirs.byTeacher()))
+                && snapshot(mine.byClassYear()).equals(snapshot(theirs.byClassYear()));
+    }
+
+    private static void add(State state, JournalStore journal, int row) {
+        Counted replaced = state.standing().get(key(journal.getStudentId(row), journal.getCourseId(row)));
+        if (replaced != null) {
+            int courseId = journal.getCourseId(row);
+            state.byCourse().get(courseId).add(replaced.grade(), -1);
+            state.byTeacher().get(replaced.teacherId()).add(replaced.grade(), -1);
+            state.byClassYear().get(replaced.classYear()).add(replaced.grade(), -1);
+        }
+        count(state, journal, row);
+    }
+
+    private static void count(State state, JournalStore journal, int row) {
+        int grade = journal.getGrade(row).ordinal();
+        int teacherId = journal.getTeacherId(row);
+        int classYear = journal.getStudent(row).getClassYear();
+        state.byCourse().computeIfAbsent(journal.getCourseId(row), k -> new Counts()).add(grade, 1);
+        state.byTeacher().computeIfAbsent(teacherId, k -> new Counts()).add(grade, 1);
+        state.byClassYear().computeIfAbsent(classYear, k -> new Counts()).add(grade, 1);
+        state.standing().put(key(journal.getStudentId(row), journal.getCourseId(row)), new Counted(teacherId, classYear, grade));
+    }
+
+    private static Distribution distribution(Counts counts) {
+        return counts == null ? Distribution.EMPTY : counts.snapshot();
+    }
+
+    // Groups whose grades were all replaced are left out, so that equal counts give equal maps
+    private static Map<Integer, Distribution> snapshot(Map<Integer, Counts> groups) {
+        Map<Integer, Distribution> snapshot = new HashMap<>();
+        groups.forEach((group, counts) -> {
+            Distribution distribution = counts.snapshot();
+            if (distribution.total() > 0) {
+                snapshot.put(group, distribution);
+            }
+        });
+        return snapshot;
+    }
+
+    private static long key(int studentId, int courseId) {
+        return ((long) studentId << 32) | (courseId & 0xFFFFFFFFL);
+    }
+}
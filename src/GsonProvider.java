@@ -1,14 +1,28 @@
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GsonProvider
 {
     private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE;
 
     public static Gson buildGson() {
+        return buildGson(new ReferenceResolver());
+    }
+
+    // Entities are written with their id, and references between them (enrollments, journal entries) as ids only.
+    // Courses must come before people and people before the journal, so that every id is known when it is read.
+    public static Gson buildGson(ReferenceResolver resolver) {
         return new GsonBuilder()
                 .registerTypeAdapter(LocalDate.class, new JsonSerializer<LocalDate>() {
                     @Override
@@ -23,7 +37,300 @@ public class GsonProvider
                         return LocalDate.parse(json.getAsString(), formatter);
                     }
                 })
-                .setPrettyPrinting()
+                .registerTypeAdapter(Course.class, new CourseAdapter(resolver).nullSafe())
+                .registerTypeAdapter(Student.class, new StudentAdapter(resolver).nullSafe())
+                .registerTypeAdapter(Teacher.class, new TeacherAdapter(resolver).nullSafe())
+                .registerTypeAdapter(JournalEntry.class, new JournalEntryAdapter(resolver).nullSafe())
                 .create();
     }
+
+    private static class CourseAdapter extends TypeAdapter<Course> {
+        private final ReferenceResolver resolver;
+
+        CourseAdapter(ReferenceResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public void write(JsonWriter out, Course course) throws IOException {
+            out.beginObject();
+            out.name("id").value(course.getId());
+            out.name("subject").value(course.getSubject());
+            if (course.getCapacity() != Course.UNLIMITED) {
+                out.name("capacity").value(course.getCapacity());
+            }
+            if (!course.getSessions().isEmpty()) {
+                out.name("sessions").beginArray();
+                for (Session session : course.getSessions()) {
+                    out.value(session.getName());
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Course read(JsonReader in) throws IOException {
+            int id = 0;
+            String subject = null;
+            int capacity = Course.UNLIMITED;
+            List<Session> sessions = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> id = in.nextInt();
+                    case "subject" -> subject = in.nextString();
+                    case "capacity" -> capacity = in.nextInt();
+                    case "sessions" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            sessions.add(readSession(in));
+                        }
+                        in.endArray();
+                    }
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            if (id <= 0) {
+                return resolver.legacyCourse(subject);
+            }
+            Course course = new Course(subject);
+            course.setId(id);
+            course.setCapacity(capacity);
+            course.setSessions(sessions);
+            resolver.register(course);
+            return course;
+        }
+    }
+
+    private static Session readSession(JsonReader in) throws IOException {
+        String text = in.nextString();
+        try {
+            return Session.parse(text);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(e.getMessage() + " at " + in.getPath());
+        }
+    }
+
+    // Files saved before entities had ids embed a copy of what they refer to; returns the field naming it
+    private static String legacyKey(JsonReader in, String field) throws IOException {
+        String key = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals(field) && in.peek() == JsonToken.STRING) {
+                key = in.nextString();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (key == null) {
+            throw new JsonParseException("Missing " + field + " at " + in.getPath());
+        }
+        return key;
+    }
+
+    private static abstract class PersonAdapter<P extends Person> extends TypeAdapter<P> {
+        protected final ReferenceResolver resolver;
+        private final String yearField;
+
+        PersonAdapter(ReferenceResolver resolver, String yearField) {
+            this.resolver = resolver;
+            this.yearField = yearField;
+        }
+
+        abstract int getYear(P person);
+
+        abstract P create(String name, String securityNumber, String email, int year);
+
+        abstract void register(P person);
+
+        @Override
+        public void write(JsonWriter out, P person) throws IOException {
+            out.beginObject();
+            out.name("id").value(person.getId());
+            out.name("name").value(person.getName());
+            out.name("securityNumber").value(person.getSecurityNumber());
+            out.name("email").value(person.getEmail());
+            out.name(yearField).value(getYear(person));
+            out.name("courses").beginArray();
+            for (Course course : person.getCourses()) {
+                out.value(course.getId());
+            }
+            out.endArray();
+            // Students waiting for seats, with their tickets
+            Map<Course, Long> waitlist = person.getWaitlistTickets();
+            if (!waitlist.isEmpty()) {
+                out.name("waitlist").beginArray();
+                for (Map.Entry<Course, Long> entry : waitlist.entrySet()) {
+                    out.beginObject();
+                    out.name("course").value(entry.getKey().getId());
+                    out.name("ticket").value(entry.getValue());
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public P read(JsonReader in) throws IOException {
+            int id = 0;
+            String name = null;
+            String securityNumber = null;
+            String email = null;
+            int year = 0;
+            List<Course> courses = new ArrayList<>();
+            Map<Course, Long> waitlist = new HashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                switch (field) {
+                    case "id" -> id = in.nextInt();
+                    case "name" -> name = in.nextString();
+                    case "securityNumber" -> securityNumber = in.nextString();
+                    case "email" -> email = in.nextString();
+                    case "courses" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            courses.add(in.peek() == JsonToken.BEGIN_OBJECT
+                                    ? resolver.legacyCourse(legacyKey(in, "subject")) : resolver.course(in.nextInt()));
+                        }
+                        in.endArray();
+                    }
+                    case "waitlist" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            Course course = null;
+                            long ticket = 0;
+                            in.beginObject();
+                            while (in.hasNext()) {
+                                switch (in.nextName()) {
+                                    case "course" -> course = resolver.course(in.nextInt());
+                                    case "ticket" -> ticket = in.nextLong();
+                                    default -> in.skipValue();
+                                }
+                            }
+                            in.endObject();
+                            waitlist.put(course, ticket);
+                        }
+                        in.endArray();
+                    }
+                    default -> {
+                        if (field.equals(yearField)) {
+                            year = in.nextInt();
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                }
+            }
+            in.endObject();
+            P person = create(name, securityNumber, email, year);
+            person.setId(id);
+            // Gives a person from a file without ids theirs before the courses hold on to them
+            register(person);
+            courses.forEach(person::assignCourse);
+            if (person instanceof Student student) {
+                waitlist.forEach(student::joinWaitlist);
+            }
+            return person;
+        }
+    }
+
+    private static class StudentAdapter extends PersonAdapter<Student> {
+        StudentAdapter(ReferenceResolver resolver) {
+            super(resolver, "classYear");
+        }
+
+        @Override
+        int getYear(Student student) {
+            return student.getClassYear();
+        }
+
+        @Override
+        Student create(String name, String securityNumber, String email, int year) {
+            return new Student(name, securityNumber, email, year);
+        }
+
+        @Override
+        void register(Student student) {
+            resolver.register(student);
+        }
+    }
+
+    private static class TeacherAdapter extends PersonAdapter<Teacher> {
+        TeacherAdapter(ReferenceResolver resolver) {
+            super(resolver, "experienceYear");
+        }
+
+        @Override
+        int getYear(Teacher teacher) {
+            return teacher.getExperienceYear();
+        }
+
+        @Override
+        Teacher create(String name, String securityNumber, String email, int year) {
+            return new Teacher(name, securityNumber, email, year);
+        }
+
+        @Override
+        void register(Teacher teacher) {
+            resolver.register(teacher);
+        }
+    }
+
+    private static class JournalEntryAdapter extends TypeAdapter<JournalEntry> {
+        private final ReferenceResolver resolver;
+
+        JournalEntryAdapter(ReferenceResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public void write(JsonWriter out, JournalEntry entry) throws IOException {
+            out.beginObject();
+            out.name("course").value(entry.getCourse().getId());
+            out.name("teacher").value(entry.getTeacher().getId());
+            out.name("student").value(entry.getStudent().getId());
+            out.name("grade").value(entry.getGrade().name());
+            out.name("gradeComment").value(entry.getGradeComment());
+            out.name("date").value(entry.getDate().format(formatter));
+            out.endObject();
+        }
+
+        @Override
+        public JournalEntry read(JsonReader in) throws IOException {
+            Course course = null;
+            Teacher teacher = null;
+            Student student = null;
+            Grade grade = null;
+            String gradeComment = null;
+            LocalDate date = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "course" -> course = in.peek() == JsonToken.BEGIN_OBJECT
+                            ? resolver.legacyCourse(legacyKey(in, "subject")) : resolver.course(in.nextInt());
+                    case "teacher" -> teacher = in.peek() == JsonToken.BEGIN_OBJECT
+                            ? resolver.legacyTeacher(legacyKey(in, "securityNumber")) : resolver.teacher(in.nextInt());
+                    case "student" -> student = in.peek() == JsonToken.BEGIN_OBJECT
+                            ? resolver.legacyStudent(legacyKey(in, "securityNumber")) : resolver.student(in.nextInt());
+                    case "grade" -> grade = Grade.valueOf(in.nextString());
+                    case "gradeComment" -> {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            gradeComment = in.nextString();
+                        }
+                    }
+                    case "date" -> date = LocalDate.parse(in.nextString(), formatter);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new JournalEntry(course, teacher, student, grade, gradeComment, date);
+        }
+    }
 }
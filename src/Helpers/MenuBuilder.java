@@ -7,6 +7,8 @@ public class MenuBuilder {
     private final ArrayList<Runnable> callbacks = new ArrayList<>();
     private String header = "Please select an option.";
     private boolean singleShot = false;
+    // Rendered the first time the menu runs, and again only after it changes
+    private TextMenu.Rendered rendered;
 
     public MenuBuilder(String header, String exitItem) {
         this.header = header;
@@ -23,6 +25,7 @@ public class MenuBuilder {
 
     public MenuBuilder setHeader(String header) {
         this.header = header;
+        rendered = null;
         return this;
     }
 
@@ -34,11 +37,15 @@ public class MenuBuilder {
     public MenuBuilder addItem(String item, Runnable callback) {
         items.add(item);
         callbacks.add(callback);
+        rendered = null;
         return this;
     }
 
     public void runMenu() {
-        TextMenu.menuLoop(header, items.toArray(new String[0]), callbacks.toArray(new Runnable[0]), singleShot);
+        if (rendered == null) {
+            rendered = TextMenu.Rendered.of(header, items.toArray(new String[0]));
+        }
+        TextMenu.menuLoop(rendered, callbacks.toArray(new Runnable[0]), singleShot);
     }
 
 }
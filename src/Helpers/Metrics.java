@@ -0,0 +1,331 @@
+package Helpers;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Latency histograms, counters and gauges of the running application. Shown in the Diagnostics menu, served
+// in the Prometheus text format and registered as the JMX bean school:type=Metrics.
+// Turned off with -Dschool.metrics=false: ENABLED is then a constant false, so the JIT drops the timing code.
+// Timings above -Dschool.metrics.slowMillis (100 by default) are also kept in a small trace of slow operations.
+//
+//     long start = Metrics.start();
+//     try { ... } finally { TIMER.stop(start); }
+public final class Metrics {
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("school.metrics"));
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("school.metrics.slowMillis", 100));
+    private static final int SLOW_TRACE_SIZE = 64;
+
+    // A series is a metric name with at most one label, as name{label="value"}
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private static final Map<String, String> help = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<Span> slow = new AtomicReferenceArray<>(SLOW_TRACE_SIZE);
+    private static final AtomicLong slowCount = new AtomicLong();
+
+    static {
+        gauge("jvm_heap_used_bytes", "Heap in use", () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    private Metrics() {
+    }
+
+    public static final class Timer {
+        private final String series;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Timer(String series) {
+            this.series = series;
+        }
+
+        public void stop(long start) {
+            if (ENABLED) {
+                long nanos = System.nanoTime() - start;
+                histogram.record(nanos);
+                if (nanos >= SLOW_NANOS) {
+                    traceSlow(series, nanos);
+                }
+            }
+        }
+
+        public String getSeries() {
+            return series;
+        }
+
+        public LatencyHistogram.Snapshot snapshot() {
+            return histogram.snapshot();
+        }
+    }
+
+    public static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            if (ENABLED) {
+                count.increment();
+            }
+        }
+
+        public void add(long amount) {
+            if (ENABLED) {
+                count.add(amount);
+            }
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    private record Gauge(LongSupplier value) {}
+
+    // An operation that took longer than the slow threshold
+    public record Span(String series, Instant end, long nanos, String thread) {}
+
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Timers are created once per series; keep them in static fields where the series is fixed
+    public static Timer timer(String name, String description) {
+        return timer(name, description, null, null);
+    }
+
+    public static Timer timer(String name, String description, String label, String value) {
+        help.putIfAbsent(name, description);
+        return timers.computeIfAbsent(series(name, label, value), Timer::new);
+    }
+
+    public static Counter counter(String name, String description) {
+        return counter(name, description, null, null);
+    }
+
+    public static Counter counter(String name, String description, String label, String value) {
+        help.putIfAbsent(name, description);
+        return counters.computeIfAbsent(series(name, label, value), series -> new Counter());
+    }
+
+    // value is read whenever the metrics are shown or exported; a later gauge of the same series replaces it
+    public static void gauge(String name, String description, LongSupplier value) {
+        help.putIfAbsent(name, description);
+        gauges.put(name, new Gauge(value));
+    }
+
+    public static Map<String, LatencyHistogram.Snapshot> timers() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+        timers.values().stream()
+                .sorted(Comparator.comparing(Timer::getSeries))
+                .forEach(timer -> snapshots.put(timer.getSeries(), timer.snapshot()));
+        return snapshots;
+    }
+
+    public static Map<String, Long> counters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        counters.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(counter -> values.put(counter.getKey(), counter.getValue().get()));
+        return values;
+    }
+
+    public static Map<String, Long> gauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        gauges.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(gauge -> values.put(gauge.getKey(), gauge.getValue().value().getAsLong()));
+        return values;
+    }
+
+    // The latest slow operations, newest first
+    public static List<Span> slowOperations() {
+        List<Span> spans = new ArrayList<>();
+        long newest = slowCount.get();
+        for (long i = newest - 1; i >= Math.max(0, newest - SLOW_TRACE_SIZE); i--) {
+            Span span = slow.get((int) (i % SLOW_TRACE_SIZE));
+            if (span != null) {
+                spans.add(span);
+            }
+        }
+        return spans;
+    }
+
+    // Everything in the Prometheus text format; timers as summaries in seconds
+    public static String prometheus() {
+        StringBuilder out = new StringBuilder();
+        Set<String> described = new HashSet<>();
+        gauges().forEach((series, value) -> {
+            describe(out, described, series, "gauge");
+            out.append(series).append(' ').append(value).append('\n');
+        });
+        counters().forEach((series, value) -> {
+            describe(out, described, series, "counter");
+            out.append(series).append(' ').append(value).append('\n');
+        });
+        timers().forEach((series, snapshot) -> {
+            describe(out, described, series, "summary");
+            for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                out.append(withLabel(series, "quantile", Double.toString(quantile))).append(' ')
+                        .append(seconds(snapshot.getPercentile(quantile))).append('\n');
+            }
+            out.append(suffixed(series, "_sum")).append(' ').append(seconds(snapshot.getSum())).append('\n');
+            out.append(suffixed(series, "_count")).append(' ').append(snapshot.getCount()).append('\n');
+        });
+        return out.toString();
+    }
+
+    // Written to a temporary file first, so that a collector never reads half a file
+    public static void writePrometheus(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, prometheus(), StandardCharsets.UTF_8);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Makes the metrics readable over JMX, e.g. with jconsole; does nothing when metrics are off or already registered
+    public static void registerMBean() {
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("school:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException e) {
+            System.out.println("Warning: metrics are not available over JMX: " + e.getMessage());
+        }
+    }
+
+    private static void traceSlow(String series, long nanos) {
+        long slot = slowCount.getAndIncrement();
+        slow.set((int) (slot % SLOW_TRACE_SIZE), new Span(series, Instant.now(), nanos, Thread.currentThread().getName()));
+    }
+
+    private static String series(String name, String label, String value) {
+        return label == null ? name : withLabel(name, label, value);
+    }
+
+    private static String withLabel(String series, String label, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        int labels = series.indexOf('{');
+        return labels < 0
+                ? series + "{" + label + "=\"" + escaped + "\"}"
+                : series.substring(0, series.length() - 1) + "," + label + "=\"" + escaped + "\"}";
+    }
+
+    private static String suffixed(String series, String suffix) {
+        int labels = series.indexOf('{');
+        return labels < 0 ? series + suffix : series.substring(0, labels) + suffix + series.substring(labels);
+    }
+
+    private static String name(String series) {
+        int labels = series.indexOf('{');
+        return labels < 0 ? series : series.substring(0, labels);
+    }
+
+    private static void describe(StringBuilder out, Set<String> described, String series, String type) {
+        String name = name(series);
+        if (described.add(name)) {
+            out.append("# HELP ").append(name).append(' ').append(help.getOrDefault(name, name)).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    // Every series as read-only attributes, timers as count, mean, 99th percentile and max in milliseconds
+    private static class MetricsMBean implements DynamicMBean {
+        private static Map<String, Object> attributes() {
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            gauges().forEach(attributes::put);
+            counters().forEach(attributes::put);
+            timers().forEach((series, snapshot) -> {
+                attributes.put(series + " count", snapshot.getCount());
+                attributes.put(series + " mean ms", snapshot.getMean() / 1e6);
+                attributes.put(series + " p99 ms", snapshot.getPercentile(0.99) / 1e6);
+                attributes.put(series + " max ms", snapshot.getMax() / 1e6);
+            });
+            return attributes;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = attributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Object> attributes = attributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                if (attributes.containsKey(name)) {
+                    list.add(new Attribute(name, attributes.get(name)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            if (actionName.equals("prometheus")) {
+                return prometheus();
+            }
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Collection<Map.Entry<String, Object>> attributes = attributes().entrySet();
+            MBeanAttributeInfo[] infos = attributes.stream()
+                    .map(attribute -> new MBeanAttributeInfo(attribute.getKey(), attribute.getValue().getClass().getName(),
+                            attribute.getKey(), true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            MBeanOperationInfo prometheus = new MBeanOperationInfo("prometheus", "All metrics in the Prometheus text format",
+                    null, String.class.getName(), MBeanOperationInfo.INFO);
+            return new MBeanInfo(getClass().getName(), "School system metrics", infos, null,
+                    new MBeanOperationInfo[]{prometheus}, null);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package Helpers;
+
+import java.util.List;
+
+// Ordered items that can be read a page at a time, starting next to an item already shown
+public interface PageSource<T> {
+    // Up to count items following the cursor, or the first items when the cursor is null
+    List<T> pageAfter(T cursor, int count);
+
+    // Up to count items preceding the cursor, in order
+    List<T> pageBefore(T cursor, int count);
+
+    // Up to count items starting with the first one whose name is not before the prefix
+    List<T> pageFrom(String prefix, int count);
+
+    int size();
+}
@@ -1,17 +1,30 @@
 package Helpers;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.util.Scanner;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 public class SafeInput {
+    private static SafeInput console;
+
     Scanner scanner;
 
     public  SafeInput(Scanner sc) {
         scanner = sc;
     }
 
+    // The one reader of System.in for the whole process. A Scanner reads ahead, so input piped in for the next
+    // prompt would be lost with the Scanner that buffered it if every prompt made its own.
+    public static synchronized SafeInput console() {
+        if (console == null) {
+            console = new SafeInput(new Scanner(new BufferedReader(new InputStreamReader(System.in), 1 << 16)));
+        }
+        return console;
+    }
+
     public static String readBetweenBraces(Scanner sc) {
         Pattern delim = sc.delimiter();
         sc.useDelimiter("\\(");
@@ -33,6 +46,10 @@ public class SafeInput {
             try {
                 System.out.println(prompt);
                 result = getMethod.get();
+                // Each value is on a line of its own, so the next nextLine() reads the next line
+                if (scanner.hasNextLine()) {
+                    scanner.nextLine();
+                }
             } catch (Exception e) {
                 System.out.println("Wrong input: (" + e + "). Try again.");
                 scanner.nextLine();
@@ -0,0 +1,9 @@
+package Helpers;
+
+import java.util.List;
+
+// Finds up to limit items matching what the user typed; an empty query matches everything
+@FunctionalInterface
+public interface Search<T> {
+    List<T> find(String query, int limit);
+}
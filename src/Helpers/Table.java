@@ -0,0 +1,97 @@
+package Helpers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+// Text table with fixed column widths, like "| %-20s | %10s |" formats. The header and separator lines
+// are built once; rows are padded with plain appends instead of parsing a format for every row.
+// As with printf, values wider than their column are not cut.
+public class Table<T> {
+    private record Column<T>(String title, int width, boolean alignRight, Function<T, ?> value) {}
+
+    private final List<Column<T>> columns = new ArrayList<>();
+    private String header;
+    private String separator;
+    private String padding = "";
+
+    public Table<T> addColumn(String title, int width, Function<T, ?> value) {
+        return add(new Column<>(title, width, false, value));
+    }
+
+    public Table<T> addRightAlignedColumn(String title, int width, Function<T, ?> value) {
+        return add(new Column<>(title, width, true, value));
+    }
+
+    private Table<T> add(Column<T> column) {
+        columns.add(column);
+        header = null;
+        if (column.width() > padding.length()) {
+            padding = " ".repeat(column.width());
+        }
+        return this;
+    }
+
+    public String getHeader() {
+        if (header == null) {
+            StringBuilder line = new StringBuilder();
+            StringBuilder dashes = new StringBuilder();
+            for (Column<T> column : columns) {
+                line.append("| ");
+                appendCell(line, column.title(), column);
+                line.append(' ');
+                dashes.append('|').append("-".repeat(column.width() + 2));
+            }
+            header = line.append('|').toString();
+            separator = dashes.append('|').toString();
+        }
+        return header;
+    }
+
+    public String getSeparator() {
+        getHeader();
+        return separator;
+    }
+
+    public void appendRow(Appendable out, T row) {
+        try {
+            for (Column<T> column : columns) {
+                out.append("| ");
+                Object value = column.value().apply(row);
+                appendCell(out, value == null ? "" : value.toString(), column);
+                out.append(' ');
+            }
+            out.append('|').append(System.lineSeparator());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Header, separator and the rows
+    public void print(Appendable out, Iterable<T> rows) {
+        try {
+            out.append(getHeader()).append(System.lineSeparator());
+            out.append(getSeparator()).append(System.lineSeparator());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (T row : rows) {
+            appendRow(out, row);
+        }
+    }
+
+    private void appendCell(Appendable out, String text, Column<T> column) {
+        try {
+            int gap = Math.max(0, column.width() - text.length());
+            if (column.alignRight()) {
+                out.append(padding, 0, gap).append(text);
+            } else {
+                out.append(text).append(padding, 0, gap);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package Helpers;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+
+// Shows a long table one page at a time. Pages are read from the source next to the page on screen,
+// so moving around never sorts or walks the whole list, and each page is written out in one go.
+public class TablePager<T> {
+    public static final int PAGE_SIZE = 25;
+
+    private final Table<T> table;
+    private final PageSource<T> source;
+    private final int pageSize;
+
+    public TablePager(Table<T> table, PageSource<T> source) {
+        this(table, source, PAGE_SIZE);
+    }
+
+    public TablePager(Table<T> table, PageSource<T> source, int pageSize) {
+        this.table = table;
+        this.source = source;
+        this.pageSize = pageSize;
+    }
+
+    public void run(String emptyListMessage) {
+        List<T> page = source.pageAfter(null, pageSize);
+        if (page.isEmpty()) {
+            System.out.println(emptyListMessage);
+            return;
+        }
+        // Not closed, that would close System.out
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        SafeInput si = SafeInput.console();
+        while (true) {
+            table.print(out, page);
+            int total = source.size();
+            if (total <= pageSize) {
+                out.flush();
+                return;
+            }
+            out.println(page.size() + " of " + total + " shown");
+            out.flush();
+            String command = si.nextLine("Enter: next page, -: previous page, letters: jump to name, 0: back").trim();
+            List<T> next;
+            if (command.equals("0")) {
+                return;
+            } else if (command.isEmpty()) {
+                next = source.pageAfter(page.get(page.size() - 1), pageSize);
+                if (next.isEmpty()) {
+                    System.out.println("Last page.");
+                    return;
+                }
+            } else if (command.equals("-")) {
+                next = source.pageBefore(page.get(0), pageSize);
+                if (next.isEmpty()) {
+                    System.out.println("First page.");
+                    continue;
+                }
+            } else {
+                next = source.pageFrom(command, pageSize);
+                if (next.isEmpty()) {
+                    System.out.println("Nothing from " + command + " on.");
+                    continue;
+                }
+            }
+            page = next;
+        }
+    }
+}
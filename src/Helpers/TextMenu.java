@@ -1,20 +1,44 @@
 package Helpers;
 
 import java.util.List;
-import java.util.Scanner;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 public class TextMenu {
+    // Lists longer than this are searched instead of printed in full
+    public static final int SEARCH_LIMIT = 10;
+    // Lists longer than this are shown a page at a time
+    public static final int PAGE_SIZE = 20;
+    // The timer label of picking from a list; the item can't be the label, as every name picked would be a new series
+    private static final String PICK_ACTION = "pick from list";
+
+    // The text of a menu, rendered once for the header and options array it was made with.
+    // options[0] is the exit option, shown last as 0.
+    public record Rendered(String header, String[] options, String text) {
+        public static Rendered of(String header, String[] options) {
+            StringBuilder menuText = new StringBuilder(header + "\n");
+            for (int i = 1; i < options.length; i++) menuText.append(i).append(". ").append(options[i]).append("\n");
+            menuText.append("0. ").append(options[0]);
+            return new Rendered(header, options, menuText.toString());
+        }
+
+        // Whether this is the text of the header and options; the options are compared by identity,
+        // so a menu whose suppliers return the same array is rendered once
+        public boolean renders(String header, String[] options) {
+            return this.options == options && this.header.equals(header);
+        }
+    }
+
     public static int menu(String header, String[] options) {
         if (options.length < 1) {
             return -1;
         }
-        StringBuilder menuText = new StringBuilder(header + "\n");
-        for (int i = 1; i < options.length; i++) menuText.append(i).append(". ").append(options[i]).append("\n");
-        menuText.append("0. ").append(options[0]);
-        SafeInput si = new SafeInput(new Scanner(System.in));
-        return si.nextInt(menuText.toString(), "No such option in the menu", 0, options.length-1);
+        return menu(Rendered.of(header, options));
+    }
+
+    public static int menu(Rendered menu) {
+        return SafeInput.console().nextInt(menu.text(), "No such option in the menu", 0, menu.options().length - 1);
     }
 
     public static void menuLoop(String header, String[] options, Runnable[] choiceCallbacks, boolean singleShot) {
@@ -33,41 +57,200 @@ public class TextMenu {
         menuLoop(header, () -> options, () -> choiceCallbacks, singleShot);
     }
 
+    public static void menuLoop(Rendered menu, Runnable[] choiceCallbacks, boolean singleShot) {
+        menuLoop(menu::header, menu::options, () -> choiceCallbacks, menu, singleShot);
+    }
+
     public static void menuLoop(Supplier<String> header, Supplier<String[]> options, Supplier<Runnable[]> choiceCallbacks, boolean singleShot) {
+        menuLoop(header, options, choiceCallbacks, null, singleShot);
+    }
+
+    // rendered is the text of the options if known already
+    private static void menuLoop(Supplier<String> header, Supplier<String[]> options, Supplier<Runnable[]> choiceCallbacks, Rendered rendered, boolean singleShot) {
         int choice;
         do {
-            choice = menu(header.get(), options.get());
+            String[] shown = options.get();
+            String title = header.get();
+            if (shown.length < 1) {
+                return;
+            }
+            if (rendered == null || !rendered.renders(title, shown)) {
+                rendered = Rendered.of(title, shown);
+            }
+            choice = menu(rendered);
             if (choice > 0) {
-                choiceCallbacks.get()[choice-1].run();
+                run(shown[choice], choiceCallbacks.get()[choice-1]);
             }
         } while(choice > 0 && !singleShot);
     }
 
+    // Menu actions are timed by their label, including the time spent waiting for input. Labels must come from a
+    // fixed set, such as the options of the menus in the code, as each one is a series kept for good.
+    private static void run(String action, Runnable callback) {
+        if (!Metrics.ENABLED) {
+            callback.run();
+            return;
+        }
+        Metrics.Timer timer = Metrics.timer("school_menu_action_seconds", "Time spent in a menu action, including waiting for input",
+                "action", action);
+        long start = Metrics.start();
+        try {
+            callback.run();
+        } finally {
+            timer.stop(start);
+        }
+    }
+
     public static <T extends Named> void listMenuLoop(String header, String exit, String emptyListMessage, Supplier<List<T>> listSupplier, Consumer<T> choiceCallback, boolean singleShot) {
         List<T> list = listSupplier.get();
-        if (list.isEmpty()) {
+        listMenuLoop(header, exit, emptyListMessage, () -> list, () -> 0, choiceCallback, singleShot);
+    }
+
+    // The list is only fetched and rendered again when the version has moved since it was last shown.
+    // Lists longer than PAGE_SIZE are shown a page at a time, each page rendered the first time it's shown.
+    public static <T extends Named> void listMenuLoop(String header, String exit, String emptyListMessage, Supplier<List<T>> listSupplier, LongSupplier version, Consumer<T> choiceCallback, boolean singleShot) {
+        PagedMenu<T> menu = null;
+        long shownVersion = 0;
+        do {
+            long current = version.getAsLong();
+            if (menu == null || current != shownVersion) {
+                menu = new PagedMenu<>(header, exit, listSupplier.get());
+                shownVersion = current;
+            }
+            if (menu.items.isEmpty()) {
+                System.out.println(emptyListMessage);
+                return;
+            }
+            T item = menu.pick();
+            if (item == null) {
+                return;
+            }
+            run(PICK_ACTION, () -> choiceCallback.accept(item));
+        } while (!singleShot);
+    }
+
+    public static <T extends Named> void listMenuLoop(String header, String exit, String emptyListMessage, List<T> list, Consumer<T> choiceCallback, boolean singleShot) {
+        listMenuLoop(header,exit,emptyListMessage, () -> list, choiceCallback, singleShot);
+    }
+
+    // Type to filter: short lists are offered as they are, longer ones are searched with searchPick().
+    // The search runs again for every choice, so the list can change between them.
+    public static <T extends Named> void listMenuLoop(String header, String exit, String emptyListMessage, Search<T> search, Consumer<T> choiceCallback, boolean singleShot) {
+        if (search.find("", 1).isEmpty()) {
             System.out.println(emptyListMessage);
             return;
         }
-        String[] options = new String[list.size() + 1];
-        options[0] = exit;
-        Runnable[] callbacks = new Runnable[list.size()];
-        for (int i = 0; i < list.size(); i++) {
-            T item = list.get(i);
-            options[i+1] = item.getName();
-            callbacks[i] = () -> choiceCallback.accept(item);
+        T item;
+        while ((item = searchPick(header, exit, search)) != null) {
+            choiceCallback.accept(item);
+            if (singleShot || search.find("", 1).isEmpty()) {
+                return;
+            }
         }
-        menuLoop(header, options, callbacks, singleShot);
     }
 
-    public static <T extends Named> void listMenuLoop(String header, String exit, String emptyListMessage, List<T> list, Consumer<T> choiceCallback, boolean singleShot) {
-        listMenuLoop(header,exit,emptyListMessage, () -> list, choiceCallback, singleShot);
+    // Lets the user pick an item, or returns null if they choose exit. Up to SEARCH_LIMIT items are listed,
+    // with more the user types the first letters of a word and picks one of the best matches.
+    public static <T extends Named> T searchPick(String header, String exit, Search<T> search) {
+        List<T> all = search.find("", SEARCH_LIMIT + 1);
+        if (all.size() <= SEARCH_LIMIT) {
+            int choice = menu(header, options(exit, all));
+            return choice > 0 ? all.get(choice - 1) : null;
+        }
+        SafeInput si = SafeInput.console();
+        while (true) {
+            String query = si.nextLine(header + " (type the first letters, empty for " + exit + ")").trim();
+            if (query.isEmpty()) {
+                return null;
+            }
+            List<T> matches = search.find(query, SEARCH_LIMIT);
+            if (matches.isEmpty()) {
+                System.out.println("No matches for " + query + ".");
+                continue;
+            }
+            int choice = menu("Matches for " + query + ":", options("Search again", matches));
+            if (choice > 0) {
+                return matches.get(choice - 1);
+            }
+        }
+    }
+
+    // A list menu. Up to PAGE_SIZE items it's an ordinary menu; longer lists show PAGE_SIZE items at a time,
+    // numbered through the whole list, so any number can be picked from any page.
+    private static final class PagedMenu<T extends Named> {
+        private final String header;
+        private final String exit;
+        private final List<T> items;
+        private final String[] pages;
+        private Rendered single;
+        private int page;
+
+        PagedMenu(String header, String exit, List<T> items) {
+            this.header = header;
+            this.exit = exit;
+            this.items = items;
+            pages = new String[(items.size() + PAGE_SIZE - 1) / PAGE_SIZE];
+        }
+
+        T pick() {
+            if (items.size() <= PAGE_SIZE) {
+                if (single == null) {
+                    single = Rendered.of(header, options(exit, items));
+                }
+                int choice = menu(single);
+                return choice > 0 ? items.get(choice - 1) : null;
+            }
+            SafeInput si = SafeInput.console();
+            while (true) {
+                String command = si.nextLine(page(page)).trim();
+                if (command.equals("0")) {
+                    return null;
+                } else if (command.isEmpty()) {
+                    page = (page + 1) % pages.length;
+                } else if (command.equals("-")) {
+                    page = (page + pages.length - 1) % pages.length;
+                } else {
+                    try {
+                        int choice = Integer.parseInt(command);
+                        if (choice >= 1 && choice <= items.size()) {
+                            return items.get(choice - 1);
+                        }
+                    } catch (NumberFormatException e) {
+                        // Falls through to the message below
+                    }
+                    System.out.println("No such option in the menu");
+                }
+            }
+        }
+
+        private String page(int index) {
+            if (pages[index] == null) {
+                int from = index * PAGE_SIZE;
+                int to = Math.min(items.size(), from + PAGE_SIZE);
+                StringBuilder text = new StringBuilder(header).append(" (page ").append(index + 1).append(" of ")
+                        .append(pages.length).append(")\n");
+                for (int i = from; i < to; i++) {
+                    text.append(i + 1).append(". ").append(items.get(i).getName()).append("\n");
+                }
+                text.append("0. ").append(exit).append("\n");
+                text.append("Enter: next page, -: previous page, number: choose");
+                pages[index] = text.toString();
+            }
+            return pages[index];
+        }
+    }
+
+    private static <T extends Named> String[] options(String exit, List<T> items) {
+        String[] options = new String[items.size() + 1];
+        options[0] = exit;
+        for (int i = 0; i < items.size(); i++) {
+            options[i + 1] = items.get(i).getName();
+        }
+        return options;
     }
 
     public static boolean yesNoQuestion(String question) {
-        System.out.println(question + " (y/N)");
-        Scanner sc = new Scanner(System.in);
-        String response = sc.nextLine();
-        return response.trim().toLowerCase().charAt(0) == 'y';
+        String response = SafeInput.console().nextLine(question + " (y/N)").trim().toLowerCase();
+        return !response.isEmpty() && response.charAt(0) == 'y';
     }
 }
@@ -0,0 +1,349 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Rows of the journal ordered by date, rows of the same day in journal order. Days and rows are kept in two
+// parallel arrays, so a date range is found with two binary searches and read as a slice: O(log n + k).
+// Entries are nearly always graded today, so an append lands at the end of the arrays. An entry dated before
+// the last one goes into a small sorted array of late rows instead, merged into the main arrays when it fills up,
+// and range queries merge the two. Appends are serialized; readers work on the immutable Snapshot they read.
+// Only rows held in memory are in the arrays. Sealed rows are found through the day range in the header of each
+// segment and the day order stored in it, so a query reads only the segments that have days it asks for.
+public class JournalDateIndex {
+    private static final int MAX_LATE = 4096;
+    private static final long[] NO_LATE = new long[0];
+
+    // The main arrays are only written beyond size after a snapshot is published and late is never written,
+    // so a snapshot never changes. Late rows are packed as day << 32 | row, which sorts like the main arrays.
+    // The arrays hold the rows from the first one on. Rows sealed after that are also in their segments
+    // until trim() is called, and queries leave them out of the arrays.
+    private record Snapshot(JournalStore journal, int first, int[] days, int[] rows, int size, long[] late) {}
+
+    private volatile Snapshot snapshot = new Snapshot(new JournalStore(), 0, new int[16], new int[16], 0, NO_LATE);
+
+    public synchronized void add(int row) {
+        Snapshot current = snapshot;
+        int day = current.journal().getEpochDay(row);
+        int size = current.size();
+        int[] days = current.days();
+        int[] rows = current.rows();
+        if (size == 0 || days[size - 1] <= day) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size + (size >> 1));
+                rows = Arrays.copyOf(rows, days.length);
+            }
+            days[size] = day;
+            rows[size] = row;
+            snapshot = new Snapshot(current.journal(), current.first(), days, rows, size + 1, current.late());
+            return;
+        }
+        long[] old = current.late();
+        long key = key(day, row);
+        int at = -Arrays.binarySearch(old, key) - 1;
+        long[] late = new long[old.length + 1];
+        System.arraycopy(old, 0, late, 0, at);
+        late[at] = key;
+        System.arraycopy(old, at, late, at + 1, old.length - at);
+        snapshot = late.length < MAX_LATE
+                ? new Snapshot(current.journal(), current.first(), days, rows, size, late)
+                : merged(current.journal(), current.first(), days, rows, size, late);
+    }
+
+    // Indexes the rows held in memory
+    public synchronized void rebuild(JournalStore journal) {
+        int first = journal.sealedRows();
+        int size = journal.size() - first;
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = key(journal.getEpochDay(first + i), first + i);
+        }
+        Arrays.parallelSort(keys);
+        int[] days = new int[Math.max(16, size)];
+        int[] rows = new int[days.length];
+        for (int i = 0; i < size; i++) {
+            days[i] = day(keys[i]);
+            rows[i] = row(keys[i]);
+        }
+        snapshot = new Snapshot(journal, first, days, rows, size, NO_LATE);
+    }
+
+    // Lets go of the rows sealed since the index was built
+    public synchronized void trim() {
+        Snapshot current = snapshot;
+        int sealed = current.journal().sealedRows();
+        if (sealed <= current.first()) {
+            return;
+        }
+        int[] days = new int[Math.max(16, current.size())];
+        int[] rows = new int[days.length];
+        int size = 0;
+        for (int i = 0; i < current.size(); i++) {
+            if (current.rows()[i] >= sealed) {
+                days[size] = current.days()[i];
+                rows[size++] = current.rows()[i];
+            }
+        }
+        long[] late = Arrays.stream(current.late()).filter(key -> row(key) >= sealed).toArray();
+        snapshot = new Snapshot(current.journal(), sealed, days, rows, size, late);
+    }
+
+    public int size() {
+        Snapshot current = snapshot;
+        return current.first() + current.size() + current.late().length;
+    }
+
+    // Date of the earliest entry, or null if the journal is empty. Sealed rows still in the arrays are
+    // also in a segment, so they don't change the earliest or latest date.
+    public LocalDate first() {
+        Snapshot current = snapshot;
+        int first = Integer.MAX_VALUE;
+        for (JournalSegments.Header header : sealedHeaders(current.journal())) {
+            first = Math.min(first, header.minDay());
+        }
+        if (current.size() > 0) {
+            first = Math.min(first, current.days()[0]);
+        }
+        if (current.late().length > 0) {
+            first = Math.min(first, day(current.late()[0]));
+        }
+        return first == Integer.MAX_VALUE ? null : LocalDate.ofEpochDay(first);
+    }
+
+    // Date of the latest entry, or null if the journal is empty. Late rows are always before the last main row.
+    public LocalDate last() {
+        Snapshot current = snapshot;
+        int last = Integer.MIN_VALUE;
+        for (JournalSegments.Header header : sealedHeaders(current.journal())) {
+            last = Math.max(last, header.maxDay());
+        }
+        if (current.size() > 0) {
+            last = Math.max(last, current.days()[current.size() - 1]);
+        }
+        return last == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(last);
+    }
+
+    // Number of entries from one date to another, both included. Segments entirely within the dates are
+    // counted from their headers.
+    public int count(LocalDate from, LocalDate to) {
+        Snapshot current = snapshot;
+        int fromDay = epochDay(from);
+        int toDay = epochDay(to);
+        int sealed = current.journal().sealedRows();
+        int count = 0;
+        for (JournalSegments.Header header : sealedHeaders(current.journal())) {
+            if (header.minDay() >= fromDay && header.maxDay() <= toDay) {
+                count += JournalSegments.SEGMENT_ROWS;
+            } else if (header.maxDay() >= fromDay && header.minDay() <= toDay) {
+                JournalSegments.Segment segment = current.journal().segments().get(header.index());
+                count += upperBound(segment, toDay) - segment.lowerBound(fromDay);
+            }
+        }
+        if (sealed > current.first()) {
+            return count + memoryRows(current, fromDay, toDay).length;
+        }
+        int main = upperBound(current.days(), current.size(), toDay) - lowerBound(current.days(), current.size(), fromDay);
+        int late = lateEnd(current.late(), toDay) - lateStart(current.late(), fromDay);
+        return count + Math.max(0, main) + Math.max(0, late);
+    }
+
+    // Journal rows of the entries from one date to another, both included, by date
+    public int[] rowsBetween(LocalDate from, LocalDate to) {
+        Snapshot current = snapshot;
+        int fromDay = epochDay(from);
+        int toDay = epochDay(to);
+        int[] memory = memoryRows(current, fromDay, toDay);
+        long[] sealed = sealedKeys(current.journal(), fromDay, toDay);
+        if (sealed.length == 0) {
+            return memory;
+        }
+        // Sealed rows come before the rows in memory, but not always on earlier days
+        long[] keys = Arrays.copyOf(sealed, sealed.length + memory.length);
+        for (int i = 0; i < memory.length; i++) {
+            keys[sealed.length + i] = key(current.journal().getEpochDay(memory[i]), memory[i]);
+        }
+        Arrays.sort(keys);
+        int[] rows = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            rows[i] = row(keys[i]);
+        }
+        return rows;
+    }
+
+    // Rows in memory of the entries from one day to another, by date, leaving out rows that have been sealed
+    private static int[] memoryRows(Snapshot current, int fromDay, int toDay) {
+        int[] rows = unsealedRows(current, fromDay, toDay);
+        int sealed = current.journal().sealedRows();
+        return sealed > current.first() ? Arrays.stream(rows).filter(row -> row >= sealed).toArray() : rows;
+    }
+
+    private static int[] unsealedRows(Snapshot current, int fromDay, int toDay) {
+        int start = lowerBound(current.days(), current.size(), fromDay);
+        int end = Math.max(start, upperBound(current.days(), current.size(), toDay));
+        long[] late = current.late();
+        int lateStart = lateStart(late, fromDay);
+        int lateEnd = Math.max(lateStart, lateEnd(late, toDay));
+        if (lateStart == lateEnd) {
+            return Arrays.copyOfRange(current.rows(), start, end);
+        }
+        // Merge the late rows in by day and then by row
+        int[] days = current.days();
+        int[] rows = current.rows();
+        int[] merged = new int[end - start + lateEnd - lateStart];
+        int i = start;
+        int j = lateStart;
+        for (int k = 0; k < merged.length; k++) {
+            if (j == lateEnd || (i < end && key(days[i], rows[i]) < late[j])) {
+                merged[k] = rows[i++];
+            } else {
+                merged[k] = row(late[j++]);
+            }
+        }
+        return merged;
+    }
+
+    // Like rowsBetween(), without copying the rows first when they are all in memory and none of them is late
+    public IntStream streamRows(LocalDate from, LocalDate to) {
+        Snapshot current = snapshot;
+        int fromDay = epochDay(from);
+        int toDay = epochDay(to);
+        boolean inSegments = sealedHeaders(current.journal()).stream()
+                .anyMatch(header -> header.maxDay() >= fromDay && header.minDay() <= toDay);
+        if (inSegments || current.journal().sealedRows() > current.first()
+                || lateEnd(current.late(), toDay) > lateStart(current.late(), fromDay)) {
+            return IntStream.of(rowsBetween(from, to));
+        }
+        int[] rows = current.rows();
+        return IntStream.range(lowerBound(current.days(), current.size(), fromDay),
+                upperBound(current.days(), current.size(), toDay)).map(i -> rows[i]);
+    }
+
+    // Entries from one date to another, both included, by date
+    public Stream<JournalEntry> between(LocalDate from, LocalDate to) {
+        JournalStore journal = snapshot.journal();
+        return streamRows(from, to).mapToObj(journal::get);
+    }
+
+    // Entries dated on the day or later
+    public Stream<JournalEntry> since(LocalDate from) {
+        return between(from, LocalDate.MAX);
+    }
+
+    // Sealed rows of the entries from one day to another, packed as day << 32 | row, by date
+    private static long[] sealedKeys(JournalStore journal, int fromDay, int toDay) {
+        List<JournalSegments.Header> headers = sealedHeaders(journal);
+        long[] keys = new long[0];
+        int count = 0;
+        for (JournalSegments.Header header : headers) {
+            if (header.maxDay() < fromDay || header.minDay() > toDay) {
+                continue;
+            }
+            JournalSegments.Segment segment = journal.segments().get(header.index());
+            int start = segment.lowerBound(fromDay);
+            int end = upperBound(segment, toDay);
+            if (count + end - start > keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(count + end - start, keys.length * 2));
+            }
+            for (int i = start; i < end; i++) {
+                int offset = segment.byDay[i];
+                keys[count++] = key(segment.epochDays[offset], header.firstRow() + offset);
+            }
+        }
+        return count == keys.length ? keys : Arrays.copyOf(keys, count);
+    }
+
+    // Headers of the segments that hold the sealed rows
+    private static List<JournalSegments.Header> sealedHeaders(JournalStore journal) {
+        JournalSegments segments = journal.segments();
+        int sealed = journal.sealedRows() / JournalSegments.SEGMENT_ROWS;
+        if (segments == null || sealed == 0) {
+            return List.of();
+        }
+        List<JournalSegments.Header> headers = segments.headers();
+        return headers.subList(0, Math.min(sealed, headers.size()));
+    }
+
+    // Position in the day order of the segment after the last row dated on or before the day
+    private static int upperBound(JournalSegments.Segment segment, int day) {
+        return day == Integer.MAX_VALUE ? segment.byDay.length : segment.lowerBound(day + 1);
+    }
+
+    private static Snapshot merged(JournalStore journal, int first, int[] days, int[] rows, int size, long[] late) {
+        int[] mergedDays = new int[size + late.length + ((size + late.length) >> 1)];
+        int[] mergedRows = new int[mergedDays.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < size + late.length; k++) {
+            if (j == late.length || (i < size && key(days[i], rows[i]) < late[j])) {
+                mergedDays[k] = days[i];
+                mergedRows[k] = rows[i++];
+            } else {
+                mergedDays[k] = day(late[j]);
+                mergedRows[k] = row(late[j++]);
+            }
+        }
+        return new Snapshot(journal, first, mergedDays, mergedRows, size + late.length, NO_LATE);
+    }
+
+    private static long key(int day, int row) {
+        return ((long) day << 32) | row;
+    }
+
+    private static int day(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int row(long key) {
+        return (int) key;
+    }
+
+    // Dates beyond what fits in an int are clamped, the journal holds none of them
+    private static int epochDay(LocalDate date) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+
+    // First late row dated on or after the day
+    private static int lateStart(long[] late, int day) {
+        int at = Arrays.binarySearch(late, key(day, 0));
+        return at >= 0 ? at : -at - 1;
+    }
+
+    // Index after the last late row dated on or before the day
+    private static int lateEnd(long[] late, int day) {
+        if (day == Integer.MAX_VALUE) {
+            return late.length;
+        }
+        return lateStart(late, day + 1);
+    }
+
+    // First index whose day is at least day
+    private static int lowerBound(int[] days, int size, int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First index whose day is after day
+    private static int upperBound(int[] days, int size, int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The rows of each student in each course, by (student, course): the latest one, which counts as the grade,
+// and for every row the one before it of the same student and course. The chain is one int per journal row,
+// so a history only reads its own rows and older rows stay in their segments.
+// Rows must be added in journal order.
+public class JournalIndex {
+    public static final int NO_ROW = -1;
+
+    private final JournalStore journal;
+    private final ConcurrentHashMap<Long, Integer> latest = new ConcurrentHashMap<>();
+    // previous[row] is the row before it of the same student and course, or NO_ROW
+    private int[] previous = new int[1024];
+
+    public JournalIndex(JournalStore journal) {
+        this.journal = journal;
+    }
+
+    public synchronized void add(int row) {
+        if (row >= previous.length) {
+            previous = Arrays.copyOf(previous, Math.max(row + 1, previous.length * 2));
+        }
+        Integer before = latest.put(key(journal.getStudentId(row), journal.getCourseId(row)), row);
+        previous[row] = before == null ? NO_ROW : before;
+    }
+
+    // The row that currently counts as the student's grade in the course, or NO_ROW if none was recorded
+    public int latestRow(Student student, Course course) {
+        return latest.getOrDefault(key(student.getId(), course.getId()), NO_ROW);
+    }
+
+    // The entry that currently counts as the student's grade in the course, or null if none was recorded
+    public JournalEntry latest(Student student, Course course) {
+        int row = latestRow(student, course);
+        return row == NO_ROW ? null : journal.get(row);
+    }
+
+    // Every entry of the student in the course, oldest first
+    public List<JournalEntry> history(Student student, Course course) {
+        int[] rows = rows(student, course);
+        List<JournalEntry> history = new ArrayList<>(rows.length);
+        for (int i = rows.length - 1; i >= 0; i--) {
+            history.add(journal.get(rows[i]));
+        }
+        return history;
+    }
+
+    // Newest first
+    private synchronized int[] rows(Student student, Course course) {
+        int[] rows = new int[4];
+        int count = 0;
+        for (int row = latestRow(student, course); row != NO_ROW; row = previous[row]) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            rows[count++] = row;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static long key(int studentId, int courseId) {
+        return ((long) studentId << 32) | (courseId & 0xFFFFFFFFL);
+    }
+}
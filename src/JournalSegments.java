@@ -0,0 +1,314 @@
+import Helpers.Metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Sealed part of the journal: SEGMENT_ROWS rows per file, in a directory next to the data file. A segment never
+// changes once written, so the data file only holds the rows after the last one. Opening the journal only reads
+// the header of each segment; the rows of a segment are read the first time they are needed and kept in an
+// LRU cache of -Dschool.journal.cachedSegments segments (default 8). Layout of a segment, big-endian:
+//   header    magic, version, index, rows, earliest and latest epoch day, number of comments
+//   comments  byte length + UTF-8 bytes each
+//   columns   course ids, teacher ids, student ids, comments (-1 for none), epoch days, the rows in order
+//             of day and then row, as offsets into the segment, and last the grade ordinals as single bytes
+public class JournalSegments {
+    public static final int SEGMENT_ROWS = 1 << 16;
+    static final int MAGIC = 0x534B5347; // "SKSG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 7 * Integer.BYTES;
+    private static final int NO_COMMENT = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CACHED_SEGMENTS = Math.max(1, Integer.getInteger("school.journal.cachedSegments", 8));
+    private static final Grade[] GRADES = Grade.values();
+
+    private static final Metrics.Timer READ = Metrics.timer("school_journal_segment_read_seconds",
+            "Time to read a journal segment from disk");
+    private static final Metrics.Counter HITS = Metrics.counter("school_journal_segment_lookups_total",
+            "Lookups of journal segments", "result", "cached");
+    private static final Metrics.Counter MISSES = Metrics.counter("school_journal_segment_lookups_total",
+            "Lookups of journal segments", "result", "read");
+
+    // What the header of a segment tells without reading its rows
+    public record Header(int index, int minDay, int maxDay) {
+        public int firstRow() {
+            return index * SEGMENT_ROWS;
+        }
+    }
+
+    // The rows of one segment, read-only. byDay holds offsets in order of day, then offset.
+    static final class Segment {
+        final int index;
+        final int[] courseIds;
+        final int[] teacherIds;
+        final int[] studentIds;
+        final int[] commentIds;
+        final int[] epochDays;
+        final int[] byDay;
+        final byte[] grades;
+        final String[] comments;
+
+        private Segment(int index, int[] courseIds, int[] teacherIds, int[] studentIds, int[] commentIds, int[] epochDays,
+                        int[] byDay, byte[] grades, String[] comments) {
+            this.index = index;
+            this.courseIds = courseIds;
+            this.teacherIds = teacherIds;
+            this.studentIds = studentIds;
+            this.commentIds = commentIds;
+            this.epochDays = epochDays;
+            this.byDay = byDay;
+            this.grades = grades;
+            this.comments = comments;
+        }
+
+        Grade grade(int offset) {
+            return GRADES[grades[offset]];
+        }
+
+        String comment(int offset) {
+            int comment = commentIds[offset];
+            return comment == NO_COMMENT ? null : comments[comment];
+        }
+
+        // First position in byDay whose day is at least day
+        int lowerBound(int day) {
+            int low = 0;
+            int high = byDay.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (epochDays[byDay[middle]] < day) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    private final Path directory;
+    // Only ever appended to, and replaced as a whole, so readers can use the list they read without locking
+    private volatile List<Header> headers;
+    private final LinkedHashMap<Integer, Segment> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Segment> eldest) {
+            return size() > CACHED_SEGMENTS;
+        }
+    };
+
+    private JournalSegments(Path directory, List<Header> headers) {
+        this.directory = directory;
+        this.headers = headers;
+    }
+
+    // The segments of data.txt and data.bin are both kept in data.journal
+    public static Path directoryFor(Path dataFile) {
+        String name = dataFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dataFile.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".journal");
+    }
+
+    // Reads the headers of the segments holding the first sealedRows rows. Later segments are left from a save
+    // that didn't finish; they are written again when their rows are sealed.
+    public static JournalSegments open(Path directory, int sealedRows) throws IOException {
+        List<Header> headers = new ArrayList<>();
+        for (int index = 0; index < sealedRows / SEGMENT_ROWS; index++) {
+            Path file = file(directory, index);
+            if (!Files.exists(file)) {
+                throw new IOException("Journal segment " + file + " is missing");
+            }
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                checkHeader(file, in.readInt(), in.readInt(), in.readInt(), index);
+                in.readInt();
+                headers.add(new Header(index, in.readInt(), in.readInt()));
+            }
+        }
+        return new JournalSegments(directory, List.copyOf(headers));
+    }
+
+    // Copies the first sealedRows rows worth of segments, for a data file written to another directory
+    public static void copy(Path from, Path to, int sealedRows) throws IOException {
+        if (from.toAbsolutePath().equals(to.toAbsolutePath())) {
+            return;
+        }
+        Files.createDirectories(to);
+        for (int index = 0; index < sealedRows / SEGMENT_ROWS; index++) {
+            Files.copy(file(from, index), file(to, index), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public List<Header> headers() {
+        return headers;
+    }
+
+    public Header header(int index) {
+        return headers.get(index);
+    }
+
+    Segment get(int index) {
+        synchronized (cache) {
+            Segment cached = cache.get(index);
+            if (cached != null) {
+                HITS.increment();
+                return cached;
+            }
+        }
+        // Read outside the lock, so a lookup of a cached segment never waits for the disk
+        MISSES.increment();
+        Segment segment = read(index);
+        synchronized (cache) {
+            Segment raced = cache.putIfAbsent(index, segment);
+            return raced != null ? raced : segment;
+        }
+    }
+
+    // Number of segments whose rows are in memory
+    public int cached() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    // Writes rows firstRow to firstRow + SEGMENT_ROWS of the journal as the next segment, synced before it's renamed
+    // into place, so that a data file never refers to a segment that isn't complete on disk
+    void write(JournalStore journal, int firstRow) throws IOException {
+        int index = firstRow / SEGMENT_ROWS;
+        if (index != headers.size()) {
+            throw new IllegalStateException("Segment " + index + " written after " + headers.size() + " segments");
+        }
+        HashMap<String, Integer> commentIndex = new HashMap<>();
+        List<String> comments = new ArrayList<>();
+        long[] byDay = new long[SEGMENT_ROWS];
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int offset = 0; offset < SEGMENT_ROWS; offset++) {
+            String comment = journal.getComment(firstRow + offset);
+            if (comment != null && commentIndex.putIfAbsent(comment, comments.size()) == null) {
+                comments.add(comment);
+            }
+            int day = journal.getEpochDay(firstRow + offset);
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+            byDay[offset] = ((long) day << 32) | offset;
+        }
+        Arrays.sort(byDay);
+
+        Files.createDirectories(directory);
+        Path file = file(directory, index);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(index);
+            out.writeInt(SEGMENT_ROWS);
+            out.writeInt(minDay);
+            out.writeInt(maxDay);
+            out.writeInt(comments.size());
+            for (String comment : comments) {
+                byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (int offset = 0; offset < SEGMENT_ROWS; offset++) {
+                out.writeInt(journal.getCourseId(firstRow + offset));
+            }
+            for (int offset = 0; offset < SEGMENT_ROWS; offset++) {
+                out.writeInt(journal.getTeacherId(firstRow + offset));
+            }
+            for (int offset = 0; offset < SEGMENT_ROWS; offset++) {
+                out.writeInt(journal.getStudentId(firstRow + offset));
+            }
+            for (int offset = 0; offset < SEGMENT_ROWS; offset++) {
+                String comment = journal.getComment(firstRow + offset);
+                out.writeInt(comment == null ? NO_COMMENT : commentIndex.get(comment));
+            }
+            for (int offset = 0; offset < SEGMENT_ROWS; offset++) {
+                out.writeInt(journal.getEpochDay(firstRow + offset));
+            }
+            for (long key : byDay) {
+                out.writeInt((int) key);
+            }
+            for (int offset = 0; offset < SEGMENT_ROWS; offset++) {
+                out.writeByte(journal.getGrade(firstRow + offset).ordinal());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        List<Header> written = new ArrayList<>(headers);
+        written.add(new Header(index, minDay, maxDay));
+        headers = List.copyOf(written);
+    }
+
+    private Segment read(int index) {
+        long start = Metrics.start();
+        Path file = file(directory, index);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            checkHeader(file, buffer.getInt(), buffer.getInt(), buffer.getInt(), index);
+            int rows = buffer.getInt();
+            buffer.position(HEADER_SIZE - Integer.BYTES);
+            String[] comments = new String[buffer.getInt()];
+            for (int i = 0; i < comments.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                comments[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int[] courseIds = intColumn(buffer, rows);
+            int[] teacherIds = intColumn(buffer, rows);
+            int[] studentIds = intColumn(buffer, rows);
+            int[] commentIds = intColumn(buffer, rows);
+            int[] epochDays = intColumn(buffer, rows);
+            int[] byDay = intColumn(buffer, rows);
+            byte[] grades = new byte[rows];
+            buffer.get(grades);
+            return new Segment(index, courseIds, teacherIds, studentIds, commentIds, epochDays, byDay, grades, comments);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading journal segment " + file, e);
+        } finally {
+            READ.stop(start);
+        }
+    }
+
+    private static void checkHeader(Path file, int magic, int version, int index, int expectedIndex) throws IOException {
+        if (magic != MAGIC) {
+            throw new IOException(file + " is not a journal segment");
+        }
+        if (version != VERSION) {
+            throw new IOException("Unsupported journal segment version " + version + " in " + file);
+        }
+        if (index != expectedIndex) {
+            throw new IOException(file + " holds segment " + index + " instead of " + expectedIndex);
+        }
+    }
+
+    private static int[] intColumn(ByteBuffer buffer, int count) {
+        int[] column = new int[count];
+        buffer.asIntBuffer().get(column);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return column;
+    }
+
+    private static Path file(Path directory, int index) {
+        return directory.resolve(String.format("%06d.seg", index));
+    }
+}
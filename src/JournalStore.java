@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Append-only journal kept in primitive columns, one array per field.
+// A row costs 21 bytes; courses, teachers and students are stored as ids and comments as an index
+// into a table of distinct comments. get(row) builds a JournalEntry view on demand.
+// Appends are serialized; reads take no lock. A row is written before the volatile size is raised,
+// and grown arrays are copies, so a reader sees complete rows for every index below the size it read.
+// Older rows are sealed into JournalSegments when the data is saved. The columns then only hold the rows
+// after the last sealed segment, and an older row is read from its segment.
+public class JournalStore extends AbstractList<JournalEntry> implements RandomAccess {
+    private static final int NO_COMMENT = -1;
+    private static final Grade[] GRADES = Grade.values();
+
+    // The rows from start on. Replaced as a whole when the arrays grow or sealed rows are dropped,
+    // so the arrays a reader finds always go with the start it finds.
+    private record Columns(int start, int[] courseIds, int[] teacherIds, int[] studentIds, byte[] grades,
+                           int[] epochDays, int[] commentIds) {
+        Columns(int start, int capacity) {
+            this(start, new int[capacity], new int[capacity], new int[capacity], new byte[capacity], new int[capacity],
+                    new int[capacity]);
+        }
+
+        // Rows from one row to another, in new arrays of the given capacity
+        Columns copy(int from, int to, int capacity) {
+            Columns copy = new Columns(from, capacity);
+            int offset = from - start;
+            int length = to - from;
+            System.arraycopy(courseIds, offset, copy.courseIds, 0, length);
+            System.arraycopy(teacherIds, offset, copy.teacherIds, 0, length);
+            System.arraycopy(studentIds, offset, copy.studentIds, 0, length);
+            System.arraycopy(grades, offset, copy.grades, 0, length);
+            System.arraycopy(epochDays, offset, copy.epochDays, 0, length);
+            System.arraycopy(commentIds, offset, copy.commentIds, 0, length);
+            return copy;
+        }
+    }
+
+    private volatile int size;
+    private volatile Columns columns;
+    // Rows before this are in segment files; the columns may still hold some of them
+    private volatile int sealedRows;
+    private volatile JournalSegments segments;
+    // The segment read last, so that reading rows in order doesn't look up the cache for each of them
+    private volatile JournalSegments.Segment lastSegment;
+    // The journal a snapshot was taken of, null for the journal itself
+    private final JournalStore origin;
+
+    private String[] comments;
+    private int commentCount = 0;
+    // null in snapshots, which can't be appended to
+    private final HashMap<String, Integer> commentIndex;
+    private final ConcurrentHashMap<Integer, Course> courses;
+    private final ConcurrentHashMap<Integer, Teacher> teachers;
+    private final ConcurrentHashMap<Integer, Student> students;
+
+    public JournalStore() {
+        this(16);
+    }
+
+    public JournalStore(int capacity) {
+        this(capacity, 0);
+    }
+
+    // A journal whose first sealedRows rows are in segments, which are attached before those rows are read
+    public JournalStore(int capacity, int sealedRows) {
+        size = sealedRows;
+        columns = new Columns(sealedRows, Math.max(capacity, 16));
+        this.sealedRows = sealedRows;
+        origin = null;
+        comments = new String[16];
+        commentIndex = new HashMap<>();
+        courses = new ConcurrentHashMap<>();
+        teachers = new ConcurrentHashMap<>();
+        students = new ConcurrentHashMap<>();
+    }
+
+    // Called with the other store's lock held. Shares the columns: the other store only writes rows
+    // and comments past the ones seen here, and copies the arrays when it grows them.
+    private JournalStore(JournalStore other, JournalStore origin, int sealedRows) {
+        size = other.size;
+        columns = other.columns;
+        this.sealedRows = sealedRows;
+        segments = other.segments;
+        this.origin = origin;
+        comments = other.comments;
+        commentCount = other.commentCount;
+        commentIndex = null;
+        courses = other.courses;
+        teachers = other.teachers;
+        students = other.students;
+    }
+
+    public static JournalStore copyOf(Iterable<JournalEntry> entries) {
+        JournalStore store = new JournalStore();
+        entries.forEach(store::add);
+        return store;
+    }
+
+    // A read-only view of the rows added so far, made without copying them
+    public synchronized JournalStore snapshot() {
+        return new JournalStore(this, this, sealedRows);
+    }
+
+    // Lets the sealed rows be read from the segments. The entities are those the sealed rows may refer to.
+    public void attach(JournalSegments segments, Collection<Course> courses, Collection<Teacher> teachers,
+                       Collection<Student> students) {
+        courses.forEach(course -> this.courses.putIfAbsent(course.getId(), course));
+        teachers.forEach(teacher -> this.teachers.putIfAbsent(teacher.getId(), teacher));
+        students.forEach(student -> this.students.putIfAbsent(student.getId(), student));
+        this.segments = segments;
+    }
+
+    public int sealedRows() {
+        return sealedRows;
+    }
+
+    public JournalSegments segments() {
+        return segments;
+    }
+
+    // For a snapshot: writes every full segment of rows that aren't sealed yet and returns a snapshot that has them
+    // sealed, which leaves them out of the data file. The journal it was taken of then drops them from memory.
+    public JournalStore seal() throws IOException {
+        if (origin == null) {
+            throw new IllegalStateException("Only snapshots of the journal are sealed");
+        }
+        int end = size - size % JournalSegments.SEGMENT_ROWS;
+        if (segments == null || end <= sealedRows) {
+            return this;
+        }
+        for (int first = sealedRows; first < end; first += JournalSegments.SEGMENT_ROWS) {
+            segments.write(this, first);
+        }
+        origin.release(end);
+        return new JournalStore(this, origin, end);
+    }
+
+    // The rows before sealed are in segment files now, so the columns let go of them
+    private synchronized void release(int sealed) {
+        if (sealed <= sealedRows) {
+            return;
+        }
+        int kept = size - sealed;
+        columns = columns.copy(sealed, size, Math.max(16, kept + (kept >> 1)));
+        sealedRows = sealed;
+    }
+
+    @Override
+    public boolean add(JournalEntry entry) {
+        append(entry);
+        return true;
+    }
+
+    // Returns the row of the new entry
+    public int append(JournalEntry entry) {
+        return append(entry.getCourse(), entry.getTeacher(), entry.getStudent(), entry.getGrade(), entry.getGradeComment(),
+                (int) entry.getDate().toEpochDay());
+    }
+
+    // Returns the row of the new entry
+    public synchronized int append(Course course, Teacher teacher, Student student, Grade grade, String comment, int epochDay) {
+        if (commentIndex == null) {
+            throw new UnsupportedOperationException("Journal snapshots are read-only");
+        }
+        int row = size;
+        Columns current = columns;
+        int at = row - current.start();
+        if (at == current.courseIds().length) {
+            current = current.copy(current.start(), row, Math.max(16, at + (at >> 1)));
+            columns = current;
+        }
+        courses.putIfAbsent(course.getId(), course);
+        teachers.putIfAbsent(teacher.getId(), teacher);
+        students.putIfAbsent(student.getId(), student);
+        current.courseIds()[at] = course.getId();
+        current.teacherIds()[at] = teacher.getId();
+        current.studentIds()[at] = student.getId();
+        current.grades()[at] = (byte) grade.ordinal();
+        current.epochDays()[at] = epochDay;
+        current.commentIds()[at] = internComment(comment);
+        size = row + 1;
+        return row;
+    }
+
+    // Drops the rows from the given one on. Only for rows no snapshot has been taken of, such as those of a
+    // group that failed; the comments they added stay interned.
+    public synchronized void truncate(int rows) {
+        if (commentIndex == null) {
+            throw new UnsupportedOperationException("Journal snapshots are read-only");
+        }
+        if (rows < sealedRows || rows > size) {
+            throw new IllegalArgumentException("Can't truncate " + size + " rows to " + rows);
+        }
+        size = rows;
+    }
+
+    @Override
+    public JournalEntry get(int row) {
+        return new JournalEntry(getCourse(row), getTeacher(row), getStudent(row), getGrade(row), getComment(row),
+                LocalDate.ofEpochDay(getEpochDay(row)));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // The size is read before the columns, so that they hold every row below it that they start at
+    public int getCourseId(int row) {
+        checkRow(row);
+        Columns current = columns;
+        return row >= current.start() ? current.courseIds()[row - current.start()] : segment(row).courseIds[offset(row)];
+    }
+
+    public int getTeacherId(int row) {
+        checkRow(row);
+        Columns current = columns;
+        return row >= current.start() ? current.teacherIds()[row - current.start()] : segment(row).teacherIds[offset(row)];
+    }
+
+    public int getStudentId(int row) {
+        checkRow(row);
+        Columns current = columns;
+        return row >= current.start() ? current.studentIds()[row - current.start()] : segment(row).studentIds[offset(row)];
+    }
+
+    public int getEpochDay(int row) {
+        checkRow(row);
+        Columns current = columns;
+        return row >= current.start() ? current.epochDays()[row - current.start()] : segment(row).epochDays[offset(row)];
+    }
+
+    public Course getCourse(int row) {
+        return courses.get(getCourseId(row));
+    }
+
+    public Teacher getTeacher(int row) {
+        return teachers.get(getTeacherId(row));
+    }
+
+    public Student getStudent(int row) {
+        return students.get(getStudentId(row));
+    }
+
+    public Grade getGrade(int row) {
+        checkRow(row);
+        Columns current = columns;
+        return row >= current.start() ? GRADES[current.grades()[row - current.start()]] : segment(row).grade(offset(row));
+    }
+
+    public String getComment(int row) {
+        checkRow(row);
+        Columns current = columns;
+        if (row < current.start()) {
+            return segment(row).comment(offset(row));
+        }
+        int comment = current.commentIds()[row - current.start()];
+        return comment == NO_COMMENT ? null : comments[comment];
+    }
+
+    private JournalSegments.Segment segment(int row) {
+        int index = row / JournalSegments.SEGMENT_ROWS;
+        JournalSegments.Segment last = lastSegment;
+        if (last != null && last.index == index) {
+            return last;
+        }
+        JournalSegments attached = segments;
+        if (attached == null) {
+            throw new IllegalStateException("Row " + row + " is in a journal segment that isn't attached");
+        }
+        JournalSegments.Segment segment = attached.get(index);
+        lastSegment = segment;
+        return segment;
+    }
+
+    private static int offset(int row) {
+        return row % JournalSegments.SEGMENT_ROWS;
+    }
+
+    private int internComment(String comment) {
+        if (comment == null) {
+            return NO_COMMENT;
+        }
+        Integer index = commentIndex.get(comment);
+        if (index == null) {
+            if (commentCount == comments.length) {
+                comments = Arrays.copyOf(comments, commentCount * 2);
+            }
+            index = commentCount++;
+            comments[index] = comment;
+            commentIndex.put(comment, index);
+        }
+        return index;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+}
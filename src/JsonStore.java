@@ -0,0 +1,100 @@
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.function.Consumer;
+
+// Reads and writes the data file one entity at a time with the adapters from GsonProvider,
+// so no JSON tree of the whole file is ever built in memory. The journal array only holds the entries after
+// the sealedRows entries in JournalSegments; sealedRows is left out when there are none.
+// Files saved before entities had ids are read as well, see ReferenceResolver, and get ids on the next save.
+public class JsonStore {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static void write(Path path, SchoolData data, boolean prettyPrinting) throws IOException {
+        Gson gson = GsonProvider.buildGson();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             JsonWriter out = new JsonWriter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            out.setSerializeNulls(false);
+            if (prettyPrinting) {
+                out.setIndent("  ");
+            }
+            out.beginObject();
+            out.name("logSequence").value(data.logSequence());
+            writeArray(out, "courses", data.courses(), gson.getAdapter(Course.class));
+            writeArray(out, "students", data.students(), gson.getAdapter(Student.class));
+            writeArray(out, "teachers", data.teachers(), gson.getAdapter(Teacher.class));
+            JournalStore journal = data.journal();
+            if (journal.sealedRows() > 0) {
+                out.name("sealedRows").value(journal.sealedRows());
+            }
+            writeArray(out, "journal", journal.subList(journal.sealedRows(), journal.size()), gson.getAdapter(JournalEntry.class));
+            out.endObject();
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    public static SchoolData read(Path path) throws IOException {
+        ReferenceResolver resolver = new ReferenceResolver();
+        Gson gson = GsonProvider.buildGson(resolver);
+        HashSet<Course> courses = new HashSet<>();
+        HashSet<Student> students = new HashSet<>();
+        HashSet<Teacher> teachers = new HashSet<>();
+        JournalStore journal = null;
+        int sealedRows = 0;
+        long logSequence = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             JsonReader in = new JsonReader(new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "logSequence" -> logSequence = in.nextLong();
+                    case "courses" -> readArray(in, gson.getAdapter(Course.class), courses::add);
+                    case "students" -> readArray(in, gson.getAdapter(Student.class), students::add);
+                    case "teachers" -> readArray(in, gson.getAdapter(Teacher.class), teachers::add);
+                    case "sealedRows" -> sealedRows = in.nextInt();
+                    case "journal" -> {
+                        journal = new JournalStore(16, sealedRows);
+                        readArray(in, gson.getAdapter(JournalEntry.class), journal::add);
+                    }
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+        if (journal == null) {
+            journal = new JournalStore(16, sealedRows);
+        }
+        courses.addAll(resolver.legacyCourses());
+        return new SchoolData(courses, students, teachers, journal, resolver.getMaxId(), logSequence);
+    }
+
+    private static <T> void writeArray(JsonWriter out, String name, Collection<T> items, TypeAdapter<T> adapter) throws IOException {
+        out.name(name).beginArray();
+        for (T item : items) {
+            adapter.write(out, item);
+        }
+        out.endArray();
+    }
+
+    private static <T> void readArray(JsonReader in, TypeAdapter<T> adapter, Consumer<T> sink) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            sink.accept(adapter.read(in));
+        }
+        in.endArray();
+    }
+}
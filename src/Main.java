@@ -1,5 +1,49 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class Main {
-    public static void main(String[] args) {
-        SchoolSystem.getInstance().menu();
+    public static void main(String[] args) throws IOException {
+        SchoolSystem system = SchoolSystem.getInstance();
+        try {
+            system.start();
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        // --import a.csv b.csv ... loads the files in the given order and exits
+        if (args.length > 0 && args[0].equals("--import")) {
+            BulkImporter importer = new BulkImporter(system);
+            for (int i = 1; i < args.length; i++) {
+                System.out.println(importer.importFile(Path.of(args[i])).summary());
+            }
+            // A whole chunk is one log record, so fold the log into the data file rather than replaying it next start
+            system.saveData();
+            system.shutdown();
+            return;
+        }
+        // --script a.txt b.txt ... runs the command files in the given order and exits
+        if (args.length > 0 && args[0].equals("--script")) {
+            ScriptRunner runner = new ScriptRunner(system);
+            for (int i = 1; i < args.length; i++) {
+                ScriptRunner.Report report = runner.run(Path.of(args[i]));
+                report.output().forEach(System.out::println);
+                System.out.println(report.summary());
+            }
+            system.shutdown();
+            return;
+        }
+        // --api [port] serves the HTTP API instead of the menu, until the process is stopped
+        if (args.length > 0 && args[0].equals("--api")) {
+            ApiServer server = new ApiServer(system, args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                system.shutdown();
+            }));
+            server.start();
+            System.out.println("Serving the API on http://localhost:" + server.getPort());
+            return;
+        }
+        system.menu();
+        system.shutdown();
     }
 }
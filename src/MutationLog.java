@@ -0,0 +1,294 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+// Append-only log of the changes made since the last snapshot, one JSON record per line.
+// Every record gets a sequence number; a snapshot remembers the last sequence it contains,
+// so replaying the log on top of it skips whatever the snapshot already has.
+// A single writer thread drains all pending records, writes them and syncs once for the whole batch.
+public class MutationLog implements AutoCloseable {
+    private static final int MAX_BATCH = 1024;
+
+    public record Recovery(long validLength, long lastSequence) {}
+
+    private record Append(byte[] line, CompletableFuture<Void> done) {}
+
+    private record Discard(long upToSequence, CompletableFuture<Void> done) {}
+
+    private record Close(CompletableFuture<Void> done) {}
+
+    private final Path path;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel channel;
+    // Where the records synced so far end, written by the writer thread only
+    private long syncedLength;
+    private long sequence;
+    private boolean closed = false;
+
+    private MutationLog(Path path, long sequence) throws IOException {
+        this.path = path;
+        this.sequence = sequence;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.syncedLength = channel.size();
+        this.writer = new Thread(this::writeLoop, "mutation-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Opens the log for appending, cutting off a damaged last line found by replay()
+    public static MutationLog open(Path path, Recovery recovery) throws IOException {
+        if (Files.exists(path) && Files.size(path) > recovery.validLength()) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(recovery.validLength());
+                channel.force(true);
+            }
+        }
+        return new MutationLog(path, recovery.lastSequence());
+    }
+
+    // Passes every record with a sequence number above afterSequence to the consumer, in log order.
+    // A damaged last line is what a crash in the middle of a write leaves behind; it is left out of validLength,
+    // so that open() cuts it off. A damaged record with more after it means the file itself is broken, and throws
+    // JsonParseException rather than dropping everything logged after it.
+    public static Recovery replay(Path path, long afterSequence, Consumer<JsonObject> consumer) throws IOException {
+        long validLength = 0;
+        long lastSequence = afterSequence;
+        if (!Files.exists(path)) {
+            return new Recovery(validLength, lastSequence);
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long number = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                number++;
+                JsonObject record;
+                String damage;
+                try {
+                    record = JsonParser.parseString(line.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+                    damage = hasSequence(record) ? null : "no sequence number";
+                } catch (JsonParseException | IllegalStateException e) {
+                    record = null;
+                    damage = e.getMessage();
+                }
+                if (damage != null) {
+                    if (hasMore(in)) {
+                        throw new JsonParseException("Damaged record at line " + number + " of " + path + ", with more "
+                                + "records after it: " + damage + ". Move the file aside to start without them.");
+                    }
+                    System.out.println("Ignoring damaged end of " + path + ": " + damage);
+                    break;
+                }
+                long recordSequence = record.get("seq").getAsLong();
+                if (recordSequence > afterSequence) {
+                    consumer.accept(record);
+                }
+                lastSequence = Math.max(lastSequence, recordSequence);
+                validLength += line.size() + 1;
+                line.reset();
+            }
+        }
+        return new Recovery(validLength, lastSequence);
+    }
+
+    private static boolean hasSequence(JsonObject record) {
+        return record.get("seq") instanceof JsonPrimitive seq && seq.isNumber();
+    }
+
+    // Whether anything but white space follows
+    private static boolean hasMore(InputStream in) throws IOException {
+        int b;
+        while ((b = in.read()) != -1) {
+            if (!Character.isWhitespace(b)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns once the record is on disk
+    public void append(JsonObject record) {
+        await(appendAsync(record));
+    }
+
+    // Records are written in the order of the calls to this method; the future completes once the record is on disk.
+    // Callers can order records under their own locks and wait for the disk outside of them.
+    public CompletableFuture<Void> appendAsync(JsonObject record) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Mutation log is closed");
+            }
+            record.addProperty("seq", ++sequence);
+            queue.add(new Append((record + "\n").getBytes(StandardCharsets.UTF_8), done));
+        }
+        return done;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    // Drops the records a snapshot has made redundant. Records appended meanwhile are kept.
+    public void discardUpTo(long upToSequence) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new Discard(upToSequence, done));
+        await(done);
+    }
+
+    @Override
+    public void close() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(new Close(done));
+        }
+        await(done);
+    }
+
+    public static void await(CompletableFuture<Void> done) {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            throw e;
+        }
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        List<Append> unsynced = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (Object task : batch) {
+                try {
+                    if (task instanceof Append append) {
+                        ByteBuffer buffer = ByteBuffer.wrap(append.line());
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        unsynced.add(append);
+                        continue;
+                    }
+                    sync(unsynced);
+                    if (task instanceof Discard discard) {
+                        rewriteAfter(discard.upToSequence());
+                        discard.done().complete(null);
+                    } else if (task instanceof Close close) {
+                        channel.close();
+                        close.done().complete(null);
+                        return;
+                    }
+                } catch (IOException e) {
+                    failUnsynced(unsynced, e);
+                    failTask(task, e);
+                }
+            }
+            try {
+                sync(unsynced);
+            } catch (IOException e) {
+                failUnsynced(unsynced, e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void sync(List<Append> unsynced) throws IOException {
+        if (unsynced.isEmpty()) {
+            return;
+        }
+        channel.force(false);
+        syncedLength = channel.size();
+        unsynced.forEach(a -> a.done().complete(null));
+        unsynced.clear();
+    }
+
+    // The records written since the last sync failed with it, and are cut off again, so that a line written in
+    // part doesn't end up in the middle of the log with the next records after it
+    private void failUnsynced(List<Append> unsynced, IOException e) {
+        unsynced.forEach(a -> a.done().completeExceptionally(e));
+        unsynced.clear();
+        try {
+            if (channel.size() > syncedLength) {
+                channel.truncate(syncedLength);
+            }
+        } catch (IOException truncateFailed) {
+            e.addSuppressed(truncateFailed);
+        }
+    }
+
+    private static void failTask(Object task, IOException e) {
+        if (task instanceof Append append) {
+            append.done().completeExceptionally(e);
+        } else if (task instanceof Discard discard) {
+            discard.done().completeExceptionally(e);
+        } else if (task instanceof Close close) {
+            close.done().completeExceptionally(e);
+        }
+    }
+
+    // Runs on the writer thread, so no append can interleave with the rewrite
+    private void rewriteAfter(long upToSequence) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            replay(path, upToSequence, record -> {
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.force(true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // Reopened whether or not the move works, so that a failed rewrite leaves the log as it was
+        channel.close();
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            syncedLength = channel.size();
+        }
+    }
+}
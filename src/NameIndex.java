@@ -0,0 +1,92 @@
+import Helpers.Named;
+import Helpers.PageSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+// Entities sorted by name, ignoring case, with ids breaking ties. Kept in order as entities are added
+// and renamed, so listings never sort. Indexed entities hold a reference to the index and call rename()
+// from their name setter, like with UniqueIndex.
+public class NameIndex<T extends Named> implements PageSource<T> {
+    private record Key(String name, int id) {}
+
+    private static final Comparator<Key> ORDER =
+            Comparator.comparing(Key::name, String.CASE_INSENSITIVE_ORDER).thenComparingInt(Key::id);
+
+    private final ToIntFunction<T> id;
+    private final ConcurrentSkipListMap<Key, T> entries = new ConcurrentSkipListMap<>(ORDER);
+    // The size of a skip list map is counted by walking it
+    private final AtomicInteger size = new AtomicInteger();
+
+    public NameIndex(ToIntFunction<T> id) {
+        this.id = id;
+    }
+
+    public void add(T item) {
+        if (entries.put(key(item), item) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    public void remove(T item) {
+        if (entries.remove(key(item), item)) {
+            size.decrementAndGet();
+        }
+    }
+
+    // Called by the entity before its name changes; the caller holds the entity's lock
+    @SuppressWarnings("unchecked")
+    void rename(Object item, String oldName, String newName) {
+        T entity = (T) item;
+        int itemId = id.applyAsInt(entity);
+        if (entries.remove(new Key(oldName, itemId), entity)) {
+            entries.put(new Key(newName, itemId), entity);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public List<T> pageAfter(T cursor, int count) {
+        return take((cursor == null ? entries : entries.tailMap(key(cursor), false)).values().iterator(), count);
+    }
+
+    @Override
+    public List<T> pageBefore(T cursor, int count) {
+        List<T> page = take(entries.headMap(key(cursor), false).descendingMap().values().iterator(), count);
+        Collections.reverse(page);
+        return page;
+    }
+
+    @Override
+    public List<T> pageFrom(String prefix, int count) {
+        return take(entries.tailMap(new Key(prefix, Integer.MIN_VALUE), true).values().iterator(), count);
+    }
+
+    // All entities in name order
+    public Iterable<T> ordered() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    private Key key(T item) {
+        return new Key(item.getName(), id.applyAsInt(item));
+    }
+
+    private static <T> List<T> take(Iterator<T> items, int count) {
+        List<T> page = new ArrayList<>(count);
+        while (page.size() < count && items.hasNext()) {
+            page.add(items.next());
+        }
+        return page;
+    }
+}
@@ -1,17 +1,103 @@
 import Helpers.Named;
-import java.util.HashSet;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class Person implements Named {
-    private String name;
-    private String securityNumber;
-    private String email;
-    private final HashSet<Course> courses;
+    private int id;
+    private volatile String name;
+    private volatile String securityNumber;
+    private volatile String email;
+    private final Set<Course> courses;
+    // Indexes of the school this person belongs to, null for copies
+    private volatile UniqueIndex<?> securityNumberIndex;
+    private volatile UniqueIndex<?> emailIndex;
+    private volatile NameIndex<?> nameIndex;
+    private volatile SearchIndex<?> searchIndex;
+    private volatile SnapshotClock clock;
+    // When the saved fields last changed, and what they were before if that was after the snapshot being saved
+    private long changedAt;
+    private State stateAtSnapshot;
+
+    // The saved fields of a person; year is the class year of a student or the experience of a teacher,
+    // and the waitlist holds the ticket of each course a student waits for
+    public record State(String name, String securityNumber, String email, int year, Set<Course> courses,
+                        Map<Course, Long> waitlist) {}
 
     public Person(String name, String securityNumber, String email) {
         this.name = name;
         this.securityNumber = securityNumber;
         this.email = email;
-        this.courses = new HashSet<>();
+        this.courses = ConcurrentHashMap.newKeySet();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    void setKeyIndexes(UniqueIndex<?> securityNumberIndex, UniqueIndex<?> emailIndex) {
+        this.securityNumberIndex = securityNumberIndex;
+        this.emailIndex = emailIndex;
+    }
+
+    void setNameIndex(NameIndex<?> nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    void setSearchIndex(SearchIndex<?> searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    void setSnapshotClock(SnapshotClock clock) {
+        this.clock = clock;
+    }
+
+    abstract int getYear();
+
+    // Only students wait for seats
+    Map<Course, Long> getWaitlistTickets() {
+        return Map.of();
+    }
+
+    // Called with the person locked, before a saved field changes
+    void changing() {
+        SnapshotClock snapshots = clock;
+        if (snapshots == null) {
+            return;
+        }
+        if (snapshots.keepsState(changedAt)) {
+            stateAtSnapshot = getState();
+        }
+        changedAt = snapshots.now();
+    }
+
+    public synchronized State getState() {
+        return new State(name, securityNumber, email, getYear(), Set.copyOf(courses), Map.copyOf(getWaitlistTickets()));
+    }
+
+    // The saved fields as they were when the snapshot pinned at the given time was taken
+    public synchronized State getState(long snapshotTime) {
+        return changedAt <= snapshotTime ? getState() : stateAtSnapshot;
+    }
+
+    // Takes the person out of the search index while a searchable field changes
+    private void reindexed(Runnable change) {
+        SearchIndex<?> index = searchIndex;
+        if (index == null || !index.removeItem(this)) {
+            change.run();
+            return;
+        }
+        try {
+            change.run();
+        } finally {
+            index.addItem(this);
+        }
     }
 
     @Override
@@ -19,40 +105,96 @@ public abstract class Person implements Named {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
+    public synchronized void setName(String name) {
+        NameIndex<?> index = nameIndex;
+        if (index != null) {
+            index.rename(this, this.name, name);
+        }
+        changing();
+        reindexed(() -> this.name = name);
     }
 
     public String getSecurityNumber() {
         return securityNumber;
     }
 
-    public void setSecurityNumber(String securityNumber) {
-        this.securityNumber = securityNumber;
+    // Throws InvalidPersonalData if another person has the security number
+    public synchronized void setSecurityNumber(String securityNumber) {
+        UniqueIndex<?> index = securityNumberIndex;
+        if (index != null) {
+            index.rekey(this, this.securityNumber, securityNumber);
+        }
+        changing();
+        reindexed(() -> this.securityNumber = securityNumber);
     }
 
     public String getEmail() {
         return email;
     }
 
-    public void setEmail(String email) {
-        this.email = email;
+    // Throws InvalidPersonalData if another person has the email
+    public synchronized void setEmail(String email) {
+        UniqueIndex<?> index = emailIndex;
+        if (index != null) {
+            index.rekey(this, this.email, email);
+        }
+        changing();
+        reindexed(() -> this.email = email);
+    }
+
+    public Set<Course> getCourses() {
+        return Collections.unmodifiableSet(courses);
     }
 
-    public HashSet<Course> getCourses() {
-        return courses;
+    // Synchronized on the person so that both sides of the enrollment change together. A student takes a seat
+    // whatever the capacity of the course, as when loading; new enrollments go through assignCourseIfSeatFree().
+    public synchronized boolean assignCourse(Course course) {
+        if (courses.contains(course)) {
+            return false;
+        }
+        changing();
+        courses.add(course);
+        course.enroll(this, false);
+        return true;
     }
 
-    public boolean assignCourse(Course course) {
-        return courses.add(course);
+    // Like assignCourse(), but a student is only enrolled if a seat in the course is free
+    public synchronized boolean assignCourseIfSeatFree(Course course) {
+        if (courses.contains(course) || (this instanceof Student && !course.takeSeat())) {
+            return false;
+        }
+        changing();
+        courses.add(course);
+        course.enroll(this, true);
+        return true;
     }
 
     public void removeCourse(Course course){
+        unassignCourse(course);
+    }
+
+    public synchronized boolean unassignCourse(Course course) {
+        if (!courses.contains(course)) {
+            return false;
+        }
+        changing();
         courses.remove(course);
+        course.withdraw(this);
+        return true;
     }
 
-    public boolean unassignCourse(Course course) {
-        return courses.remove(course);
+    // People are the same when they have the same id; until an id is assigned, only to themselves.
+    // The id is set before a person goes into any set or map.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return id != 0 && o instanceof Person other && getClass() == other.getClass() && id == other.id;
     }
 
+    @Override
+    public int hashCode() {
+        return id != 0 ? Integer.hashCode(id) : System.identityHashCode(this);
+    }
 }
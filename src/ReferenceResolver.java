@@ -0,0 +1,111 @@
+import com.google.gson.JsonParseException;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+// Maps the ids stored in the data file back to the objects created while loading it.
+// Files saved before entities had ids embed copies of the courses and people they refer to instead. Their
+// entities get ids in the order they are read, and the copies are matched to them by subject and security number.
+public class ReferenceResolver {
+    private final HashMap<Integer, Course> courses = new HashMap<>();
+    private final HashMap<Integer, Student> students = new HashMap<>();
+    private final HashMap<Integer, Teacher> teachers = new HashMap<>();
+    private final HashMap<String, Course> legacyCourses = new HashMap<>();
+    private final HashMap<String, Student> legacyStudents = new HashMap<>();
+    private final HashMap<String, Teacher> legacyTeachers = new HashMap<>();
+    private int maxId = 0;
+
+    public void register(Course course) {
+        register(courses, course.getId(), course, "course");
+    }
+
+    public void register(Student student) {
+        if (student.getId() <= 0) {
+            registerLegacy(legacyStudents, student, "student");
+        }
+        register(students, student.getId(), student, "student");
+    }
+
+    public void register(Teacher teacher) {
+        if (teacher.getId() <= 0) {
+            registerLegacy(legacyTeachers, teacher, "teacher");
+        }
+        register(teachers, teacher.getId(), teacher, "teacher");
+    }
+
+    // The course with the subject in a file without ids, made the first time the subject is seen, as people
+    // may come before the courses there
+    public Course legacyCourse(String subject) {
+        if (subject == null) {
+            throw new JsonParseException("Missing subject for course");
+        }
+        return legacyCourses.computeIfAbsent(subject, s -> {
+            Course course = new Course(s);
+            course.setId(maxId + 1);
+            register(courses, course.getId(), course, "course");
+            return course;
+        });
+    }
+
+    // Courses of a file without ids, including those only people refer to
+    public Collection<Course> legacyCourses() {
+        return legacyCourses.values();
+    }
+
+    public Student legacyStudent(String securityNumber) {
+        return resolveLegacy(legacyStudents, securityNumber, "student");
+    }
+
+    public Teacher legacyTeacher(String securityNumber) {
+        return resolveLegacy(legacyTeachers, securityNumber, "teacher");
+    }
+
+    public Course course(int id) {
+        return resolve(courses, id, "course");
+    }
+
+    public Student student(int id) {
+        return resolve(students, id, "student");
+    }
+
+    public Teacher teacher(int id) {
+        return resolve(teachers, id, "teacher");
+    }
+
+    public int getMaxId() {
+        return maxId;
+    }
+
+    private <T> void register(HashMap<Integer, T> map, int id, T entity, String kind) {
+        if (id <= 0) {
+            throw new JsonParseException("Missing id for " + kind);
+        }
+        if (map.putIfAbsent(id, entity) != null) {
+            throw new JsonParseException("Duplicate " + kind + " id " + id);
+        }
+        maxId = Math.max(maxId, id);
+    }
+
+    private <P extends Person> void registerLegacy(HashMap<String, P> map, P person, String kind) {
+        if (person.getSecurityNumber() == null || map.putIfAbsent(person.getSecurityNumber(), person) != null) {
+            throw new JsonParseException("Missing or duplicate security number for " + kind + " " + person.getName());
+        }
+        person.setId(maxId + 1);
+    }
+
+    private <P extends Person> P resolveLegacy(HashMap<String, P> map, String securityNumber, String kind) {
+        P person = map.get(securityNumber);
+        if (person == null) {
+            throw new JsonParseException("Unknown " + kind + " with security number " + securityNumber);
+        }
+        return person;
+    }
+
+    private <T> T resolve(HashMap<Integer, T> map, int id, String kind) {
+        T entity = map.get(id);
+        if (entity == null) {
+            throw new JsonParseException("Unknown " + kind + " id " + id);
+        }
+        return entity;
+    }
+}
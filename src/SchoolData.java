@@ -0,0 +1,12 @@
+import java.util.HashSet;
+import java.util.Set;
+
+// Everything that is saved to and loaded from the data file.
+// logSequence is the last MutationLog record already contained in this data.
+public record SchoolData(Set<Course> courses, Set<Student> students, Set<Teacher> teachers,
+                         JournalStore journal, int maxId, long logSequence) {
+
+    public static SchoolData empty() {
+        return new SchoolData(new HashSet<>(), new HashSet<>(), new HashSet<>(), new JournalStore(), 0, 0);
+    }
+}
@@ -1,45 +1,164 @@
 import Helpers.IMenu;
 import Helpers.TextMenu;
-import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import Helpers.LatencyHistogram;
 import Helpers.MenuBuilder;
+import Helpers.Metrics;
 import Helpers.SafeInput;
-import Helpers.MenuBuilder;
+import Helpers.Search;
+import Helpers.Table;
+import Helpers.TablePager;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import static Helpers.TextMenu.*;
 
 
 public class SchoolSystem implements IMenu {
-    private static SchoolSystem instance;
-    private HashSet<Student> students;
-    private HashSet<Teacher> teachers;
-    private HashSet<Course> courses;
-    private ArrayList<JournalEntry> journal;
-
+    // The data file can be switched to a binary snapshot with -Dschool.dataFile=data.bin
+    private static final Path DATA_FILE = Path.of(System.getProperty("school.dataFile", "data.txt"));
+    private static final Path LOG_FILE = DATA_FILE.resolveSibling("data.log");
+    private static final Path SEGMENTS_DIR = JournalSegments.directoryFor(DATA_FILE);
+    // A new snapshot is written in the background after this many logged changes, and every this many seconds
+    // if anything changed, which also folds the log into it. The log keeps the changes safe in between.
+    private static final int AUTOSAVE_CHANGES = Integer.getInteger("school.autosave.changes", 10_000);
+    private static final int AUTOSAVE_SECONDS = Integer.getInteger("school.autosave.seconds", 60);
+    private static final Path METRICS_FILE = DATA_FILE.resolveSibling("metrics.prom");
+    private static final Path TRANSCRIPTS_DIR = DATA_FILE.resolveSibling("transcripts");
+
+    // Timings of changes include waiting for the model lock and for the mutation log to reach the disk
+    private static final Metrics.Timer CREATE_STUDENT = operationTimer("create_student");
+    private static final Metrics.Timer CREATE_TEACHER = operationTimer("create_teacher");
+    private static final Metrics.Timer CREATE_COURSE = operationTimer("create_course");
+    private static final Metrics.Timer ASSIGN_COURSE = operationTimer("assign_course");
+    private static final Metrics.Timer REMOVE_COURSE = operationTimer("remove_course");
+    private static final Metrics.Timer SET_CAPACITY = operationTimer("set_capacity");
+    private static final Metrics.Timer SET_SESSIONS = operationTimer("set_sessions");
+    private static final Metrics.Timer ADD_JOURNAL_ENTRY = operationTimer("add_journal_entry");
+    private static final Metrics.Timer ASSIGN_AND_GRADE = operationTimer("assign_and_grade");
+    private static final Metrics.Timer IMPORT_BATCH = operationTimer("import_batch");
+    private static final Metrics.Timer SAVE = operationTimer("save");
+    private static final Metrics.Timer LOAD = operationTimer("load");
+    private static final Metrics.Timer AUTOSAVE = operationTimer("autosave");
+    // The part of a save that holds the model lock
+    private static final Metrics.Timer SNAPSHOT = operationTimer("snapshot");
+    private static final Metrics.Counter CHANGES = Metrics.counter("school_changes_total", "Changes applied to the model");
+    private static final Metrics.Counter PROMOTIONS = Metrics.counter("school_waitlist_promotions_total",
+            "Students enrolled from a course waitlist");
+    private static final Metrics.Counter UNLOGGED = Metrics.counter("school_unlogged_changes_total",
+            "Changes applied to the model whose log record failed to be written");
+    private static final Metrics.Counter GROUPS_UNDONE = Metrics.counter("school_groups_undone_total",
+            "Groups of changes undone because one of them failed");
+
+    // Concurrency: the collections are concurrent and can be read without locking. Every change runs under the
+    // shared side of modelLock, and whatever needs a consistent picture of the whole model (pinning a snapshot,
+    // load) takes the exclusive side. Enrollment changes lock the person, journal appends lock journalLock,
+    // so that memory and the mutation log see changes to the same data in the same order.
+    private volatile Set<Student> students;
+    private volatile Set<Teacher> teachers;
+    private volatile Set<Course> courses;
+    private volatile JournalStore journal;
+    private volatile Map<Integer, Student> studentsById = new ConcurrentHashMap<>();
+    private volatile Map<Integer, Teacher> teachersById = new ConcurrentHashMap<>();
+    private volatile Map<Integer, Course> coursesById = new ConcurrentHashMap<>();
+    // Unique keys. Entities added to the model point to these, so key setters keep them current
+    private volatile UniqueIndex<Student> studentsBySecurityNumber = securityNumberIndex("student");
+    private volatile UniqueIndex<Student> studentsByEmail = emailIndex("student");
+    private volatile UniqueIndex<Teacher> teachersBySecurityNumber = securityNumberIndex("teacher");
+    private volatile UniqueIndex<Teacher> teachersByEmail = emailIndex("teacher");
+    private volatile UniqueIndex<Course> coursesBySubject = subjectIndex();
+    // Listing order, kept sorted as people are added and renamed
+    private volatile NameIndex<Student> studentsByName = new NameIndex<>(Student::getId);
+    private volatile NameIndex<Teacher> teachersByName = new NameIndex<>(Teacher::getId);
+    // Type to filter in the pickers
+    private volatile SearchIndex<Student> studentSearch = searchIndex();
+    private volatile SearchIndex<Teacher> teacherSearch = searchIndex();
+    private final JournalDateIndex journalDates = new JournalDateIndex();
+    // Built the first time they are needed, which reads the whole journal, and then kept up to date by appends.
+    // Set and cleared with journalLock held.
+    private volatile HistoryIndexes historyIndexes;
+    // Goes up when a failed group drops journal rows, so that indexes read from the rows meanwhile are made again
+    private volatile long journalTruncations;
+    private final ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
+    private final Object journalLock = new Object();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    // Raised after every change, so that menus know when to fetch their lists again
+    private final AtomicLong version = new AtomicLong();
+    private volatile MutationLog mutationLog;
+    private final SnapshotClock snapshotClock = new SnapshotClock();
+    private final AtomicInteger changesSinceSnapshot = new AtomicInteger();
+    private final AtomicBoolean autosavePending = new AtomicBoolean();
+    // Takes and writes every snapshot, one at a time, as entities only keep their state for the last one taken
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    // What a snapshot is read from. Ids are given out inside changes, so the entities it contains are
+    // exactly those with ids below nextId; the others were added after it was taken.
+    private record Pinned(long time, int nextId, Set<Course> courses, Set<Student> students, Set<Teacher> teachers,
+                          JournalStore journal, long logSequence) {}
+
+    // Initialized by the JVM the first time getInstance() is called, which is thread-safe
+    private static class InstanceHolder {
+        private static final SchoolSystem INSTANCE = new SchoolSystem();
+    }
 
     private SchoolSystem()  {
-        students = new HashSet<>();
-        teachers = new HashSet<>();
-        courses = new HashSet<>();
-        journal = new ArrayList<>();
+        students = ConcurrentHashMap.newKeySet();
+        teachers = ConcurrentHashMap.newKeySet();
+        courses = ConcurrentHashMap.newKeySet();
+        journal = new JournalStore();
+        // Until data is loaded, the date index has to be over this journal for appends to find their rows
+        journalDates.rebuild(journal);
+        Metrics.gauge("school_students", "Students in the school", () -> students.size());
+        Metrics.gauge("school_teachers", "Teachers in the school", () -> teachers.size());
+        Metrics.gauge("school_courses", "Courses in the school", () -> courses.size());
+        Metrics.gauge("school_journal_entries", "Entries in the journal", () -> journal.size());
     }
 
-    public static SchoolSystem getInstance() {
-        if (instance == null) {
-            instance = new SchoolSystem();
+    private static Metrics.Timer operationTimer(String operation) {
+        return Metrics.timer("school_operation_seconds", "Time taken by SchoolSystem operations", "operation", operation);
+    }
+
+    private static void countValidationErrors(int errors) {
+        for (Validator.ValidationError error : Validator.ValidationError.values()) {
+            if (error.isIn(errors)) {
+                Metrics.counter("school_validation_failures_total", "Personal data rejected by the validator",
+                        "error", error.name()).increment();
+            }
         }
-        return instance;
+    }
+
+    public static SchoolSystem getInstance() {
+        return InstanceHolder.INSTANCE;
     }
 
 
@@ -54,28 +173,40 @@ public class SchoolSystem implements IMenu {
                 .addItem("Add students", this::addStudentsMenu)
                 .addItem("Add teachers", this::addTeachersMenu)
                 .addItem("Add courses", this::addCoursesMenu)
+                .addItem("Set course capacity", this::capacityMenu)
                 .addItem("Assign to courses", this::assignToCoursesMenu)
+                .addItem("Timetable", this::timetableMenu)
                 .addItem("Remove course from Teacher or Student", this::removeCourseMenu)
                 .addItem("Set grade", this::addJournalEntryMenu)
-                .addItem("Save Data", this::saveData)
+                .addItem("Grade statistics", this::gradeStatsMenu)
+                .addItem("Write transcripts", this::transcriptsMenu)
+                .addItem("Import from CSV", this::importMenu)
+                .addItem("Diagnostics", this::diagnosticsMenu)
+                .addItem("Save Data", this::saveInBackground)
                 .addItem("Load Data", this::loadData)
                 .runMenu();
         System.out.println("Good bye.");
     }
 
     private void assignToCoursesMenu() {
-        listMenuLoop("Select course:", "Back", "No courses found.", courses.stream().toList(),
+        listMenuLoop("Select course:", "Back", "No courses found.", this::coursesBySubject, this::getVersion,
                 course -> listMenuLoop("Assign teachers or students?", "Cancel", "No roles found.", Arrays.asList(Roles.values()),
                         r -> {
-            ArrayList<Person> personList = new ArrayList<>(switch (r) {
-                case STUDENT -> students.stream().filter(s -> !s.getCourses().contains(course)).toList();
-                case TEACHER -> teachers.stream().filter(t -> !t.getCourses().contains(course)).toList();
-            });
+            // Only people not in the course or on its waitlist yet
+            Search<Person> notInCourse = switch (r) {
+                case STUDENT -> (query, limit) -> List.copyOf(studentSearch.find(query, limit,
+                        s -> !course.getStudents().contains(s) && !s.isWaitingFor(course)));
+                case TEACHER -> (query, limit) -> List.copyOf(teacherSearch.find(query, limit, t -> !course.getTeachers().contains(t)));
+            };
             String role = r.toString().toLowerCase();
-            listMenuLoop("Add next " + role + ": ", "Stop", "No " + role + "s found.", () -> personList, person -> {
-                if (person.assignCourse(course)) {
-                    personList.remove(person);
-                    System.out.println(r.getName() + " added.");
+            listMenuLoop("Add next " + role + ": ", "Stop", "No " + role + "s found.", notInCourse, person -> {
+                if (assignCourse(person, course)) {
+                    System.out.println(person.getCourses().contains(course)
+                            ? r.getName() + " added."
+                            : r.getName() + " put on the waitlist, " + course.getWaitlist().size() + " waiting.");
+                    Timetable.clashes(person).stream()
+                            .filter(clash -> clash.course() == course || clash.other() == course)
+                            .forEach(clash -> System.out.println("Warning, clash: " + clash.describe()));
                 } else {
                     System.out.println("Failed to add " + r.getName().toLowerCase() + ".");
                 }
@@ -83,6 +214,102 @@ public class SchoolSystem implements IMenu {
         }, true), true);
     }
 
+    private void capacityMenu() {
+        listMenuLoop("Select course:", "Back", "No courses found.", this::coursesBySubject, this::getVersion, course -> {
+            SafeInput si = SafeInput.console();
+            System.out.println(course.getName() + ": " + describeCapacity(course));
+            int capacity = si.nextInt("Please enter the most students the course takes (0 for no limit):",
+                    "Wrong number. Please try again.", 0, Integer.MAX_VALUE);
+            if (setCapacity(course, capacity)) {
+                System.out.println("Capacity set. " + describeCapacity(course));
+            } else {
+                System.out.println("Capacity unchanged.");
+            }
+        }, true);
+    }
+
+    private static final int MAX_CLASHES_SHOWN = 50;
+
+    private void timetableMenu() {
+        new MenuBuilder("Timetable:", "Back")
+                .addItem("Set the sessions of a course", this::sessionsMenu)
+                .addItem("Show clashes", () -> printClashes(getTimetable().clashes(getTeachers(), getStudents())))
+                .addItem("Propose a timetable", this::proposeTimetable)
+                .runMenu();
+    }
+
+    private void sessionsMenu() {
+        listMenuLoop("Select course:", "Back", "No courses found.", this::coursesBySubject, this::getVersion, course -> {
+            SafeInput si = SafeInput.console();
+            System.out.println(course.getName() + ": " + describeSessions(course.getSessions()));
+            List<Session> sessions = new ArrayList<>();
+            while (true) {
+                String line = si.nextLine("Please enter a session like MON 08:00-09:30 A101 (empty when done, "
+                        + "\"none\" to remove them all):");
+                if (line.isBlank()) {
+                    break;
+                }
+                if (line.strip().equalsIgnoreCase("none")) {
+                    sessions.clear();
+                    break;
+                }
+                try {
+                    sessions.add(Session.parse(line));
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            List<Timetable.Clash> clashes = getTimetable().clashesIfScheduled(course, sessions);
+            if (setSessions(course, sessions)) {
+                System.out.println("Sessions set: " + describeSessions(course.getSessions()));
+                printClashes(clashes);
+            } else {
+                System.out.println("Sessions unchanged.");
+            }
+        }, true);
+    }
+
+    private void proposeTimetable() {
+        SafeInput si = SafeInput.console();
+        int rooms = si.nextInt("Please enter the number of rooms:", "Wrong number. Please try again.", 1, 1000);
+        int perCourse = si.nextInt("Please enter the sessions per course and week:", "Wrong number. Please try again.", 1, 20);
+        long start = System.nanoTime();
+        TimetableSolver.Proposal proposal = new TimetableSolver(TimetableSolver.Settings.weekdays(rooms, perCourse))
+                .solve(getCourses());
+        System.out.println(proposal.summary() + " in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        proposal.sessions().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.comparing(Course::getSubject)))
+                .forEach(entry -> System.out.println("  " + entry.getKey().getSubject() + ": " + describeSessions(entry.getValue())));
+        String answer = si.nextLine("Replace the sessions of every course with these? (y/n)");
+        if (answer.strip().equalsIgnoreCase("y")) {
+            System.out.println(applyTimetable(proposal.sessions()) ? "Timetable applied." : "Timetable unchanged.");
+        }
+    }
+
+    private static void printClashes(List<Timetable.Clash> clashes) {
+        if (clashes.isEmpty()) {
+            System.out.println("No clashes.");
+            return;
+        }
+        System.out.println(clashes.size() + (clashes.size() == 1 ? " clash:" : " clashes:"));
+        clashes.stream().limit(MAX_CLASHES_SHOWN).forEach(clash -> System.out.println("  " + clash.describe()));
+        if (clashes.size() > MAX_CLASHES_SHOWN) {
+            System.out.println("  ... and " + (clashes.size() - MAX_CLASHES_SHOWN) + " more");
+        }
+    }
+
+    private static String describeSessions(List<Session> sessions) {
+        return sessions.isEmpty() ? "no sessions" : String.join(", ", sessions.stream().map(Session::getName).toList());
+    }
+
+    private static String describeCapacity(Course course) {
+        String seats = course.getCapacity() == Course.UNLIMITED
+                ? course.getSeatsTaken() + " students, no limit"
+                : course.getSeatsTaken() + " of " + course.getCapacity() + " seats taken";
+        int waiting = course.getWaitlist().size();
+        return waiting == 0 ? seats : seats + ", " + waiting + " waiting";
+    }
+
     @FunctionalInterface
     interface PersonProcessor {
         void process(String name, String personalNumber, String email, int year);
@@ -90,7 +317,7 @@ public class SchoolSystem implements IMenu {
 
     private boolean enterNextPerson(String yearPrompt, PersonProcessor callback) {
         AtomicBoolean fullDataEntered = new AtomicBoolean(false);
-        SafeInput si = new SafeInput(new Scanner(System.in));
+        SafeInput si = SafeInput.console();
         String name = si.nextLine("Please enter full name (empty to stop):");
         if (name.isBlank()) {
             return false;
@@ -148,7 +375,7 @@ public class SchoolSystem implements IMenu {
     }
 
     private void addCoursesMenu() {
-        SafeInput si = new SafeInput(new Scanner(System.in));
+        SafeInput si = SafeInput.console();
         while(true) {
             String courseName = si.nextLine("Please enter course name (empty to stop):");
             if (courseName.isBlank()) {
@@ -162,75 +389,225 @@ public class SchoolSystem implements IMenu {
         }
     }
 
-    public HashSet<Student> getStudents() {
-        return students;
+    // The getters return read-only views of the live concurrent sets, which can be iterated while they change
+    // and show some or all of the changes made meanwhile. Callers that need a fixed list copy it themselves.
+    public Set<Student> getStudents() {
+        return Collections.unmodifiableSet(students);
+    }
+
+    public Set<Teacher> getTeachers() {
+        return Collections.unmodifiableSet(teachers);
+    }
+
+    public Set<Course> getCourses() {
+        return Collections.unmodifiableSet(courses);
+    }
+
+    public Student findStudent(int id) {
+        return studentsById.get(id);
+    }
+
+    public Teacher findTeacher(int id) {
+        return teachersById.get(id);
+    }
+
+    public Course findCourse(int id) {
+        return coursesById.get(id);
+    }
+
+    public Student findStudentBySecurityNumber(String securityNumber) {
+        return studentsBySecurityNumber.get(securityNumber);
+    }
+
+    public Student findStudentByEmail(String email) {
+        return studentsByEmail.get(email);
+    }
+
+    public Teacher findTeacherBySecurityNumber(String securityNumber) {
+        return teachersBySecurityNumber.get(securityNumber);
+    }
+
+    public Teacher findTeacherByEmail(String email) {
+        return teachersByEmail.get(email);
+    }
+
+    public Course findCourseBySubject(String subject) {
+        return coursesBySubject.get(subject);
+    }
+
+    static <P extends Person> UniqueIndex<P> securityNumberIndex(String role) {
+        return new UniqueIndex<>(Person::getSecurityNumber, String::strip,
+                key -> new DuplicatePersonalData("A " + role + " with security number " + key + " already exists"));
+    }
+
+    // Email addresses are compared ignoring case
+    static <P extends Person> UniqueIndex<P> emailIndex(String role) {
+        return new UniqueIndex<>(Person::getEmail, key -> key.strip().toLowerCase(Locale.ROOT),
+                key -> new DuplicatePersonalData("A " + role + " with email " + key + " already exists"));
+    }
+
+    // "Math" and "math " are the same course
+    static UniqueIndex<Course> subjectIndex() {
+        return new UniqueIndex<>(Course::getSubject, key -> key.strip().toLowerCase(Locale.ROOT),
+                key -> new DuplicateCourseData("Course " + key + " already exists"));
+    }
+
+    // Claims both keys of the person, or throws DuplicatePersonalData without claiming either
+    private static <P extends Person> void indexPerson(P person, UniqueIndex<P> bySecurityNumber, UniqueIndex<P> byEmail) {
+        bySecurityNumber.addOrThrow(person);
+        try {
+            byEmail.addOrThrow(person);
+        } catch (InvalidPersonalData e) {
+            bySecurityNumber.remove(person);
+            throw e;
+        }
+        person.setKeyIndexes(bySecurityNumber, byEmail);
+    }
+
+    private static <P extends Person> SearchIndex<P> searchIndex() {
+        return new SearchIndex<>(Person::getId, person -> List.of(person.getName(), person.getEmail(), person.getSecurityNumber()));
+    }
+
+    private <P extends Person> void indexName(P person, NameIndex<P> byName, SearchIndex<P> search) {
+        byName.add(person);
+        person.setNameIndex(byName);
+        search.add(person);
+        person.setSearchIndex(search);
+        person.setSnapshotClock(snapshotClock);
+    }
+
+    private void indexCourse(Course course, UniqueIndex<Course> bySubject) {
+        course.setSnapshotClock(snapshotClock);
+        bySubject.addOrThrow(course);
+        course.setSubjectIndex(bySubject);
+    }
+
+    // Undo of adding an entity, for a group that failed after it. Entities that are in no course yet are only
+    // referred to by the indexes; the journal can't refer to them, as its rows are undone first.
+    private void forgetStudent(Student student) {
+        students.remove(student);
+        studentsById.remove(student.getId());
+        studentsBySecurityNumber.remove(student);
+        studentsByEmail.remove(student);
+        studentsByName.remove(student);
+        studentSearch.remove(student);
+    }
+
+    private void forgetTeacher(Teacher teacher) {
+        teachers.remove(teacher);
+        teachersById.remove(teacher.getId());
+        teachersBySecurityNumber.remove(teacher);
+        teachersByEmail.remove(teacher);
+        teachersByName.remove(teacher);
+        teacherSearch.remove(teacher);
+    }
+
+    private void forgetCourse(Course course) {
+        courses.remove(course);
+        coursesById.remove(course.getId());
+        coursesBySubject.remove(course);
     }
 
-    public HashSet<Teacher> getTeachers() {
-        return teachers;
+    // Goes up with every change, so that menus and views know when to fetch their lists again
+    public long getVersion() {
+        return version.get();
     }
 
-    public HashSet<Course> getCourses() {
-        return courses;
+    private List<Course> coursesBySubject() {
+        return getCourses().stream().sorted(Comparator.comparing(Course::getSubject)).toList();
     }
 
-    public ArrayList<JournalEntry> getJournal() {
+    public JournalStore getJournal() {
         return journal;
     }
 
-    public void listAllStudents(){
-        if (students.isEmpty()){
-            System.out.println("No students found.");
-            return;
+    public JournalIndex getJournalIndex() {
+        return historyIndexes().latest();
+    }
+
+    public JournalDateIndex getJournalDates() {
+        return journalDates;
+    }
+
+    public GradeStats getGradeStats() {
+        return historyIndexes().grades();
+    }
+
+    // The standing grade of each student in each course and the grade counts, which go back over the whole journal
+    private record HistoryIndexes(JournalIndex latest, GradeStats grades) {}
+
+    // Reads the journal without holding up appends and catches up with the ones made meanwhile under journalLock.
+    // Starts over if the journal was loaded again or cut back in between.
+    private HistoryIndexes historyIndexes() {
+        HistoryIndexes indexes = historyIndexes;
+        while (indexes == null) {
+            JournalStore current = journal;
+            long truncations = journalTruncations;
+            JournalIndex latest = new JournalIndex(current);
+            GradeStats grades = new GradeStats();
+            int row = 0;
+            for (int size = current.size(); row < size; row++) {
+                latest.add(row);
+                grades.add(current, row);
+            }
+            synchronized (journalLock) {
+                if (journal == current && historyIndexes == null && journalTruncations == truncations) {
+                    for (; row < current.size(); row++) {
+                        latest.add(row);
+                        grades.add(current, row);
+                    }
+                    historyIndexes = new HistoryIndexes(latest, grades);
+                }
+                indexes = historyIndexes;
+            }
         }
-        String format = "| %-20s | %-15s | %-30s | %-10s |%n";
+        return indexes;
+    }
 
-        System.out.printf(format, "Name", "Security No", "Email", "Class Year");
-        System.out.println("|----------------------|-----------------|--------------------------------|------------|");
+    private static final Table<Student> STUDENT_TABLE = new Table<Student>()
+            .addColumn("Name", 20, Student::getName)
+            .addColumn("Security No", 15, Student::getSecurityNumber)
+            .addColumn("Email", 30, Student::getEmail)
+            .addColumn("Class Year", 10, Student::getClassYear);
 
-        getStudents().stream()
-                .sorted(Comparator.comparing(Student::getName))
-                .forEach(s -> System.out.printf(
-                        format,
-                        s.getName(),
-                        s.getSecurityNumber(),
-                        s.getEmail(),
-                        s.getClassYear()
-                ));
-      
+    private static final Table<Teacher> TEACHER_TABLE = new Table<Teacher>()
+            .addColumn("Name", 20, Teacher::getName)
+            .addColumn("Security No", 15, Teacher::getSecurityNumber)
+            .addColumn("Email", 30, Teacher::getEmail)
+            .addColumn("Experience (Years)", 18, Teacher::getExperienceYear);
+
+    public void listAllStudents(){
+        new TablePager<>(STUDENT_TABLE, studentsByName).run("No students found.");
         System.out.println();
     }
 
     public void displayAllTeachers() {
         System.out.println("\n=== List of Teachers ===");
+        new TablePager<>(TEACHER_TABLE, teachersByName).run("No teachers found.");
+        System.out.println();
+    }
 
-        if (teachers.isEmpty()) {
-            System.out.println("No teachers found.");
-            return;
-        }
-
-        String format = "| %-20s | %-15s | %-30s | %-18s |%n";
+    public NameIndex<Student> getStudentsByName() {
+        return studentsByName;
+    }
 
-        System.out.printf(format, "Name", "Security No", "Email", "Experience (Years)");
-        System.out.println("|----------------------|-----------------|---------------------------------|--------------------|");
+    public NameIndex<Teacher> getTeachersByName() {
+        return teachersByName;
+    }
 
-        getTeachers().stream()
-                .sorted(Comparator.comparing(Teacher::getName))
-                .forEach(t -> System.out.printf(
-                        format,
-                        t.getName(),
-                        t.getSecurityNumber(),
-                        t.getEmail(),
-                        t.getExperienceYear()
-                ));
+    public SearchIndex<Student> getStudentSearch() {
+        return studentSearch;
+    }
 
-        System.out.println();
+    public SearchIndex<Teacher> getTeacherSearch() {
+        return teacherSearch;
     }
 
 
     public void displayAllCourses() {
         System.out.println("\n=== List of Courses ===");
 
+        Set<Course> courses = getCourses();
         if(courses.isEmpty()) {
           System.out.println("No courses found. ");
           return;
@@ -247,15 +624,12 @@ public class SchoolSystem implements IMenu {
         courses.stream()
                 .sorted(Comparator.comparing(Course::getSubject))
                 .forEach(course -> {
-                    List<String> teacherNames = teachers.stream()
-                            .filter(t -> t.getCourses().contains(course))
+                    List<String> teacherNames = course.getTeachers().stream()
                             .map(Teacher::getName)
                             .sorted()
                             .toList();
 
-                    long studentCount = students.stream()
-                            .filter(s -> s.getCourses().contains(course))
-                            .count();
+                    long studentCount = course.getStudents().size();
 
                     if(teacherNames.isEmpty()) {
                         System.out.printf(format, course.getSubject(), "-", studentCount);
@@ -279,6 +653,7 @@ public class SchoolSystem implements IMenu {
     }
 
     public void viewCourse(){
+        Set<Course> courses = getCourses();
         if (courses.isEmpty()){
             System.out.println("No courses found.");
             return;
@@ -288,7 +663,8 @@ public class SchoolSystem implements IMenu {
                 "Select a course to view details:",
                 "Back to main menu",
                 "No active courses",
-                new ArrayList<>(courses),
+                this::coursesBySubject,
+                this::getVersion,
                 this::showCourseDetails,
                 true
 
@@ -298,11 +674,12 @@ public class SchoolSystem implements IMenu {
     public void showCourseDetails(Course course){
         System.out.println("\n=== Course Details ===");
         System.out.println("Course: "+ course.getName());
+        System.out.println("Seats: " + describeCapacity(course));
+        System.out.println("Sessions: " + describeSessions(course.getSessions()));
         System.out.println("------------------------");
 
         System.out.println("\nTeachers:");
-        var courseTeachers = getTeachers().stream()
-                .filter(t -> t.getCourses().contains(course))
+        var courseTeachers = course.getTeachers().stream()
                 .sorted(Comparator.comparing(Teacher::getName))
                 .toList();
 
@@ -314,19 +691,16 @@ public class SchoolSystem implements IMenu {
         }
 
         System.out.println("\nStudents:");
-        var courseStudents = getStudents().stream()
-                .filter(s -> s.getCourses().contains(course))
+        var courseStudents = course.getStudents().stream()
                 .sorted(Comparator.comparing(Student::getName))
                 .toList();
 
         if (courseStudents.isEmpty()){
             System.out.println(" None enrolled.");
         }else {
+            JournalIndex journalIndex = getJournalIndex();
             courseStudents.forEach(s -> {
-                var entry = journal.stream()
-                        .filter(j -> j.getCourse().equals(course)&& j.getStudent().equals(s))
-                        .reduce((first, second) -> second)
-                        .orElse(null);
+                var entry = journalIndex.latest(s, course);
 
                 String gradeText;
                 if (entry == null){
@@ -343,28 +717,62 @@ public class SchoolSystem implements IMenu {
             });
 
         }
+
+        List<Student> waitlist = course.getWaitlist();
+        if (!waitlist.isEmpty()) {
+            System.out.println("\nWaitlist:");
+            for (int i = 0; i < waitlist.size(); i++) {
+                System.out.println("  " + (i + 1) + ". " + waitlist.get(i).getName());
+            }
+        }
         System.out.println();
     }
 
-    class dataWrapper
-    {
-        private HashSet<Student> students;
-        private HashSet<Teacher> teachers;
-        private HashSet<Course> courses;
-        private ArrayList<JournalEntry> journal;
+    // Loads the saved data and replays the changes logged since, then logs every further change.
+    // Throws IllegalStateException if either can't be read: going on without them would take changes that are
+    // never logged, and the next save would overwrite the data file.
+    public void start() {
+        Metrics.registerMBean();
+        long start = Metrics.start();
+        try {
+            MutationLog.Recovery recovery = restore();
+            mutationLog = MutationLog.open(LOG_FILE, recovery);
+            if (AUTOSAVE_SECONDS > 0) {
+                saver.scheduleWithFixedDelay(this::autosave, AUTOSAVE_SECONDS, AUTOSAVE_SECONDS, TimeUnit.SECONDS);
+            }
+        } catch (IOException | UncheckedIOException | JsonParseException | IllegalStateException e) {
+            saver.shutdownNow();
+            throw new IllegalStateException("Error loading " + DATA_FILE + " or " + LOG_FILE + ": " + e.getMessage(), e);
+        } finally {
+            LOAD.stop(start);
+        }
+    }
+
+    // Waits for snapshots being written; the log already holds everything changed since the last one
+    public void shutdown() {
+        saver.shutdown();
+        try {
+            saver.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (mutationLog != null) {
+            mutationLog.close();
+            mutationLog = null;
+        }
     }
 
     public void saveData()
     {
-        try (FileWriter writer = new FileWriter("data.txt")) {
-            Gson gson = GsonProvider.buildGson();
+        saveData(false);
+    }
 
-            dataWrapper dataWrapper = new dataWrapper();
-            dataWrapper.students = students;
-            dataWrapper.teachers = teachers;
-            dataWrapper.courses = courses;
-            dataWrapper.journal = journal;
-            gson.toJson(dataWrapper, writer);
+    // Returns when the data file is written. Changes go on meanwhile and are left for the next save.
+    public void saveData(boolean prettyPrinting)
+    {
+        try
+        {
+            saveDataOrThrow(prettyPrinting);
         }
         catch (IOException e)
         {
@@ -372,47 +780,1100 @@ public class SchoolSystem implements IMenu {
         }
     }
 
+    // Like saveData, for callers that report the failure themselves
+    public void saveDataOrThrow(boolean prettyPrinting) throws IOException {
+        try {
+            saver.submit(() -> {
+                writeSnapshot(SAVE, prettyPrinting);
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving " + DATA_FILE);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            } else if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Error saving " + DATA_FILE + ": " + e.getCause(), e.getCause());
+        }
+    }
+
+    // Saving from the menu returns at once, so the user can carry on while the file is written
+    private void saveInBackground() {
+        saver.execute(() -> {
+            try {
+                writeSnapshot(SAVE, false);
+            } catch (IOException | UncheckedIOException e) {
+                System.out.println("Error saving data: " + e.getMessage());
+            }
+        });
+        System.out.println("Saving in the background.");
+    }
+
     public void loadData()
     {
-        try (FileReader reader = new FileReader("data.txt"))
+        long start = Metrics.start();
+        try
+        {
+            restore();
+        }
+        catch (IOException | JsonParseException | IllegalStateException e)
+        {
+            e.printStackTrace();
+        }
+        finally
         {
-            Gson gson = GsonProvider.buildGson();
+            LOAD.stop(start);
+        }
+    }
 
-            dataWrapper data = gson.fromJson(reader, dataWrapper.class);
+    private MutationLog.Recovery restore() throws IOException {
+        modelLock.writeLock().lock();
+        try {
+            return restoreLocked();
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
 
-            this.students = data.students;
-            this.teachers = data.teachers;
-            this.courses = data.courses;
-            this.journal = data.journal;
+    private MutationLog.Recovery restoreLocked() throws IOException {
+        SchoolData data = Files.exists(DATA_FILE) ? SnapshotFormat.detect(DATA_FILE).read(DATA_FILE) : SchoolData.empty();
+        data.journal().attach(JournalSegments.open(SEGMENTS_DIR, data.journal().sealedRows()), data.courses(),
+                data.teachers(), data.students());
+        ReferenceResolver resolver = new ReferenceResolver();
+        data.courses().forEach(resolver::register);
+        data.students().forEach(resolver::register);
+        data.teachers().forEach(resolver::register);
+        MutationLog.Recovery recovery = MutationLog.replay(LOG_FILE, data.logSequence(), change -> applyChange(change, data, resolver));
+
+        this.students = concurrentCopy(data.students());
+        this.teachers = concurrentCopy(data.teachers());
+        this.courses = concurrentCopy(data.courses());
+        synchronized (journalLock) {
+            this.journal = data.journal();
+            historyIndexes = null;
         }
-        catch (IOException e)
-        {
+        this.studentsById = byId(students, Student::getId);
+        this.teachersById = byId(teachers, Teacher::getId);
+        this.coursesById = byId(courses, Course::getId);
+        rebuildIndexes();
+        this.nextId.set(Math.max(data.maxId(), resolver.getMaxId()) + 1);
+        journalDates.rebuild(journal);
+        version.incrementAndGet();
+        return recovery;
+    }
+
+    // Data saved before keys were unique may have duplicates; those entities stay in the model but can't be found by key
+    private void rebuildIndexes() {
+        UniqueIndex<Student> studentSecurityNumbers = securityNumberIndex("student");
+        UniqueIndex<Student> studentEmails = emailIndex("student");
+        UniqueIndex<Teacher> teacherSecurityNumbers = securityNumberIndex("teacher");
+        UniqueIndex<Teacher> teacherEmails = emailIndex("teacher");
+        UniqueIndex<Course> subjects = subjectIndex();
+        NameIndex<Student> studentNames = new NameIndex<>(Student::getId);
+        NameIndex<Teacher> teacherNames = new NameIndex<>(Teacher::getId);
+        SearchIndex<Student> studentWords = searchIndex();
+        SearchIndex<Teacher> teacherWords = searchIndex();
+        for (Student student : students) {
+            indexName(student, studentNames, studentWords);
+            try {
+                indexPerson(student, studentSecurityNumbers, studentEmails);
+            } catch (InvalidPersonalData e) {
+                System.out.println("Warning: " + e.getMessage());
+            }
+        }
+        for (Teacher teacher : teachers) {
+            indexName(teacher, teacherNames, teacherWords);
+            try {
+                indexPerson(teacher, teacherSecurityNumbers, teacherEmails);
+            } catch (InvalidPersonalData e) {
+                System.out.println("Warning: " + e.getMessage());
+            }
+        }
+        for (Course course : courses) {
+            try {
+                indexCourse(course, subjects);
+            } catch (InvalidCourseData e) {
+                System.out.println("Warning: " + e.getMessage());
+            }
+        }
+        studentsBySecurityNumber = studentSecurityNumbers;
+        studentsByEmail = studentEmails;
+        teachersBySecurityNumber = teacherSecurityNumbers;
+        teachersByEmail = teacherEmails;
+        coursesBySubject = subjects;
+        studentsByName = studentNames;
+        teachersByName = teacherNames;
+        studentSearch = studentWords;
+        teacherSearch = teacherWords;
+    }
+
+    private static <T> Map<Integer, T> byId(Set<T> items, ToIntFunction<T> id) {
+        Map<Integer, T> map = new ConcurrentHashMap<>(items.size());
+        items.forEach(item -> map.put(id.applyAsInt(item), item));
+        return map;
+    }
+
+    private static <T> Set<T> concurrentCopy(Set<T> items) {
+        Set<T> copy = ConcurrentHashMap.newKeySet(items.size());
+        copy.addAll(items);
+        return copy;
+    }
+
+    // Set while a thread runs pipelined(): its changes don't wait for their log records, which are kept in pending,
+    // and inside group() the records are collected in group, to be logged as one when the group ends, and how to
+    // take each change back in undo, last change first
+    private static final class Pipeline {
+        final List<CompletableFuture<Void>> pending = new ArrayList<>();
+        JsonArray group;
+        CompletableFuture<Void> groupLogged;
+        Deque<Runnable> undo;
+    }
+
+    private static final ThreadLocal<Pipeline> PIPELINE = new ThreadLocal<>();
+
+    // Runs the actions without waiting for the log write of each change they make, so that the next change
+    // doesn't wait for the disk. The changes are applied and visible at once; the returned future completes
+    // when their log records are written, or fails if one couldn't be, with the changes kept.
+    public CompletableFuture<Void> pipelined(Runnable actions) {
+        Pipeline outer = PIPELINE.get();
+        Pipeline pipeline = new Pipeline();
+        PIPELINE.set(pipeline);
+        try {
+            actions.run();
+        } finally {
+            PIPELINE.set(outer);
+        }
+        return CompletableFuture.allOf(pipeline.pending.toArray(CompletableFuture[]::new));
+    }
+
+    // Runs the actions as one change: no other change or snapshot comes in between, and they are logged as a
+    // single record, so a crash keeps all or none of them. Inside pipelined() the record is written with the
+    // others, otherwise this returns once it is on disk. The actions must not save. If an action throws, what the
+    // actions before it changed is undone, nothing is logged, and the exception is passed on. Entities the group
+    // added are dropped, and the ids they took are not given out again.
+    public void group(Runnable actions) {
+        Pipeline pipeline = PIPELINE.get();
+        if (pipeline == null) {
+            awaitLogged(pipelined(() -> group(actions)));
+            return;
+        }
+        if (pipeline.group != null) {
+            throw new IllegalStateException("Groups can't be nested");
+        }
+        CompletableFuture<Void> groupLogged = new CompletableFuture<>();
+        pipeline.pending.add(groupLogged);
+        boolean completed = false;
+        modelLock.writeLock().lock();
+        try {
+            pipeline.group = new JsonArray();
+            pipeline.groupLogged = groupLogged;
+            pipeline.undo = new ArrayDeque<>();
+            actions.run();
+            completed = true;
+        } finally {
+            JsonArray changes = pipeline.group;
+            Deque<Runnable> undo = pipeline.undo;
+            pipeline.group = null;
+            pipeline.groupLogged = null;
+            pipeline.undo = null;
+            if (!completed && !undo.isEmpty()) {
+                undo.forEach(Runnable::run);
+                version.incrementAndGet();
+                GROUPS_UNDONE.increment();
+            }
+            if (!completed || changes.isEmpty()) {
+                groupLogged.complete(null);
+            } else {
+                JsonObject batch = change("batch");
+                batch.add("changes", changes);
+                logChange(batch).whenComplete((done, failure) -> {
+                    if (failure != null) {
+                        groupLogged.completeExceptionally(failure);
+                    } else {
+                        groupLogged.complete(null);
+                    }
+                });
+            }
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    // Runs a change under the shared model lock. The change applies itself and returns what it logged,
+    // or null if there was nothing to change. Waiting for the log to reach the disk happens after the lock is released.
+    // Throws UnloggedChange if the change was applied but its record could not be written.
+    private boolean change(Metrics.Timer timer, Supplier<CompletableFuture<Void>> applyAndLog) {
+        long start = Metrics.start();
+        try {
+            CompletableFuture<Void> logged;
+            modelLock.readLock().lock();
+            try {
+                logged = applyAndLog.get();
+                if (logged == null) {
+                    return false;
+                }
+                version.incrementAndGet();
+            } finally {
+                modelLock.readLock().unlock();
+            }
+            Pipeline pipeline = PIPELINE.get();
+            if (pipeline != null) {
+                pipeline.pending.add(logged);
+            } else {
+                awaitLogged(logged);
+            }
+            CHANGES.increment();
+            if (mutationLog != null && changesSinceSnapshot.incrementAndGet() >= AUTOSAVE_CHANGES
+                    && autosavePending.compareAndSet(false, true)) {
+                saver.execute(this::autosave);
+            }
+            return true;
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    // Inside a group, keeps how to take back a change made just now, should a later action of the group throw
+    private static void undoable(Runnable undo) {
+        Pipeline pipeline = PIPELINE.get();
+        if (pipeline != null && pipeline.undo != null) {
+            pipeline.undo.push(undo);
+        }
+    }
+
+    // A change whose record fails to be written stays in the model, so a snapshot is saved to get it on disk
+    private CompletableFuture<Void> logChange(JsonObject change) {
+        Pipeline pipeline = PIPELINE.get();
+        if (pipeline != null && pipeline.group != null) {
+            pipeline.group.add(change);
+            return pipeline.groupLogged;
+        }
+        MutationLog log = mutationLog;
+        if (log == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> logged = log.appendAsync(change);
+        logged.whenComplete((done, failure) -> {
+            if (failure != null) {
+                saveUnlogged();
+            }
+        });
+        return logged;
+    }
+
+    private void saveUnlogged() {
+        UNLOGGED.increment();
+        changesSinceSnapshot.incrementAndGet();
+        if (autosavePending.compareAndSet(false, true)) {
+            saver.execute(this::autosave);
+        }
+    }
+
+    // Tells the caller when the change was applied but its record was not written
+    private static void awaitLogged(CompletableFuture<Void> logged) {
+        try {
+            MutationLog.await(logged);
+        } catch (UncheckedIOException e) {
+            throw new UnloggedChange(e);
+        }
+    }
+
+    // Runs on the saver thread, after enough changes or on the timer
+    private void autosave() {
+        if (changesSinceSnapshot.get() == 0) {
+            return;
+        }
+        try {
+            writeSnapshot(AUTOSAVE, false);
+        } catch (IOException | UncheckedIOException e) {
             e.printStackTrace();
         }
     }
 
+    // Runs on the saver thread
+    private void writeSnapshot(Metrics.Timer timer, boolean prettyPrinting) throws IOException {
+        long start = Metrics.start();
+        try {
+            MutationLog log = mutationLog;
+            SchoolData taken = takeSnapshot();
+            // Full segments of the journal are written to their own files first, and the data file holds the rest
+            SchoolData snapshot = new SchoolData(taken.courses(), taken.students(), taken.teachers(),
+                    taken.journal().seal(), taken.maxId(), taken.logSequence());
+            journalDates.trim();
+            SnapshotFormat.forFileName(DATA_FILE).writeAtomically(DATA_FILE, snapshot, prettyPrinting);
+            if (log != null) {
+                log.discardUpTo(snapshot.logSequence());
+            }
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    // A consistent copy of the model and the last log record it contains. The model is only locked while the
+    // snapshot is pinned, which copies nothing; the copy is then made from the state the entities keep for it.
+    private SchoolData takeSnapshot() {
+        long start = Metrics.start();
+        Pinned pinned;
+        modelLock.writeLock().lock();
+        try {
+            MutationLog log = mutationLog;
+            changesSinceSnapshot.set(0);
+            autosavePending.set(false);
+            pinned = new Pinned(snapshotClock.pin(), nextId.get(), courses, students, teachers, journal.snapshot(),
+                    log != null ? log.getSequence() : 0);
+        } finally {
+            modelLock.writeLock().unlock();
+            SNAPSHOT.stop(start);
+        }
+        return copyOfData(pinned);
+    }
+
+    // Courses and people are mutable, so they are copied as they were when the snapshot was pinned;
+    // the journal snapshot only refers to ids on disk
+    private static SchoolData copyOfData(Pinned pinned) {
+        HashMap<Course, Course> courseCopies = new HashMap<>();
+        for (Course course : pinned.courses()) {
+            if (course.getId() >= pinned.nextId()) {
+                continue;
+            }
+            Course copy = new Course(course.getSubject(pinned.time()));
+            copy.setId(course.getId());
+            copy.setCapacity(course.getCapacity(pinned.time()));
+            copy.setSessions(course.getSessions(pinned.time()));
+            courseCopies.put(course, copy);
+        }
+        HashSet<Student> studentCopies = new HashSet<>();
+        for (Student student : pinned.students()) {
+            if (student.getId() >= pinned.nextId()) {
+                continue;
+            }
+            Person.State state = student.getState(pinned.time());
+            Student copy = new Student(state.name(), state.securityNumber(), state.email(), state.year());
+            copy.setId(student.getId());
+            state.courses().forEach(course -> copy.assignCourse(courseCopies.get(course)));
+            state.waitlist().forEach((course, ticket) -> copy.joinWaitlist(courseCopies.get(course), ticket));
+            studentCopies.add(copy);
+        }
+        HashSet<Teacher> teacherCopies = new HashSet<>();
+        for (Teacher teacher : pinned.teachers()) {
+            if (teacher.getId() >= pinned.nextId()) {
+                continue;
+            }
+            Person.State state = teacher.getState(pinned.time());
+            Teacher copy = new Teacher(state.name(), state.securityNumber(), state.email(), state.year());
+            copy.setId(teacher.getId());
+            state.courses().forEach(course -> copy.assignCourse(courseCopies.get(course)));
+            teacherCopies.add(copy);
+        }
+        return new SchoolData(new HashSet<>(courseCopies.values()), studentCopies, teacherCopies,
+                pinned.journal(), pinned.nextId() - 1, pinned.logSequence());
+    }
+
+    private static JsonObject change(String operation) {
+        JsonObject change = new JsonObject();
+        change.addProperty("op", operation);
+        return change;
+    }
+
+    private static JsonObject personChange(String operation, Person person) {
+        JsonObject change = change(operation);
+        change.addProperty("id", person.getId());
+        change.addProperty("name", person.getName());
+        change.addProperty("securityNumber", person.getSecurityNumber());
+        change.addProperty("email", person.getEmail());
+        return change;
+    }
+
+    private static JsonObject enrollmentChange(String operation, Person person, Course course) {
+        JsonObject change = change(operation);
+        change.addProperty("role", (person instanceof Teacher ? Roles.TEACHER : Roles.STUDENT).name());
+        change.addProperty("person", person.getId());
+        change.addProperty("course", course.getId());
+        return change;
+    }
+
+    private static JsonObject sessionsChange(Course course) {
+        JsonObject change = change("setSessions");
+        change.addProperty("course", course.getId());
+        JsonArray sessions = new JsonArray();
+        course.getSessions().forEach(session -> sessions.add(session.getName()));
+        change.add("sessions", sessions);
+        return change;
+    }
+
+    private static JsonObject journalChange(JournalEntry entry) {
+        JsonObject change = change("addJournalEntry");
+        change.addProperty("course", entry.getCourse().getId());
+        change.addProperty("teacher", entry.getTeacher().getId());
+        change.addProperty("student", entry.getStudent().getId());
+        change.addProperty("grade", entry.getGrade().name());
+        change.addProperty("gradeComment", entry.getGradeComment());
+        change.addProperty("date", entry.getDate().toString());
+        return change;
+    }
+
+    private static void applyChange(JsonObject change, SchoolData data, ReferenceResolver resolver) {
+        switch (change.get("op").getAsString()) {
+            case "batch" -> change.getAsJsonArray("changes").forEach(part -> applyChange(part.getAsJsonObject(), data, resolver));
+            case "addCourse" -> {
+                Course course = new Course(change.get("subject").getAsString());
+                course.setId(change.get("id").getAsInt());
+                resolver.register(course);
+                data.courses().add(course);
+            }
+            case "addStudent" -> {
+                Student student = new Student(change.get("name").getAsString(), change.get("securityNumber").getAsString(),
+                        change.get("email").getAsString(), change.get("classYear").getAsInt());
+                student.setId(change.get("id").getAsInt());
+                resolver.register(student);
+                data.students().add(student);
+            }
+            case "addTeacher" -> {
+                Teacher teacher = new Teacher(change.get("name").getAsString(), change.get("securityNumber").getAsString(),
+                        change.get("email").getAsString(), change.get("experienceYear").getAsInt());
+                teacher.setId(change.get("id").getAsInt());
+                resolver.register(teacher);
+                data.teachers().add(teacher);
+            }
+            case "assignCourse" -> loggedPerson(change, resolver).assignCourse(resolver.course(change.get("course").getAsInt()));
+            case "removeCourse" -> loggedPerson(change, resolver).unassignCourse(resolver.course(change.get("course").getAsInt()));
+            // Logged enrollments are replayed whatever the capacity: the log has the order they were granted in
+            case "setCapacity" -> resolver.course(change.get("course").getAsInt()).setCapacity(change.get("capacity").getAsInt());
+            case "setSessions" -> {
+                List<Session> sessions = new ArrayList<>();
+                change.getAsJsonArray("sessions").forEach(session -> sessions.add(Session.parse(session.getAsString())));
+                resolver.course(change.get("course").getAsInt()).setSessions(sessions);
+            }
+            case "joinWaitlist" -> resolver.student(change.get("person").getAsInt())
+                    .joinWaitlist(resolver.course(change.get("course").getAsInt()), change.get("ticket").getAsLong());
+            case "leaveWaitlist" -> resolver.student(change.get("person").getAsInt())
+                    .leaveWaitlist(resolver.course(change.get("course").getAsInt()));
+            case "addJournalEntry" -> data.journal().add(new JournalEntry(
+                    resolver.course(change.get("course").getAsInt()),
+                    resolver.teacher(change.get("teacher").getAsInt()),
+                    resolver.student(change.get("student").getAsInt()),
+                    Grade.valueOf(change.get("grade").getAsString()),
+                    change.has("gradeComment") && !change.get("gradeComment").isJsonNull() ? change.get("gradeComment").getAsString() : null,
+                    LocalDate.parse(change.get("date").getAsString())));
+            default -> throw new JsonParseException("Unknown change in log: " + change);
+        }
+    }
+
+    private static Person loggedPerson(JsonObject change, ReferenceResolver resolver) {
+        int id = change.get("person").getAsInt();
+        return switch (Roles.valueOf(change.get("role").getAsString())) {
+            case STUDENT -> resolver.student(id);
+            case TEACHER -> resolver.teacher(id);
+        };
+    }
+
     public boolean addTeacher(String name, String securityNumber, String email, int experienceYears) {
-        String validation = Validator.validatePersonalData(name, securityNumber, email, experienceYears);
-        if (!validation.isEmpty()) {
-            throw new InvalidPersonalData("Error adding new teacher: " + validation);
+        return createTeacher(name, securityNumber, email, experienceYears) != null;
+    }
+
+    // Same as addTeacher, but returns the new teacher, or null if it was not added
+    public Teacher createTeacher(String name, String securityNumber, String email, int experienceYears) {
+        int errors = Validator.checkPersonalData(name, securityNumber, email, experienceYears);
+        if (errors != Validator.VALID) {
+            countValidationErrors(errors);
+            throw new InvalidPersonalData("Error adding new teacher: " + Validator.describe(errors));
         }
-        return teachers.add(new Teacher(name, securityNumber, email, experienceYears));
+        Teacher teacher = new Teacher(name, securityNumber, email, experienceYears);
+        boolean added = change(CREATE_TEACHER, () -> {
+            teacher.setId(nextId.getAndIncrement());
+            indexPerson(teacher, teachersBySecurityNumber, teachersByEmail);
+            teachers.add(teacher);
+            teachersById.put(teacher.getId(), teacher);
+            indexName(teacher, teachersByName, teacherSearch);
+            undoable(() -> forgetTeacher(teacher));
+            JsonObject change = personChange("addTeacher", teacher);
+            change.addProperty("experienceYear", experienceYears);
+            return logChange(change);
+        });
+        return added ? teacher : null;
     }
 
     public boolean addStudent(String name, String securityNumber, String email, int classYear) {
-        String validation = Validator.validatePersonalData(name, securityNumber, email, classYear);
-        if (!validation.isEmpty()) {
-            throw new InvalidPersonalData("Error adding new student: " + validation);
+        return createStudent(name, securityNumber, email, classYear) != null;
+    }
+
+    // Same as addStudent, but returns the new student, or null if it was not added
+    public Student createStudent(String name, String securityNumber, String email, int classYear) {
+        int errors = Validator.checkPersonalData(name, securityNumber, email, classYear);
+        if (errors != Validator.VALID) {
+            countValidationErrors(errors);
+            throw new InvalidPersonalData("Error adding new student: " + Validator.describe(errors));
         }
-        return students.add(new Student(name, securityNumber, email, classYear));
+        Student student = new Student(name, securityNumber, email, classYear);
+        boolean added = change(CREATE_STUDENT, () -> {
+            student.setId(nextId.getAndIncrement());
+            indexPerson(student, studentsBySecurityNumber, studentsByEmail);
+            students.add(student);
+            studentsById.put(student.getId(), student);
+            indexName(student, studentsByName, studentSearch);
+            undoable(() -> forgetStudent(student));
+            JsonObject change = personChange("addStudent", student);
+            change.addProperty("classYear", classYear);
+            return logChange(change);
+        });
+        return added ? student : null;
     }
 
     public boolean addCourse(String subject) {
+        return createCourse(subject) != null;
+    }
+
+    // Same as addCourse, but returns the new course, or null if it was not added
+    public Course createCourse(String subject) {
         if (subject.isBlank()) {
             throw new InvalidCourseData("Empty course name");
         }
-        return courses.add(new Course(subject));
+        Course course = new Course(subject);
+        boolean added = change(CREATE_COURSE, () -> {
+            course.setId(nextId.getAndIncrement());
+            indexCourse(course, coursesBySubject);
+            courses.add(course);
+            coursesById.put(course.getId(), course);
+            undoable(() -> forgetCourse(course));
+            JsonObject change = change("addCourse");
+            change.addProperty("id", course.getId());
+            change.addProperty("subject", subject);
+            return logChange(change);
+        });
+        return added ? course : null;
+    }
+
+    // Enrolls the person, or puts a student on the waitlist if the course is full or others wait for it already.
+    // Returns false if the person is in the course or waiting for it.
+    public boolean assignCourse(Person person, Course course) {
+        return change(ASSIGN_COURSE, () -> {
+            CompletableFuture<Void> logged;
+            synchronized (person) {
+                JsonObject change = enroll(person, course);
+                if (change == null) {
+                    return null;
+                }
+                logged = logChange(change);
+            }
+            // A seat may have come free after the student found the course full
+            return CompletableFuture.allOf(logged, promoteWaitlisted(course));
+        });
+    }
+
+    // Takes the person out of the course, or a student off its waitlist, and gives a freed seat to the next in line
+    public boolean removeCourse(Person person, Course course) {
+        return change(REMOVE_COURSE, () -> {
+            CompletableFuture<Void> logged;
+            synchronized (person) {
+                if (person.unassignCourse(course)) {
+                    undoable(() -> person.assignCourse(course));
+                    logged = logChange(enrollmentChange("removeCourse", person, course));
+                } else if (person instanceof Student student && student.isWaitingFor(course)) {
+                    long ticket = student.getWaitlistTickets().get(course);
+                    student.leaveWaitlist(course);
+                    undoable(() -> student.joinWaitlist(course, ticket));
+                    logged = logChange(enrollmentChange("leaveWaitlist", student, course));
+                } else {
+                    return null;
+                }
+            }
+            return CompletableFuture.allOf(logged, promoteWaitlisted(course));
+        });
+    }
+
+    // Throws IllegalArgumentException if the capacity is negative
+    public boolean setCapacity(Course course, int capacity) {
+        return change(SET_CAPACITY, () -> {
+            CompletableFuture<Void> logged;
+            synchronized (course) {
+                int previous = course.getCapacity();
+                if (previous == capacity) {
+                    return null;
+                }
+                course.setCapacity(capacity);
+                undoable(() -> course.setCapacity(previous));
+                JsonObject change = change("setCapacity");
+                change.addProperty("course", course.getId());
+                change.addProperty("capacity", capacity);
+                logged = logChange(change);
+            }
+            return CompletableFuture.allOf(logged, promoteWaitlisted(course));
+        });
+    }
+
+    public boolean setSessions(Course course, List<Session> sessions) {
+        return change(SET_SESSIONS, () -> {
+            synchronized (course) {
+                return setSessionsOf(course, sessions) ? logChange(sessionsChange(course)) : null;
+            }
+        });
+    }
+
+    // Sets the sessions of several courses as one change, logged as a single record
+    public boolean applyTimetable(Map<Course, List<Session>> sessions) {
+        return change(SET_SESSIONS, () -> {
+            JsonArray changes = new JsonArray();
+            sessions.forEach((course, courseSessions) -> {
+                synchronized (course) {
+                    if (setSessionsOf(course, courseSessions)) {
+                        changes.add(sessionsChange(course));
+                    }
+                }
+            });
+            if (changes.isEmpty()) {
+                return null;
+            }
+            JsonObject batch = change("batch");
+            batch.add("changes", changes);
+            return logChange(batch);
+        });
+    }
+
+    // Called with the course locked. Returns false if the course has the sessions already.
+    private static boolean setSessionsOf(Course course, List<Session> sessions) {
+        List<Session> sorted = sessions.stream().sorted(Comparator.comparingInt(Session::startMinute)).toList();
+        List<Session> previous = course.getSessions();
+        if (sorted.equals(previous)) {
+            return false;
+        }
+        course.setSessions(sorted);
+        undoable(() -> course.setSessions(previous));
+        return true;
+    }
+
+    // The timetable of the courses as they are now. Only the rooms are indexed up front, so it's cheap to make.
+    public Timetable getTimetable() {
+        return new Timetable(getCourses());
+    }
+
+    // Called with the person locked. Returns the change to log, or null if the person is in the course or
+    // waiting for it already. Nobody skips the line: a free seat goes to the waitlist first.
+    private static JsonObject enroll(Person person, Course course) {
+        if ((person instanceof Teacher || !course.hasWaitlist()) && person.assignCourseIfSeatFree(course)) {
+            undoable(() -> person.unassignCourse(course));
+            return enrollmentChange("assignCourse", person, course);
+        }
+        if (person instanceof Student student && student.joinWaitlist(course)) {
+            undoable(() -> student.leaveWaitlist(course));
+            JsonObject change = enrollmentChange("joinWaitlist", student, course);
+            change.addProperty("ticket", student.getWaitlistTickets().get(course));
+            return change;
+        }
+        return null;
+    }
+
+    // Enrolls waiting students, first in line first, while the course has free seats. Called after every change
+    // that may free a seat or add to the waitlist, with no person locked, so that a student who joined the
+    // waitlist just as a seat came free doesn't wait for the next one.
+    private CompletableFuture<Void> promoteWaitlisted(Course course) {
+        List<CompletableFuture<Void>> logged = new ArrayList<>();
+        while (course.getFreeSeats() > 0) {
+            Student next = course.firstWaiting();
+            if (next == null) {
+                break;
+            }
+            synchronized (next) {
+                if (!next.isWaitingFor(course)) {
+                    continue;
+                }
+                long ticket = next.getWaitlistTickets().get(course);
+                if (!next.assignCourseIfSeatFree(course)) {
+                    break;
+                }
+                next.leaveWaitlist(course);
+                undoable(() -> {
+                    next.unassignCourse(course);
+                    next.joinWaitlist(course, ticket);
+                });
+                JsonArray changes = new JsonArray();
+                changes.add(enrollmentChange("leaveWaitlist", next, course));
+                changes.add(enrollmentChange("assignCourse", next, course));
+                JsonObject batch = change("batch");
+                batch.add("changes", changes);
+                logged.add(logChange(batch));
+            }
+            PROMOTIONS.increment();
+        }
+        return CompletableFuture.allOf(logged.toArray(CompletableFuture[]::new));
+    }
+
+    public void addJournalEntry(JournalEntry entry) {
+        change(ADD_JOURNAL_ENTRY, () -> {
+            synchronized (journalLock) {
+                appendToJournal(entry);
+                return logChange(journalChange(entry));
+            }
+        });
+    }
+
+    // Enrolls the student in the course if needed and grades them, as one change: no other thread sees
+    // only half of it, and the mutation log stores both parts in a single record.
+    // Returns null, and grades nobody, if the student isn't in the course and gets no seat in it.
+    public JournalEntry assignAndGrade(Student student, Course course, Teacher teacher, Grade grade, String comment) {
+        JournalEntry entry = new JournalEntry(course, teacher, student, grade, comment, LocalDate.now());
+        boolean graded = change(ASSIGN_AND_GRADE, () -> {
+            synchronized (student) {
+                synchronized (journalLock) {
+                    JsonArray changes = new JsonArray();
+                    if (!student.getCourses().contains(course)) {
+                        if (course.hasWaitlist() || !student.assignCourseIfSeatFree(course)) {
+                            return null;
+                        }
+                        undoable(() -> student.unassignCourse(course));
+                        changes.add(enrollmentChange("assignCourse", student, course));
+                    }
+                    appendToJournal(entry);
+                    changes.add(journalChange(entry));
+                    JsonObject batch = change("batch");
+                    batch.add("changes", changes);
+                    return logChange(batch);
+                }
+            }
+        });
+        return graded ? entry : null;
+    }
+
+    // Called with journalLock held
+    private void appendToJournal(JournalEntry entry) {
+        int row = journal.append(entry);
+        undoable(() -> dropJournalRows(row));
+        journalDates.add(row);
+        HistoryIndexes indexes = historyIndexes;
+        if (indexes != null) {
+            indexes.latest().add(row);
+            indexes.grades().add(journal, row);
+        }
+    }
+
+    // Undo of journal appends, for a group that failed after them. The indexes over the whole journal are made
+    // again when next asked for.
+    private void dropJournalRows(int from) {
+        synchronized (journalLock) {
+            journal.truncate(from);
+            historyIndexes = null;
+            journalTruncations++;
+            journalDates.rebuild(journal);
+        }
+    }
+
+    public record Enrollment(Person person, Course course) {}
+
+    // What importBatch did: how many entities and enrollments it added, how many of those enrollments put a
+    // student on a waitlist, and why it left out the others, by the entity or Enrollment it was given
+    public record ImportResult(int added, int waitlisted, Map<Object, String> rejected) {}
+
+    // Adds already validated entities and enrollments as one change, logged as a single record.
+    // Ids are assigned here.
+    public ImportResult importBatch(List<Course> newCourses, List<Student> newStudents, List<Teacher> newTeachers,
+                                    List<Enrollment> enrollments) {
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger waitlisted = new AtomicInteger();
+        Map<Object, String> rejected = new IdentityHashMap<>();
+        change(IMPORT_BATCH, () -> {
+            JsonArray changes = new JsonArray();
+            // Entities whose key was taken in the meantime are rejected
+            for (Course course : newCourses) {
+                course.setId(nextId.getAndIncrement());
+                try {
+                    indexCourse(course, coursesBySubject);
+                } catch (InvalidCourseData e) {
+                    rejected.put(course, e.getMessage());
+                    continue;
+                }
+                courses.add(course);
+                coursesById.put(course.getId(), course);
+                undoable(() -> forgetCourse(course));
+                JsonObject change = change("addCourse");
+                change.addProperty("id", course.getId());
+                change.addProperty("subject", course.getSubject());
+                changes.add(change);
+            }
+            for (Student student : newStudents) {
+                student.setId(nextId.getAndIncrement());
+                try {
+                    indexPerson(student, studentsBySecurityNumber, studentsByEmail);
+                } catch (InvalidPersonalData e) {
+                    rejected.put(student, e.getMessage());
+                    continue;
+                }
+                students.add(student);
+                studentsById.put(student.getId(), student);
+                indexName(student, studentsByName, studentSearch);
+                undoable(() -> forgetStudent(student));
+                JsonObject change = personChange("addStudent", student);
+                change.addProperty("classYear", student.getClassYear());
+                changes.add(change);
+            }
+            for (Teacher teacher : newTeachers) {
+                teacher.setId(nextId.getAndIncrement());
+                try {
+                    indexPerson(teacher, teachersBySecurityNumber, teachersByEmail);
+                } catch (InvalidPersonalData e) {
+                    rejected.put(teacher, e.getMessage());
+                    continue;
+                }
+                teachers.add(teacher);
+                teachersById.put(teacher.getId(), teacher);
+                indexName(teacher, teachersByName, teacherSearch);
+                undoable(() -> forgetTeacher(teacher));
+                JsonObject change = personChange("addTeacher", teacher);
+                change.addProperty("experienceYear", teacher.getExperienceYear());
+                changes.add(change);
+            }
+            // Full courses put students on their waitlist, as when they are enrolled one by one
+            Set<Course> enrolledIn = new HashSet<>();
+            for (Enrollment enrollment : enrollments) {
+                synchronized (enrollment.person()) {
+                    JsonObject change = enroll(enrollment.person(), enrollment.course());
+                    if (change == null) {
+                        rejected.put(enrollment, enrollment.person().getName() + " is already in "
+                                + enrollment.course().getSubject() + " or waiting for it");
+                        continue;
+                    }
+                    if (change.get("op").getAsString().equals("joinWaitlist")) {
+                        waitlisted.incrementAndGet();
+                    }
+                    changes.add(change);
+                    enrolledIn.add(enrollment.course());
+                }
+            }
+            if (changes.isEmpty()) {
+                return null;
+            }
+            added.set(changes.size());
+            JsonObject batch = change("batch");
+            batch.add("changes", changes);
+            CompletableFuture<Void> logged = logChange(batch);
+            List<CompletableFuture<Void>> promoted = new ArrayList<>(List.of(logged));
+            enrolledIn.forEach(course -> promoted.add(promoteWaitlisted(course)));
+            return CompletableFuture.allOf(promoted.toArray(CompletableFuture[]::new));
+        });
+        return new ImportResult(added.get(), waitlisted.get(), rejected);
+    }
+
+    private void importMenu() {
+        SafeInput si = SafeInput.console();
+        BulkImporter importer = new BulkImporter(this);
+        while (true) {
+            String file = si.nextLine("Please enter a CSV file to import (empty to stop):");
+            if (file.isBlank()) {
+                return;
+            }
+            try {
+                System.out.println(importer.importFile(Path.of(file.trim())).summary());
+                saveInBackground();
+            } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+                System.out.println("Error importing " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private interface TranscriptRun {
+        TranscriptGenerator.Report write(Path path) throws IOException;
+    }
+
+    private void transcriptsMenu() {
+        TranscriptGenerator generator = new TranscriptGenerator(this);
+        TranscriptGenerator.Format text = TranscriptGenerator.Format.TEXT;
+        TranscriptGenerator.Format json = TranscriptGenerator.Format.JSON;
+        new MenuBuilder("Write transcripts:", "Back")
+                .addItem("Text file per student, changed since the last run",
+                        () -> writeTranscripts(TRANSCRIPTS_DIR, directory -> generator.writeFiles(directory, text, true)))
+                .addItem("Text file per student, all students",
+                        () -> writeTranscripts(TRANSCRIPTS_DIR, directory -> generator.writeFiles(directory, text, false)))
+                .addItem("JSON file per student, changed since the last run",
+                        () -> writeTranscripts(TRANSCRIPTS_DIR, directory -> generator.writeFiles(directory, json, true)))
+                .addItem("JSON file per student, all students",
+                        () -> writeTranscripts(TRANSCRIPTS_DIR, directory -> generator.writeFiles(directory, json, false)))
+                .addItem("All students in one text file", () -> writeTranscripts(TRANSCRIPTS_DIR.resolve("transcripts.txt"),
+                        file -> generator.writeCombined(file, text)))
+                .addItem("All students in one JSON file", () -> writeTranscripts(TRANSCRIPTS_DIR.resolve("transcripts.json"),
+                        file -> generator.writeCombined(file, json)))
+                .runMenu();
+    }
+
+    private void writeTranscripts(Path defaultPath, TranscriptRun run) {
+        SafeInput si = SafeInput.console();
+        String answer = si.nextLine("Please enter where to write them (empty for " + defaultPath + "):");
+        try {
+            System.out.println(run.write(answer.isBlank() ? defaultPath : Path.of(answer.trim())).summary());
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Error writing transcripts: " + e.getMessage());
+        }
+    }
+
+    private record GradeRow(String group, GradeStats.Distribution grades) {}
+
+    private void gradeStatsMenu() {
+        new MenuBuilder("Grade statistics:", "Back")
+                .addItem("By course", () -> printGradeTable("Course", getCourses().stream()
+                        .sorted(Comparator.comparing(Course::getSubject))
+                        .map(course -> new GradeRow(course.getSubject(), getGradeStats().forCourse(course)))
+                        .toList()))
+                .addItem("By teacher", () -> {
+                    List<GradeRow> rows = new ArrayList<>();
+                    for (Teacher teacher : teachersByName.ordered()) {
+                        GradeStats.Distribution grades = getGradeStats().forTeacher(teacher);
+                        if (grades.total() > 0) {
+                            rows.add(new GradeRow(teacher.getName(), grades));
+                        }
+                    }
+                    printGradeTable("Teacher", rows);
+                })
+                .addItem("By class year", () -> printGradeTable("Class Year", new TreeMap<>(getGradeStats().byClassYear()).entrySet().stream()
+                        .map(year -> new GradeRow(String.valueOf(year.getKey()), year.getValue()))
+                        .toList()))
+                .addItem("By term", this::termReportMenu)
+                .addItem("Grades set this week", this::gradesThisWeek)
+                .addItem("Check against the journal", this::checkGradeStats)
+                .runMenu();
+    }
+
+    private void termReportMenu() {
+        LocalDate first = journalDates.first();
+        if (first == null) {
+            System.out.println("No grades recorded.");
+            return;
+        }
+        List<Term> terms = new ArrayList<>();
+        Term earliest = Term.of(first);
+        for (Term term = Term.of(journalDates.last()); !term.equals(earliest.previous()); term = term.previous()) {
+            terms.add(term);
+        }
+        listMenuLoop("Select a term:", "Back", "No grades recorded.", terms, this::termReport, true);
+    }
+
+    // Grades set during the term per course; a student's later grade in a course replaces the earlier one
+    private void termReport(Term term) {
+        GradeStats termStats = GradeStats.of(journal, journalDates.streamRows(term.start(), term.end()));
+        System.out.println("\n=== " + term.getName() + ": " + journalDates.count(term.start(), term.end()) + " grades set ===");
+        printGradeTable("Course", getCourses().stream()
+                .sorted(Comparator.comparing(Course::getSubject))
+                .map(course -> new GradeRow(course.getSubject(), termStats.forCourse(course)))
+                .filter(row -> row.grades().total() > 0)
+                .toList());
     }
+
+    private static final int RECENT_GRADES_SHOWN = 25;
+
+    private static final Table<JournalEntry> JOURNAL_TABLE = new Table<JournalEntry>()
+            .addColumn("Date", 10, JournalEntry::getDate)
+            .addColumn("Course", 20, entry -> entry.getCourse().getSubject())
+            .addColumn("Student", 20, entry -> entry.getStudent().getName())
+            .addColumn("Grade", 7, JournalEntry::getGrade)
+            .addColumn("Teacher", 20, entry -> entry.getTeacher().getName());
+
+    private void gradesThisWeek() {
+        LocalDate monday = LocalDate.now().with(DayOfWeek.MONDAY);
+        int[] rows = journalDates.rowsBetween(monday, LocalDate.MAX);
+        if (rows.length == 0) {
+            System.out.println("No grades set since " + monday + ".");
+            return;
+        }
+        List<JournalEntry> latest = new ArrayList<>();
+        for (int i = rows.length - 1; i >= Math.max(0, rows.length - RECENT_GRADES_SHOWN); i--) {
+            latest.add(journal.get(rows[i]));
+        }
+        StringBuilder out = new StringBuilder();
+        JOURNAL_TABLE.print(out, latest);
+        System.out.println(out);
+        System.out.println(rows.length + " grades set since " + monday
+                + (rows.length > latest.size() ? ", the latest " + latest.size() + " shown." : "."));
+    }
+
+    private static void printGradeTable(String groupTitle, List<GradeRow> rows) {
+        if (rows.isEmpty()) {
+            System.out.println("No grades recorded.");
+            return;
+        }
+        Table<GradeRow> table = new Table<GradeRow>().addColumn(groupTitle, 20, GradeRow::group);
+        for (Grade grade : Grade.values()) {
+            table.addRightAlignedColumn(grade.getName(), Math.max(3, grade.getName().length()), row -> row.grades().count(grade));
+        }
+        table.addRightAlignedColumn("Average", 7, row -> Double.isNaN(row.grades().average()) ? "-"
+                : String.format("%.2f", row.grades().average()));
+        StringBuilder out = new StringBuilder();
+        table.print(out, rows);
+        System.out.println(out);
+        System.out.println("Averages count A as 5 points down to F as 0; a newer grade replaces the older one.");
+    }
+
+    // Counts the whole journal again and compares with the running counts, with changes held off meanwhile
+    private void checkGradeStats() {
+        modelLock.writeLock().lock();
+        try {
+            long start = System.nanoTime();
+            boolean same = GradeStats.recompute(journal).sameCounts(getGradeStats());
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println(same
+                    ? "Statistics match the journal (" + journal.size() + " entries counted in " + millis + " ms)."
+                    : "Statistics differ from the journal, load the data again to rebuild them.");
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    private void diagnosticsMenu() {
+        if (!Metrics.ENABLED) {
+            System.out.println("Metrics are turned off, start without -Dschool.metrics=false to collect them.");
+            return;
+        }
+        new MenuBuilder("Diagnostics:", "Back")
+                .addItem("Show metrics", this::showMetrics)
+                .addItem("Show slow operations", this::showSlowOperations)
+                .addItem("Export metrics to " + METRICS_FILE, this::exportMetrics)
+                .runMenu();
+    }
+
+    private static final Table<Map.Entry<String, Long>> VALUE_TABLE = new Table<Map.Entry<String, Long>>()
+            .addColumn("Metric", 66, Map.Entry::getKey)
+            .addRightAlignedColumn("Value", 14, Map.Entry::getValue);
+
+    private static final Table<Map.Entry<String, LatencyHistogram.Snapshot>> TIMER_TABLE =
+            new Table<Map.Entry<String, LatencyHistogram.Snapshot>>()
+                    .addColumn("Timer", 66, Map.Entry::getKey)
+                    .addRightAlignedColumn("Count", 9, timer -> timer.getValue().getCount())
+                    .addRightAlignedColumn("Mean ms", 9, timer -> millis((long) timer.getValue().getMean()))
+                    .addRightAlignedColumn("p50 ms", 9, timer -> millis(timer.getValue().getPercentile(0.5)))
+                    .addRightAlignedColumn("p99 ms", 9, timer -> millis(timer.getValue().getPercentile(0.99)))
+                    .addRightAlignedColumn("Max ms", 9, timer -> millis(timer.getValue().getMax()));
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    private void showMetrics() {
+        List<Map.Entry<String, Long>> values = new ArrayList<>(Metrics.gauges().entrySet());
+        values.addAll(Metrics.counters().entrySet());
+        StringBuilder out = new StringBuilder();
+        VALUE_TABLE.print(out, values);
+        out.append(System.lineSeparator());
+        TIMER_TABLE.print(out, Metrics.timers().entrySet());
+        System.out.println(out);
+    }
+
+    private void showSlowOperations() {
+        List<Metrics.Span> spans = Metrics.slowOperations();
+        if (spans.isEmpty()) {
+            System.out.println("No slow operations recorded.");
+            return;
+        }
+        for (Metrics.Span span : spans) {
+            System.out.println(span.end() + "  " + millis(span.nanos()) + " ms  " + span.series() + "  on " + span.thread());
+        }
+    }
+
+    private void exportMetrics() {
+        try {
+            Metrics.writePrometheus(METRICS_FILE);
+            System.out.println("Metrics written to " + METRICS_FILE + ".");
+        } catch (IOException e) {
+            System.out.println("Error writing " + METRICS_FILE + ": " + e.getMessage());
+        }
+    }
+
     public void removeCourseMenu(){
         menuLoop(
                 "Remove a course from:",
@@ -426,7 +1887,7 @@ public class SchoolSystem implements IMenu {
         removeCourseFromList(
                 "Select a teacher to remove them from a course",
                 "There are no teachers",
-                new ArrayList<>(teachers)
+                teacherSearch
         );
     }
 
@@ -434,7 +1895,7 @@ public class SchoolSystem implements IMenu {
         removeCourseFromList(
                 "Select a student to remove them from a course",
                 "There are no students",
-                new ArrayList<>(students)
+                studentSearch
         );
     }
 
@@ -450,7 +1911,7 @@ public class SchoolSystem implements IMenu {
                 "No courses",
                 new ArrayList<>(person.getCourses()),
                 course -> {
-                    person.removeCourse(course);
+                    removeCourse(person, course);
                     System.out.println("Removed successfully!");
                 },
                 true
@@ -458,37 +1919,26 @@ public class SchoolSystem implements IMenu {
 
     }
 
-    private void removeCourseFromList(String header, String emptyMessage, List<? extends Person> list){
-        if (list.isEmpty()){
-            System.out.println(emptyMessage);
-            return;
-        }
-
+    private <P extends Person> void removeCourseFromList(String header, String emptyMessage, Search<P> search){
         listMenuLoop(
                 header,
                 "Back to main menu",
-                "No entries",
-                new ArrayList<>(list),
+                emptyMessage,
+                search,
                 this::selectCourseToRemove,
                 true
         );
     }
 
     public void addJournalEntryMenu() {
-        SafeInput si = new SafeInput(new Scanner(System.in));
+        SafeInput si = SafeInput.console();
 
-        Teacher teacher = null;
-        while (teacher == null) {
-            System.out.println("\nSelect a teacher:");
-            int i = 1;
-            for (Teacher t : teachers) {
-                System.out.println(i + ". " + t.getName());
-                i++;
-            }
-            int choice = si.nextInt("Enter number (0 to cancel): ");
-            if (choice == 0) return;
-            teacher = new ArrayList<>(teachers).get(choice - 1);
+        if (teacherSearch.find("", 1).isEmpty()) {
+            System.out.println("No teachers found.");
+            return;
         }
+        Teacher teacher = searchPick("\nSelect a teacher:", "Cancel", teacherSearch);
+        if (teacher == null) return;
 
         Course course = null;
         while (course == null) {
@@ -506,28 +1956,14 @@ public class SchoolSystem implements IMenu {
         }
         final Course selectedCourse = course;
 
-        List<Student> courseStudents = students.stream()
-                .filter(s -> s.getCourses().contains(selectedCourse))
-                .toList();
-        if (courseStudents.isEmpty()) {
+        if (selectedCourse.getStudents().isEmpty()) {
             System.out.println("No students in this course.");
             return;
         }
 
-        Student student = null;
-        while (student == null) {
-            System.out.println("\nSelect student to give grade in course " + course.getSubject() + ": ");
-
-            int i = 1;
-            for (Student s : courseStudents) {
-                System.out.println(i + ". " + s.getName());
-                i++;
-            }
-            int choice = si.nextInt("Enter number (0 to cancel): ");
-            si.nextLine("");
-            if (choice == 0) return;
-            student = courseStudents.get(choice - 1);
-        }
+        Student student = searchPick("\nSelect student to give grade in course " + course.getSubject() + ": ", "Cancel",
+                studentSearch.within(selectedCourse.getStudents()));
+        if (student == null) return;
 
         Grade grade = null;
         while (grade == null) {
@@ -542,7 +1978,7 @@ public class SchoolSystem implements IMenu {
         String comment = si.nextLine("Enter comment (optional): ");
 
         JournalEntry entry = new JournalEntry(course, teacher, student, grade, comment, LocalDate.now());
-        journal.add(entry);
+        addJournalEntry(entry);
 
         System.out.println(String.format("""
             ✅ Journal entry added:
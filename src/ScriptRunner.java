@@ -0,0 +1,529 @@
+import Helpers.Metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Runs a command file against the school without the menu, one CSV line per command; blank lines and lines
+// starting with # are skipped:
+//   add-course,subject
+//   add-student,name,securityNumber,email,classYear
+//   add-teacher,name,securityNumber,email,experienceYear
+//   assign,role,securityNumber,subject          role being STUDENT or TEACHER
+//   remove,role,securityNumber,subject
+//   grade,teacherSecurityNumber,studentSecurityNumber,subject,grade[,comment]
+//   save
+//   report,transcripts,directory               one transcript per student, only those that changed
+//   report,combined,file                       all transcripts in one file
+//   begin ... commit                           the commands between are applied all together or not at all
+// Paths are relative to the command file. Lines are read in chunks, parsed and validated in parallel and applied
+// in file order. Commands don't wait for their log records to be written, only save, report and the end of
+// each chunk wait for all before them. A group is checked against the school as it would be after each of its
+// commands before anything is applied, then applied as one change, logged as a single record. Should a command
+// of the group still fail, the school undoes the ones before it and nothing is logged.
+// Rejected commands are reported with their line numbers in <file>.errors.csv.
+public class ScriptRunner {
+    private static final int CHUNK_SIZE = 8192;
+    private static final Metrics.Counter APPLIED = Metrics.counter("school_script_commands_total", "Commands of scripts",
+            "result", "applied");
+    private static final Metrics.Counter REJECTED = Metrics.counter("school_script_commands_total", "Commands of scripts",
+            "result", "rejected");
+
+    enum Command {
+        ADD_COURSE("add-course", 1, 1),
+        ADD_STUDENT("add-student", 4, 4),
+        ADD_TEACHER("add-teacher", 4, 4),
+        ASSIGN("assign", 3, 3),
+        REMOVE("remove", 3, 3),
+        GRADE("grade", 4, 5),
+        SAVE("save", 0, 0),
+        REPORT("report", 2, 2),
+        BEGIN("begin", 0, 0),
+        COMMIT("commit", 0, 0);
+
+        private final String word;
+        private final int minArguments;
+        private final int maxArguments;
+
+        Command(String word, int minArguments, int maxArguments) {
+            this.word = word;
+            this.minArguments = minArguments;
+            this.maxArguments = maxArguments;
+        }
+
+        static Command forWord(String word) {
+            for (Command command : values()) {
+                if (command.word.equalsIgnoreCase(word)) {
+                    return command;
+                }
+            }
+            return null;
+        }
+    }
+
+    public record Report(Path file, long commands, List<BulkImporter.RowError> errors, List<String> output, long nanos) {
+        public String summary() {
+            String summary = String.format("%s: %d of %d commands applied in %.2f s (%.0f commands/s)", file,
+                    commands - errors.size(), commands, nanos / 1e9, commands / Math.max(nanos / 1e9, 1e-9));
+            return errors.isEmpty() ? summary
+                    : summary + ", " + errors.size() + " rejected, see " + BulkImporter.errorReportFile(file);
+        }
+    }
+
+    // A command after the parallel stage: its arguments, or why it was rejected
+    private record Checked(long line, Command command, String[] arguments, String error) {}
+
+    private record Line(long number, String text) {}
+
+    // Thrown inside a group by the first command that fails, which undoes the group
+    private static final class GroupFailed extends RuntimeException {
+        private final long line;
+
+        GroupFailed(long line, String error) {
+            super(error);
+            this.line = line;
+        }
+    }
+
+    // Only their normalize() is used, so that groups compare keys as the school does
+    private static final UniqueIndex<Person> SECURITY_NUMBERS = SchoolSystem.securityNumberIndex("person");
+    private static final UniqueIndex<Person> EMAILS = SchoolSystem.emailIndex("person");
+    private static final UniqueIndex<Course> SUBJECTS = SchoolSystem.subjectIndex();
+
+    private final SchoolSystem system;
+    private Path directory;
+    private List<BulkImporter.RowError> errors;
+    private List<String> output;
+    // The commands of the open group, null outside of one
+    private List<Checked> group;
+    private long groupStart;
+
+    public ScriptRunner(SchoolSystem system) {
+        this.system = system;
+    }
+
+    public Report run(Path file) throws IOException {
+        long start = System.nanoTime();
+        directory = file.toAbsolutePath().getParent();
+        errors = new ArrayList<>();
+        output = new ArrayList<>();
+        group = null;
+        long commands = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            List<Line> chunk = new ArrayList<>(CHUNK_SIZE);
+            long number = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                number++;
+                if (text.isBlank() || text.stripLeading().startsWith("#")) {
+                    continue;
+                }
+                chunk.add(new Line(number, text));
+                if (chunk.size() == CHUNK_SIZE) {
+                    runChunk(chunk);
+                    commands += chunk.size();
+                    chunk.clear();
+                }
+            }
+            runChunk(chunk);
+            commands += chunk.size();
+        }
+        if (group != null) {
+            rejectGroup();
+        }
+        // Commands of a rejected group are reported after the commit that rejected them
+        errors.sort(Comparator.comparingLong(BulkImporter.RowError::line));
+        BulkImporter.writeErrorReport(file, errors);
+        APPLIED.add(commands - errors.size());
+        REJECTED.add(errors.size());
+        return new Report(file, commands, errors, output, System.nanoTime() - start);
+    }
+
+    private void runChunk(List<Line> chunk) {
+        List<Checked> checked = chunk.parallelStream().map(ScriptRunner::check).toList();
+        int[] next = {0};
+        while (next[0] < checked.size()) {
+            // Runs up to the next save or report, which need the commands before them logged
+            MutationLog.await(system.pipelined(() -> {
+                while (next[0] < checked.size()) {
+                    Checked command = checked.get(next[0]);
+                    if (group == null && command.error() == null
+                            && (command.command() == Command.SAVE || command.command() == Command.REPORT)) {
+                        return;
+                    }
+                    next[0]++;
+                    step(command);
+                }
+            }));
+            if (next[0] < checked.size()) {
+                Checked barrier = checked.get(next[0]++);
+                fail(barrier, runBarrier(barrier));
+            }
+        }
+    }
+
+    private void step(Checked command) {
+        if (group != null) {
+            if (command.error() != null) {
+                group.add(command);
+            } else if (command.command() == Command.COMMIT) {
+                commit(command);
+            } else if (command.command() == Command.BEGIN) {
+                group.add(new Checked(command.line(), null, null, "begin inside a group"));
+            } else if (command.command() == Command.SAVE || command.command() == Command.REPORT) {
+                group.add(new Checked(command.line(), null, null, "can't save or report inside a group"));
+            } else {
+                group.add(command);
+            }
+            return;
+        }
+        if (command.error() != null) {
+            fail(command, command.error());
+        } else if (command.command() == Command.BEGIN) {
+            group = new ArrayList<>();
+            groupStart = command.line();
+        } else if (command.command() == Command.COMMIT) {
+            fail(command, "commit without begin");
+        } else {
+            fail(command, apply(command));
+        }
+    }
+
+    private void commit(Checked commit) {
+        List<Checked> commands = group;
+        group = null;
+        Map<Long, String> rejected = new HashMap<>();
+        try {
+            system.group(() -> {
+                rejected.putAll(new GroupCheck().check(commands));
+                if (!rejected.isEmpty()) {
+                    return;
+                }
+                for (Checked command : commands) {
+                    String error = apply(command);
+                    if (error != null) {
+                        throw new GroupFailed(command.line(), error);
+                    }
+                }
+            });
+        } catch (GroupFailed e) {
+            rejected.put(e.line, e.getMessage());
+        }
+        if (rejected.isEmpty()) {
+            return;
+        }
+        rejected.forEach((line, error) -> errors.add(new BulkImporter.RowError(line, error)));
+        for (Checked command : commands) {
+            if (!rejected.containsKey(command.line())) {
+                errors.add(new BulkImporter.RowError(command.line(), groupFailed("has rejected commands")));
+            }
+        }
+        errors.add(new BulkImporter.RowError(groupStart, groupFailed("has rejected commands")));
+        errors.add(new BulkImporter.RowError(commit.line(), groupFailed("has rejected commands")));
+    }
+
+    private String groupFailed(String why) {
+        return "not applied, the group from line " + groupStart + " " + why;
+    }
+
+    // A group left open at the end of the file: every command in it is rejected, begin included
+    private void rejectGroup() {
+        errors.add(new BulkImporter.RowError(groupStart, "begin without commit"));
+        for (Checked command : group) {
+            errors.add(new BulkImporter.RowError(command.line(),
+                    command.error() != null ? command.error() : groupFailed("has no commit")));
+        }
+        group = null;
+    }
+
+    private void fail(Checked command, String error) {
+        if (error != null) {
+            errors.add(new BulkImporter.RowError(command.line(), error));
+        }
+    }
+
+    // Returns why the command was rejected, or null if it was applied
+    private String apply(Checked checked) {
+        String[] a = checked.arguments();
+        try {
+            switch (checked.command()) {
+                case ADD_COURSE -> {
+                    if (system.findCourseBySubject(a[0]) != null) {
+                        return "course " + a[0] + " already exists";
+                    }
+                    system.createCourse(a[0]);
+                }
+                case ADD_STUDENT -> system.createStudent(a[0], a[1], a[2], Integer.parseInt(a[3]));
+                case ADD_TEACHER -> system.createTeacher(a[0], a[1], a[2], Integer.parseInt(a[3]));
+                case ASSIGN, REMOVE -> {
+                    Person person = findPerson(Roles.valueOf(a[0].toUpperCase()), a[1]);
+                    Course course = system.findCourseBySubject(a[2]);
+                    if (person == null) {
+                        return "no " + a[0].toLowerCase() + " with security number " + a[1];
+                    } else if (course == null) {
+                        return "no course " + a[2];
+                    }
+                    if (checked.command() == Command.ASSIGN && !system.assignCourse(person, course)) {
+                        return person.getName() + " is already in " + course.getSubject() + " or waiting for it";
+                    } else if (checked.command() == Command.REMOVE && !system.removeCourse(person, course)) {
+                        return person.getName() + " is not in " + course.getSubject();
+                    }
+                }
+                case GRADE -> {
+                    Teacher teacher = system.findTeacherBySecurityNumber(a[0]);
+                    Student student = system.findStudentBySecurityNumber(a[1]);
+                    Course course = system.findCourseBySubject(a[2]);
+                    if (teacher == null) {
+                        return "no teacher with security number " + a[0];
+                    } else if (student == null) {
+                        return "no student with security number " + a[1];
+                    } else if (course == null) {
+                        return "no course " + a[2];
+                    } else if (!teacher.getCourses().contains(course)) {
+                        return teacher.getName() + " doesn't teach " + course.getSubject();
+                    } else if (!student.getCourses().contains(course)) {
+                        return student.getName() + " is not in " + course.getSubject();
+                    }
+                    system.addJournalEntry(new JournalEntry(course, teacher, student, Grade.valueOf(a[3].toUpperCase()),
+                            a.length > 4 ? a[4] : "", LocalDate.now()));
+                }
+                default -> throw new IllegalStateException("Not applied one at a time: " + checked.command());
+            }
+            return null;
+        } catch (InvalidPersonalData | InvalidCourseData e) {
+            return e.getMessage();
+        }
+    }
+
+    private Person findPerson(Roles role, String securityNumber) {
+        return switch (role) {
+            case STUDENT -> system.findStudentBySecurityNumber(securityNumber);
+            case TEACHER -> system.findTeacherBySecurityNumber(securityNumber);
+        };
+    }
+
+    // Runs with every command before it logged; returns why it failed, or null
+    private String runBarrier(Checked checked) {
+        try {
+            if (checked.command() == Command.SAVE) {
+                system.saveData();
+                return null;
+            }
+            Path target = directory.resolve(checked.arguments()[1]);
+            TranscriptGenerator generator = new TranscriptGenerator(system);
+            output.add((checked.arguments()[0].equalsIgnoreCase("combined")
+                    ? generator.writeCombined(target, TranscriptGenerator.Format.TEXT)
+                    : generator.writeFiles(target, TranscriptGenerator.Format.TEXT, true)).summary());
+            return null;
+        } catch (IOException e) {
+            return "error writing " + checked.arguments()[1] + ": " + e.getMessage();
+        }
+    }
+
+    // Runs on the worker threads: must not touch the school
+    private static Checked check(Line line) {
+        String[] fields;
+        try {
+            fields = BulkImporter.parseLine(line.text());
+        } catch (IllegalArgumentException e) {
+            return new Checked(line.number(), null, null, e.getMessage());
+        }
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+        Command command = Command.forWord(fields[0]);
+        if (command == null) {
+            return new Checked(line.number(), null, null, "unknown command " + fields[0]);
+        }
+        String[] a = new String[fields.length - 1];
+        System.arraycopy(fields, 1, a, 0, a.length);
+        if (a.length < command.minArguments || a.length > command.maxArguments) {
+            return new Checked(line.number(), null, null, command.word + " takes "
+                    + (command.minArguments == command.maxArguments ? command.minArguments
+                    : command.minArguments + " or " + command.maxArguments) + " arguments, found " + a.length);
+        }
+        String error = switch (command) {
+            case ADD_COURSE -> a[0].isEmpty() ? "empty course name" : "";
+            case ADD_STUDENT, ADD_TEACHER -> {
+                int year;
+                try {
+                    year = Integer.parseInt(a[3]);
+                } catch (NumberFormatException e) {
+                    yield "year is not a number";
+                }
+                yield Validator.describe(Validator.checkPersonalData(a[0], a[1], a[2], year));
+            }
+            case ASSIGN, REMOVE -> {
+                if (!a[0].equalsIgnoreCase(Roles.STUDENT.name()) && !a[0].equalsIgnoreCase(Roles.TEACHER.name())) {
+                    yield "role must be student or teacher";
+                }
+                yield a[2].isEmpty() ? "empty course name" : "";
+            }
+            case GRADE -> {
+                try {
+                    Grade.valueOf(a[3].toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    yield "grade must be A-F, NA, ABSENT or SPECIAL";
+                }
+                yield a[2].isEmpty() ? "empty course name" : "";
+            }
+            case REPORT -> a[0].equalsIgnoreCase("transcripts") || a[0].equalsIgnoreCase("combined")
+                    ? a[1].isEmpty() ? "no path to write the report to" : ""
+                    : "report must be transcripts or combined";
+            case SAVE, BEGIN, COMMIT -> "";
+        };
+        return error.isEmpty() ? new Checked(line.number(), command, a, null)
+                : new Checked(line.number(), null, null, error);
+    }
+
+    // The school as a group would leave it after each of its commands, on top of what is in the school.
+    // Subjects, security numbers and emails are kept normalized, as the school's indexes keep them.
+    // Runs under the write lock, so nothing else changes meanwhile. Student enrollments are taken to be
+    // waitlisted whenever the school or the group would put them there; seats freed by removes are not counted,
+    // as a student from the waitlist may take them.
+    private final class GroupCheck {
+        private enum Place { OUT, IN, WAITING }
+
+        private final Set<String> newCourses = new HashSet<>();
+        private final Set<String> newKeys = new HashSet<>();
+        private final Map<String, Place> places = new HashMap<>();
+        private final Map<String, Integer> seatsTaken = new HashMap<>();
+        private final Set<String> waitlisted = new HashSet<>();
+
+        // Why each rejected command would fail, by line
+        Map<Long, String> check(List<Checked> commands) {
+            Map<Long, String> rejected = new HashMap<>();
+            for (Checked command : commands) {
+                String error = command.error() != null ? command.error() : check(command);
+                if (error != null) {
+                    rejected.put(command.line(), error);
+                }
+            }
+            return rejected;
+        }
+
+        private String check(Checked checked) {
+            String[] a = checked.arguments();
+            switch (checked.command()) {
+                case ADD_COURSE -> {
+                    if (courseExists(a[0])) {
+                        return "course " + a[0] + " already exists";
+                    }
+                    newCourses.add(SUBJECTS.normalize(a[0]));
+                }
+                case ADD_STUDENT, ADD_TEACHER -> {
+                    boolean student = checked.command() == Command.ADD_STUDENT;
+                    String role = student ? "student" : "teacher";
+                    if ((student ? system.findStudentBySecurityNumber(a[1]) : system.findTeacherBySecurityNumber(a[1])) != null
+                            || !newKeys.add(role + " sn " + SECURITY_NUMBERS.normalize(a[1]))) {
+                        return role + " with security number " + a[1] + " already exists";
+                    }
+                    if ((student ? system.findStudentByEmail(a[2]) : system.findTeacherByEmail(a[2])) != null
+                            || !newKeys.add(role + " email " + EMAILS.normalize(a[2]))) {
+                        return role + " with email " + a[2] + " already exists";
+                    }
+                }
+                case ASSIGN, REMOVE -> {
+                    Roles role = Roles.valueOf(a[0].toUpperCase());
+                    String error = missing(role, a[1], a[2]);
+                    if (error != null) {
+                        return error;
+                    }
+                    String key = placeKey(role, a[1], a[2]);
+                    Place place = place(role, a[1], a[2]);
+                    if (checked.command() == Command.REMOVE) {
+                        if (place == Place.OUT) {
+                            return a[0].toLowerCase() + " " + a[1] + " is not in " + a[2];
+                        }
+                        places.put(key, Place.OUT);
+                    } else if (place != Place.OUT) {
+                        return a[0].toLowerCase() + " " + a[1] + " is already in " + a[2] + " or waiting for it";
+                    } else if (role == Roles.TEACHER || hasSeat(a[2])) {
+                        places.put(key, Place.IN);
+                    } else {
+                        places.put(key, Place.WAITING);
+                        waitlisted.add(SUBJECTS.normalize(a[2]));
+                    }
+                }
+                case GRADE -> {
+                    String error = missing(Roles.TEACHER, a[0], a[2]);
+                    if (error == null) {
+                        error = missing(Roles.STUDENT, a[1], a[2]);
+                    }
+                    if (error != null) {
+                        return error;
+                    } else if (place(Roles.TEACHER, a[0], a[2]) != Place.IN) {
+                        return "teacher " + a[0] + " doesn't teach " + a[2];
+                    } else if (place(Roles.STUDENT, a[1], a[2]) != Place.IN) {
+                        return "student " + a[1] + " is not in " + a[2];
+                    }
+                }
+                default -> {
+                    return "not allowed inside a group";
+                }
+            }
+            return null;
+        }
+
+        private boolean courseExists(String subject) {
+            return system.findCourseBySubject(subject) != null || newCourses.contains(SUBJECTS.normalize(subject));
+        }
+
+        private String missing(Roles role, String securityNumber, String subject) {
+            if (findPerson(role, securityNumber) == null
+                    && !newKeys.contains(role.name().toLowerCase() + " sn " + SECURITY_NUMBERS.normalize(securityNumber))) {
+                return "no " + role.name().toLowerCase() + " with security number " + securityNumber;
+            }
+            return courseExists(subject) ? null : "no course " + subject;
+        }
+
+        private Place place(Roles role, String securityNumber, String subject) {
+            Place place = places.get(placeKey(role, securityNumber, subject));
+            if (place != null) {
+                return place;
+            }
+            Person person = findPerson(role, securityNumber);
+            Course course = system.findCourseBySubject(subject);
+            if (person == null || course == null) {
+                return Place.OUT;
+            } else if (person.getCourses().contains(course)) {
+                return Place.IN;
+            }
+            return person instanceof Student student && student.isWaitingFor(course) ? Place.WAITING : Place.OUT;
+        }
+
+        private static String placeKey(Roles role, String securityNumber, String subject) {
+            return role + "," + SECURITY_NUMBERS.normalize(securityNumber) + "," + SUBJECTS.normalize(subject);
+        }
+
+        // New courses have no limit; a student joins the waitlist of a course that has one
+        private boolean hasSeat(String subject) {
+            Course course = system.findCourseBySubject(subject);
+            if (course == null) {
+                return true;
+            }
+            String key = SUBJECTS.normalize(subject);
+            if (course.hasWaitlist() || waitlisted.contains(key)) {
+                return false;
+            }
+            int taken = seatsTaken.getOrDefault(key, 0);
+            if (course.getFreeSeats() <= taken) {
+                return false;
+            }
+            seatsTaken.put(key, taken + 1);
+            return true;
+        }
+    }
+}
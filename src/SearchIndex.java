@@ -0,0 +1,154 @@
+import Helpers.Named;
+import Helpers.Search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+// Prefix search over words of an entity, e.g. the name, each part of the name, email and security number.
+// Words are stored folded to lower case without diacritics, so "ost" finds Östen and "asa" finds Åsa.
+// The words of all entities are kept in one sorted map; a query walks the words starting with it,
+// so the first matches come back in O(log n + matches) whatever the number of entities.
+// Indexed entities hold a reference to the index and are re-indexed by their setters.
+public class SearchIndex<T extends Named> implements Search<T> {
+    private record Key(String word, int id) {}
+
+    private static final Comparator<Key> ORDER = Comparator.comparing(Key::word).thenComparingInt(Key::id);
+
+    private final ToIntFunction<T> id;
+    private final Function<T, List<String>> words;
+    private final ConcurrentSkipListMap<Key, T> entries = new ConcurrentSkipListMap<>(ORDER);
+
+    // words gives the searchable texts of an entity; texts of several words are also indexed by each word
+    public SearchIndex(ToIntFunction<T> id, Function<T, List<String>> words) {
+        this.id = id;
+        this.words = words;
+    }
+
+    public void add(T item) {
+        int itemId = id.applyAsInt(item);
+        for (String word : keysOf(item)) {
+            entries.put(new Key(word, itemId), item);
+        }
+    }
+
+    // Returns false if the item was not in the index
+    public boolean remove(T item) {
+        int itemId = id.applyAsInt(item);
+        boolean removed = false;
+        for (String word : keysOf(item)) {
+            removed |= entries.remove(new Key(word, itemId), item);
+        }
+        return removed;
+    }
+
+    // For the setters of the entities, which only know their index as SearchIndex<?>
+    @SuppressWarnings("unchecked")
+    boolean removeItem(Object item) {
+        return remove((T) item);
+    }
+
+    @SuppressWarnings("unchecked")
+    void addItem(Object item) {
+        add((T) item);
+    }
+
+    @Override
+    public List<T> find(String query, int limit) {
+        return find(query, limit, item -> true);
+    }
+
+    // The first limit entities that have a word starting with the query and pass the filter
+    public List<T> find(String query, int limit, Predicate<? super T> filter) {
+        String prefix = fold(query);
+        Set<T> matches = new LinkedHashSet<>();
+        Set<T> rejected = new HashSet<>();
+        for (Map.Entry<Key, T> entry : entries.tailMap(new Key(prefix, Integer.MIN_VALUE), true).entrySet()) {
+            if (matches.size() >= limit || !entry.getKey().word().startsWith(prefix)) {
+                break;
+            }
+            T item = entry.getValue();
+            if (!matches.contains(item) && !rejected.contains(item)) {
+                if (filter.test(item)) {
+                    matches.add(item);
+                } else {
+                    rejected.add(item);
+                }
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    // Search over a few of the indexed entities, like the students of one course, sorted by name.
+    // Scans them, which beats filtering the whole index when there are few.
+    @SuppressWarnings("unchecked")
+    public Search<T> within(Collection<? extends T> items) {
+        return (query, limit) -> {
+            String prefix = fold(query);
+            return items.stream()
+                    .filter(item -> keysOf(item).stream().anyMatch(word -> word.startsWith(prefix)))
+                    .sorted(Comparator.comparing(Named::getName, String.CASE_INSENSITIVE_ORDER))
+                    .limit(limit)
+                    .map(item -> (T) item)
+                    .toList();
+        };
+    }
+
+    private List<String> keysOf(T item) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String text : words.apply(item)) {
+            if (text == null) {
+                continue;
+            }
+            String folded = fold(text);
+            keys.add(folded);
+            for (String word : folded.split("[ \\-]")) {
+                if (!word.isEmpty()) {
+                    keys.add(word);
+                }
+            }
+        }
+        return new ArrayList<>(keys);
+    }
+
+    // Lower case, diacritics removed and runs of spaces made single
+    static String fold(String text) {
+        String decomposed = Normalizer.normalize(text.strip(), Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                folded.append(' ');
+                space = false;
+            }
+            switch (c) {
+                // Letters that don't decompose into a base letter and a mark
+                case 'ø', 'Ø' -> folded.append('o');
+                case 'æ', 'Æ' -> folded.append("ae");
+                case 'ß' -> folded.append("ss");
+                case 'đ', 'Đ' -> folded.append('d');
+                case 'ł', 'Ł' -> folded.append('l');
+                default -> folded.append(Character.toLowerCase(c));
+            }
+        }
+        return folded.toString();
+    }
+}
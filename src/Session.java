@@ -0,0 +1,67 @@
+import Helpers.Named;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+// A weekly lesson of a course: the same day, time and room every week
+public record Session(DayOfWeek day, LocalTime start, LocalTime end, String room) implements Named {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    // Throws IllegalArgumentException unless the session ends after it starts, on the same day, in a named room
+    public Session {
+        if (day == null || start == null || end == null || !start.isBefore(end)) {
+            throw new IllegalArgumentException("A session must end after it starts: " + start + "-" + end);
+        }
+        if (room == null || room.isBlank()) {
+            throw new IllegalArgumentException("A session needs a room");
+        }
+        room = room.strip();
+    }
+
+    // Minutes from the start of the week, Monday 00:00
+    public int startMinute() {
+        return (day.getValue() - 1) * MINUTES_PER_DAY + start.getHour() * 60 + start.getMinute();
+    }
+
+    // Minutes from the start of the week to the end of the session, which is past startMinute()
+    public int endMinute() {
+        return (day.getValue() - 1) * MINUTES_PER_DAY + end.getHour() * 60 + end.getMinute();
+    }
+
+    public boolean overlaps(Session other) {
+        return startMinute() < other.endMinute() && other.startMinute() < endMinute();
+    }
+
+    // Parses what getName() writes, like "MON 08:00-09:30 A101". The day may also be written out.
+    // Throws IllegalArgumentException if the text isn't a session.
+    public static Session parse(String text) {
+        String[] parts = text.strip().split("\\s+", 3);
+        String[] times = parts.length == 3 ? parts[1].split("-") : new String[0];
+        if (times.length != 2) {
+            throw new IllegalArgumentException("Not a session, expected like MON 08:00-09:30 A101: " + text);
+        }
+        try {
+            return new Session(day(parts[0]), LocalTime.parse(times[0]), LocalTime.parse(times[1]), parts[2]);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a time in " + text + ": " + e.getParsedString());
+        }
+    }
+
+    private static DayOfWeek day(String text) {
+        String upper = text.toUpperCase(Locale.ROOT);
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (day.name().equals(upper) || day.name().startsWith(upper) && upper.length() >= 3) {
+                return day;
+            }
+        }
+        throw new IllegalArgumentException("Not a day: " + text);
+    }
+
+    @Override
+    public String getName() {
+        return day.name().substring(0, 3) + " " + start + "-" + end + " " + room;
+    }
+}
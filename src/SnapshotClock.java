@@ -0,0 +1,23 @@
+// Lets a snapshot of the model be taken without copying it while the model is locked.
+// Taking a snapshot pins the current time and moves the clock on. Entities remember when they last changed,
+// and the first time one changes after the pin it keeps its state from before, so the snapshot can be read
+// from the live entities afterwards. One snapshot is read at a time; pinning the next one releases the last.
+public class SnapshotClock {
+    private long now = 1;
+    private long pinned = 0;
+
+    // Called with the model locked exclusively. Returns the time to read the entities at.
+    public synchronized long pin() {
+        pinned = now;
+        return now++;
+    }
+
+    public synchronized long now() {
+        return now;
+    }
+
+    // Whether something that last changed at the given time has to keep its current state before changing again
+    public synchronized boolean keepsState(long changedAt) {
+        return changedAt <= pinned;
+    }
+}
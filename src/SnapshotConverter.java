@@ -0,0 +1,24 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Converts a snapshot between the JSON and binary formats, e.g.
+//   java SnapshotConverter data.txt data.bin
+// The format of the input is detected from its contents, the output format from its file name.
+// Journal segments are copied along when the output goes to another directory.
+public class SnapshotConverter {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: SnapshotConverter <input file> <output file>");
+            return;
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        SchoolData data = SnapshotFormat.detect(input).read(input);
+        JournalSegments.copy(JournalSegments.directoryFor(input), JournalSegments.directoryFor(output),
+                data.journal().sealedRows());
+        SnapshotFormat.forFileName(output).writeAtomically(output, data, false);
+        System.out.println("Converted " + input + " to " + output + " (" + data.students().size() + " students, "
+                + data.teachers().size() + " teachers, " + data.courses().size() + " courses, "
+                + data.journal().size() + " journal entries).");
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// The file formats a snapshot of the school data can be saved in
+public enum SnapshotFormat {
+    JSON {
+        @Override
+        public SchoolData read(Path path) throws IOException {
+            return JsonStore.read(path);
+        }
+
+        @Override
+        void write(Path path, SchoolData data, boolean prettyPrinting) throws IOException {
+            JsonStore.write(path, data, prettyPrinting);
+        }
+    },
+    BINARY {
+        @Override
+        public SchoolData read(Path path) throws IOException {
+            return BinaryStore.read(path);
+        }
+
+        @Override
+        void write(Path path, SchoolData data, boolean prettyPrinting) throws IOException {
+            BinaryStore.write(path, data);
+        }
+    };
+
+    public abstract SchoolData read(Path path) throws IOException;
+
+    abstract void write(Path path, SchoolData data, boolean prettyPrinting) throws IOException;
+
+    // Writes to a temporary file first, so that a crash during the write leaves the previous file intact.
+    // The writers sync the file before it is renamed, and the directory is synced after, so the rename lasts too.
+    public void writeAtomically(Path path, SchoolData data, boolean prettyPrinting) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        write(temp, data, prettyPrinting);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    // Not every platform can open a directory; there the rename is left to the file system to persist
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Nothing more to do
+        }
+    }
+
+    // Binary snapshots are named *.bin, everything else is JSON
+    public static SnapshotFormat forFileName(Path path) {
+        return path.getFileName().toString().endsWith(".bin") ? BINARY : JSON;
+    }
+
+    public static SnapshotFormat detect(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == BinaryStore.MAGIC ? BINARY : JSON;
+        } catch (EOFException e) {
+            return JSON;
+        }
+    }
+}
@@ -1,6 +1,13 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class Student extends Person{
     private int classYear;
-    
+    // Courses the student waits for a seat in, with the ticket that gives their place in line
+    private final Map<Course, Long> waitlist = new ConcurrentHashMap<>();
+
     public Student(String name, String securityNumber, String email, int classYear) {
         super(name, securityNumber, email);
         this.classYear = classYear;
@@ -10,7 +17,53 @@ public class Student extends Person{
         return classYear;
     }
 
-    public void setClassYear(int classYear) {
+    public synchronized void setClassYear(int classYear) {
+        changing();
         this.classYear = classYear;
     }
+
+    @Override
+    int getYear() {
+        return classYear;
+    }
+
+    @Override
+    Map<Course, Long> getWaitlistTickets() {
+        return Collections.unmodifiableMap(waitlist);
+    }
+
+    public Set<Course> getWaitlistedCourses() {
+        return Collections.unmodifiableSet(waitlist.keySet());
+    }
+
+    public boolean isWaitingFor(Course course) {
+        return waitlist.containsKey(course);
+    }
+
+    // Puts the student last in line for the course, unless they are in it or waiting for it already
+    public synchronized boolean joinWaitlist(Course course) {
+        return joinWaitlist(course, course.newTicket());
+    }
+
+    // With the ticket the student got when they joined, as when loading
+    synchronized boolean joinWaitlist(Course course, long ticket) {
+        if (getCourses().contains(course) || waitlist.containsKey(course)) {
+            return false;
+        }
+        changing();
+        waitlist.put(course, ticket);
+        course.addWaiting(ticket, this);
+        return true;
+    }
+
+    public synchronized boolean leaveWaitlist(Course course) {
+        Long ticket = waitlist.get(course);
+        if (ticket == null) {
+            return false;
+        }
+        changing();
+        waitlist.remove(course);
+        course.removeWaiting(ticket);
+        return true;
+    }
 }
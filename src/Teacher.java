@@ -10,7 +10,13 @@ public class Teacher extends Person {
         return experienceYear;
     }
 
-    public void setExperienceYear(int experienceYear) {
+    public synchronized void setExperienceYear(int experienceYear) {
+        changing();
         this.experienceYear = experienceYear;
     }
+
+    @Override
+    int getYear() {
+        return experienceYear;
+    }
 }
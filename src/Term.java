@@ -0,0 +1,28 @@
+import Helpers.Named;
+
+import java.time.LocalDate;
+import java.time.Month;
+
+// A school term: spring runs from January to July, autumn from August to December
+public record Term(int year, boolean autumn) implements Named {
+    public static Term of(LocalDate date) {
+        return new Term(date.getYear(), date.getMonthValue() >= Month.AUGUST.getValue());
+    }
+
+    public LocalDate start() {
+        return autumn ? LocalDate.of(year, Month.AUGUST, 1) : LocalDate.of(year, Month.JANUARY, 1);
+    }
+
+    public LocalDate end() {
+        return autumn ? LocalDate.of(year, Month.DECEMBER, 31) : LocalDate.of(year, Month.JULY, 31);
+    }
+
+    public Term previous() {
+        return autumn ? new Term(year, false) : new Term(year - 1, true);
+    }
+
+    @Override
+    public String getName() {
+        return (autumn ? "Autumn " : "Spring ") + year;
+    }
+}
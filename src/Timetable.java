@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Clashes in the weekly timetable: a teacher or student with two sessions at the same time, or two sessions
+// in one room. The sessions of each teacher, student and room go into an IntervalIndex, so checking a session
+// against them takes O(log n) plus the sessions it overlaps. People only have the sessions of their own courses,
+// so their indexes are built when needed; the rooms are indexed for the whole school when this is made.
+public class Timetable {
+    // Two sessions at the same time; who is the teacher, student or room that has both
+    public record Clash(String who, Course course, Session session, Course other, Session otherSession) {
+        public String describe() {
+            return who + ": " + course.getSubject() + " " + session.getName() + " overlaps "
+                    + other.getSubject() + " " + otherSession.getName();
+        }
+    }
+
+    // The sessions of one teacher, student or room in order of start, with the latest end of each one and all
+    // before it. Those that may overlap a time are the ones starting before it ends, back to the last whose
+    // latest end is after it starts.
+    static final class IntervalIndex {
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] latestEnds;
+        private final Course[] courses;
+        private final Session[] sessions;
+
+        IntervalIndex(Collection<Course> courses) {
+            this(courses.stream().flatMap(course -> course.getSessions().stream().map(session -> Map.entry(course, session))));
+        }
+
+        private IntervalIndex(Stream<Map.Entry<Course, Session>> bookings) {
+            List<Map.Entry<Course, Session>> sorted = bookings
+                    .sorted(Comparator.comparingInt(booking -> booking.getValue().startMinute()))
+                    .toList();
+            int size = sorted.size();
+            starts = new int[size];
+            ends = new int[size];
+            latestEnds = new int[size];
+            courses = new Course[size];
+            sessions = new Session[size];
+            int latest = Integer.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                Session session = sorted.get(i).getValue();
+                courses[i] = sorted.get(i).getKey();
+                sessions[i] = session;
+                starts[i] = session.startMinute();
+                ends[i] = session.endMinute();
+                latest = Math.max(latest, ends[i]);
+                latestEnds[i] = latest;
+            }
+        }
+
+        int size() {
+            return starts.length;
+        }
+
+        // Positions of the sessions overlapping the minutes from start to end, other than those of the course
+        // left out (null for none)
+        List<Integer> overlapping(int start, int end, Course leftOut) {
+            List<Integer> found = new ArrayList<>(0);
+            // First position starting at or after end
+            int position = Arrays.binarySearch(starts, end);
+            position = position < 0 ? -position - 1 : firstAt(position);
+            for (int i = position - 1; i >= 0 && latestEnds[i] > start; i--) {
+                if (ends[i] > start && courses[i] != leftOut) {
+                    found.add(i);
+                }
+            }
+            return found;
+        }
+
+        // binarySearch finds any of equal starts
+        private int firstAt(int position) {
+            while (position > 0 && starts[position - 1] == starts[position]) {
+                position--;
+            }
+            return position;
+        }
+
+        // Every pair of overlapping sessions of different courses, each once
+        void clashes(String who, List<Clash> found) {
+            for (int i = 0; i < starts.length; i++) {
+                for (int other : overlapping(starts[i], ends[i], courses[i])) {
+                    if (other > i) {
+                        found.add(new Clash(who, courses[i], sessions[i], courses[other], sessions[other]));
+                    }
+                }
+            }
+        }
+
+        // The sessions of the index overlapping those of the course
+        void clashes(String who, Course course, List<Session> courseSessions, List<Clash> found) {
+            for (Session session : courseSessions) {
+                for (int other : overlapping(session.startMinute(), session.endMinute(), course)) {
+                    found.add(new Clash(who, course, session, courses[other], sessions[other]));
+                }
+            }
+        }
+    }
+
+    private final Map<String, IntervalIndex> rooms;
+
+    public Timetable(Collection<Course> courses) {
+        HashMap<String, List<Map.Entry<Course, Session>>> bookings = new HashMap<>();
+        for (Course course : courses) {
+            for (Session session : course.getSessions()) {
+                bookings.computeIfAbsent(session.room(), room -> new ArrayList<>()).add(Map.entry(course, session));
+            }
+        }
+        rooms = new HashMap<>();
+        bookings.forEach((room, sessions) -> rooms.put(room, new IntervalIndex(sessions.stream())));
+    }
+
+    // Every clash of the teachers and students and in the rooms, with the people checked in parallel
+    public List<Clash> clashes(Collection<Teacher> teachers, Collection<Student> students) {
+        List<Clash> found = new ArrayList<>();
+        rooms.forEach((room, index) -> index.clashes(room, found));
+        Stream.concat(teachers.stream(), students.stream()).parallel()
+                .flatMap(person -> clashes(person).stream())
+                .forEachOrdered(found::add);
+        return found;
+    }
+
+    // Sessions of the person's courses that overlap each other
+    public static List<Clash> clashes(Person person) {
+        List<Clash> found = new ArrayList<>(0);
+        new IntervalIndex(person.getCourses()).clashes(person.getName(), found);
+        return found;
+    }
+
+    // The clashes the person would have in the course
+    public static List<Clash> clashesIfEnrolled(Person person, Course course) {
+        List<Clash> found = new ArrayList<>(0);
+        new IntervalIndex(person.getCourses()).clashes(person.getName(), course, course.getSessions(), found);
+        return found;
+    }
+
+    // The clashes the course would cause for its teachers and students and in the rooms with these sessions
+    // instead of those it has
+    public List<Clash> clashesIfScheduled(Course course, List<Session> sessions) {
+        List<Clash> found = new ArrayList<>();
+        for (Session session : sessions) {
+            IntervalIndex room = rooms.get(session.room());
+            if (room != null) {
+                room.clashes(session.room(), course, List.of(session), found);
+            }
+        }
+        for (int i = 0; i < sessions.size(); i++) {
+            for (int j = i + 1; j < sessions.size(); j++) {
+                if (sessions.get(i).overlaps(sessions.get(j))) {
+                    found.add(new Clash(course.getSubject(), course, sessions.get(i), course, sessions.get(j)));
+                }
+            }
+        }
+        Stream.concat(course.getTeachers().stream(), course.getStudents().stream()).parallel()
+                .flatMap(person -> {
+                    List<Clash> clashes = new ArrayList<>(0);
+                    new IntervalIndex(person.getCourses()).clashes(person.getName(), course, sessions, clashes);
+                    return clashes.stream();
+                })
+                .forEachOrdered(found::add);
+        return found;
+    }
+}
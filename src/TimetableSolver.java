@@ -0,0 +1,207 @@
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// Proposes weekly sessions for every course such that no teacher, student or room has two at once, given who
+// is in which course. Two courses that share a teacher or a student can't be in the same period, and a period
+// has as many courses as rooms at most. Each attempt places the courses one by one, those that share people with
+// the most others first, in free periods on days they have no session on yet, the emptiest first. The attempts
+// differ in how they break ties and run in parallel, and the one placing the most courses wins.
+public class TimetableSolver {
+    // The week is cut into periodsPerDay periods a day from firstStart, each a lesson of lessonMinutes followed
+    // by a break of breakMinutes
+    public record Settings(List<DayOfWeek> days, LocalTime firstStart, int periodsPerDay, int lessonMinutes,
+                           int breakMinutes, int sessionsPerCourse, List<String> rooms, int attempts) {
+        public Settings {
+            if (days.isEmpty() || rooms.isEmpty() || periodsPerDay < 1 || lessonMinutes < 1 || breakMinutes < 0
+                    || sessionsPerCourse < 1 || attempts < 1) {
+                throw new IllegalArgumentException("No room in the week for a timetable");
+            }
+            int lastEnd = firstStart.toSecondOfDay() / 60 + periodsPerDay * (lessonMinutes + breakMinutes) - breakMinutes;
+            if (lastEnd > Session.MINUTES_PER_DAY - 1) {
+                throw new IllegalArgumentException("The periods don't fit in a day");
+            }
+            days = List.copyOf(days);
+            rooms = List.copyOf(rooms);
+        }
+
+        // Monday to Friday, eight 45 minute lessons a day from 8:00 with 15 minute breaks, and rooms named Room 1 on
+        public static Settings weekdays(int rooms, int sessionsPerCourse) {
+            List<String> names = IntStream.rangeClosed(1, rooms).mapToObj(room -> "Room " + room).toList();
+            return new Settings(List.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY,
+                    DayOfWeek.FRIDAY), LocalTime.of(8, 0), 8, 45, 15, sessionsPerCourse, names, 64);
+        }
+
+        int periods() {
+            return days.size() * periodsPerDay;
+        }
+    }
+
+    // The sessions for every course, none for those that couldn't be placed
+    public record Proposal(Map<Course, List<Session>> sessions, List<Course> unplaced, int attempts) {
+        private static final int UNPLACED_NAMED = 10;
+
+        public String summary() {
+            String summary = "Placed " + (sessions.size() - unplaced.size()) + " of " + sessions.size()
+                    + " courses, best of " + attempts + " attempts";
+            if (unplaced.isEmpty()) {
+                return summary;
+            }
+            List<String> named = unplaced.stream().map(Course::getSubject).sorted().limit(UNPLACED_NAMED).toList();
+            return summary + "; no periods left for " + String.join(", ", named)
+                    + (unplaced.size() > UNPLACED_NAMED ? " and " + (unplaced.size() - UNPLACED_NAMED) + " more" : "");
+        }
+    }
+
+    // Periods of each course in one attempt, -1 for courses that didn't fit
+    private record Attempt(int[][] periods, int unplaced, int sameDay) {
+        boolean betterThan(Attempt other) {
+            return unplaced != other.unplaced ? unplaced < other.unplaced : sameDay < other.sameDay;
+        }
+    }
+
+    private final Settings settings;
+
+    public TimetableSolver(Settings settings) {
+        this.settings = settings;
+    }
+
+    public Proposal solve(Collection<Course> schoolCourses) {
+        List<Course> courses = schoolCourses.stream().sorted(Comparator.comparingInt(Course::getId)).toList();
+        BitSet[] sharing = sharedPeople(courses);
+        Attempt best = IntStream.range(0, settings.attempts()).parallel()
+                .mapToObj(seed -> attempt(courses, sharing, new Random(seed)))
+                .reduce((a, b) -> b.betterThan(a) ? b : a)
+                .orElseThrow();
+
+        Map<Course, List<Session>> sessions = new LinkedHashMap<>();
+        List<Course> unplaced = new ArrayList<>();
+        // Rooms are handed out in order within each period
+        int[] roomsUsed = new int[settings.periods()];
+        for (int course = 0; course < courses.size(); course++) {
+            List<Session> placed = new ArrayList<>();
+            if (best.periods()[course][0] < 0) {
+                unplaced.add(courses.get(course));
+            } else {
+                for (int period : best.periods()[course]) {
+                    placed.add(session(period, settings.rooms().get(roomsUsed[period]++)));
+                }
+            }
+            sessions.put(courses.get(course), placed);
+        }
+        return new Proposal(sessions, unplaced, settings.attempts());
+    }
+
+    // For each course, the courses it shares a teacher or a student with. Built one course per task, from the
+    // courses of its people, so no two tasks write the same set.
+    private static BitSet[] sharedPeople(List<Course> courses) {
+        Map<Course, Integer> positions = new LinkedHashMap<>();
+        for (int i = 0; i < courses.size(); i++) {
+            positions.put(courses.get(i), i);
+        }
+        BitSet[] sharing = new BitSet[courses.size()];
+        IntStream.range(0, courses.size()).parallel().forEach(i -> {
+            BitSet others = new BitSet(courses.size());
+            Course course = courses.get(i);
+            List<Person> people = new ArrayList<>(course.getTeachers());
+            people.addAll(course.getStudents());
+            for (Person person : people) {
+                for (Course other : person.getCourses()) {
+                    Integer position = positions.get(other);
+                    if (position != null) {
+                        others.set(position);
+                    }
+                }
+            }
+            others.clear(i);
+            sharing[i] = others;
+        });
+        return sharing;
+    }
+
+    private Attempt attempt(List<Course> courses, BitSet[] sharing, Random random) {
+        int periods = settings.periods();
+        int perCourse = settings.sessionsPerCourse();
+        int rooms = settings.rooms().size();
+        // Courses in each period
+        BitSet[] inPeriod = new BitSet[periods];
+        for (int period = 0; period < periods; period++) {
+            inPeriod[period] = new BitSet(courses.size());
+        }
+        int[] roomsUsed = new int[periods];
+
+        // Most shared first, ties in random order
+        double[] noise = random.doubles(courses.size()).toArray();
+        Integer[] order = IntStream.range(0, courses.size()).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.<Integer>comparingInt(course -> -sharing[course].cardinality())
+                .thenComparingDouble(course -> noise[course]));
+
+        int[][] placed = new int[courses.size()][];
+        int unplaced = 0;
+        int sameDay = 0;
+        for (int course : order) {
+            int[] chosen = new int[perCourse];
+            boolean[] dayTaken = new boolean[settings.days().size()];
+            int doubled = 0;
+            int count = 0;
+            for (; count < perCourse; count++) {
+                int best = -1;
+                int bestScore = Integer.MAX_VALUE;
+                int ties = 0;
+                for (int period = 0; period < periods; period++) {
+                    if (roomsUsed[period] == rooms || inPeriod[period].intersects(sharing[course])
+                            || inPeriod[period].get(course)) {
+                        continue;
+                    }
+                    // A day the course has no session on yet, then the emptiest period
+                    int score = (dayTaken[period / settings.periodsPerDay()] ? rooms + 1 : 0) + roomsUsed[period];
+                    if (score < bestScore) {
+                        best = period;
+                        bestScore = score;
+                        ties = 1;
+                    } else if (score == bestScore && random.nextInt(++ties) == 0) {
+                        best = period;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                chosen[count] = best;
+                inPeriod[best].set(course);
+                roomsUsed[best]++;
+                doubled += dayTaken[best / settings.periodsPerDay()] ? 1 : 0;
+                dayTaken[best / settings.periodsPerDay()] = true;
+            }
+            if (count < perCourse) {
+                // Gives back what it took, so that the periods can go to courses that fit
+                for (int i = 0; i < count; i++) {
+                    inPeriod[chosen[i]].clear(course);
+                    roomsUsed[chosen[i]]--;
+                }
+                placed[course] = new int[]{-1};
+                unplaced++;
+            } else {
+                Arrays.sort(chosen);
+                placed[course] = chosen;
+                sameDay += doubled;
+            }
+        }
+        return new Attempt(placed, unplaced, sameDay);
+    }
+
+    private Session session(int period, String room) {
+        DayOfWeek day = settings.days().get(period / settings.periodsPerDay());
+        LocalTime start = settings.firstStart()
+                .plusMinutes((long) (period % settings.periodsPerDay()) * (settings.lessonMinutes() + settings.breakMinutes()));
+        return new Session(day, start, start.plusMinutes(settings.lessonMinutes()), room);
+    }
+}
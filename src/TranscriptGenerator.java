@@ -0,0 +1,349 @@
+import Helpers.Metrics;
+import Helpers.Table;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Writes a transcript for every student: each course with the grade that stands, its date and comment, and the
+// teachers who graded it. The journal is read once, in row order so that each segment is read only once, and the
+// rows are then grouped by student. Transcripts are rendered in parallel on the common fork-join pool and written
+// to one file per student, <id>.txt or <id>.json, or to one combined file in name order.
+// An incremental run renders every transcript again but only writes those that differ from what the last run
+// wrote into the same directory, and those whose file is missing, so grades, enrollments and renames of students,
+// courses or teachers are all picked up. A fingerprint of each transcript written is kept in the directory in
+// .transcripts.
+public class TranscriptGenerator {
+    private static final int CHUNK_SIZE = 4096;
+    private static final String STATE_FILE = ".transcripts";
+    private static final Metrics.Counter WRITTEN = Metrics.counter("school_transcripts_total", "Transcripts written");
+
+    public enum Format {
+        TEXT("txt"), JSON("json");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        String fileName(Student student) {
+            return student.getId() + "." + extension;
+        }
+    }
+
+    public record Report(Path target, int students, int written, long nanos) {
+        public String summary() {
+            return String.format("%d of %d transcripts written to %s in %.2f s", written, students, target, nanos / 1e9);
+        }
+    }
+
+    // One course on a transcript. Grade, date and comment are null when the student has no grade in it.
+    private record Line(String subject, Grade grade, LocalDate date, String comment, List<String> teachers) {}
+
+    private static final Table<Line> TABLE = new Table<Line>()
+            .addColumn("Course", 20, Line::subject)
+            .addColumn("Grade", 7, line -> line.grade() == null ? "-" : line.grade())
+            .addColumn("Date", 10, Line::date)
+            .addColumn("Teachers", 30, line -> String.join(", ", line.teachers()))
+            .addColumn("Comment", 30, Line::comment);
+
+    static {
+        // Builds the header lines now, so that the rendering threads only read them
+        TABLE.getHeader();
+    }
+
+    // Journal rows of some students, in journal order. The rows of the student at index i are
+    // order[start[i]] to order[start[i + 1] - 1], as positions into the other arrays.
+    private record Grouped(int[] start, int[] order, int[] courseIds, int[] teacherIds, byte[] grades, int[] epochDays,
+                           String[] comments) {}
+
+    private final SchoolSystem system;
+
+    public TranscriptGenerator(SchoolSystem system) {
+        this.system = system;
+    }
+
+    // One file per student in the directory, or only those that changed since the last run
+    public Report writeFiles(Path directory, Format format, boolean incremental) throws IOException {
+        long start = System.nanoTime();
+        JournalStore journal = system.getJournal();
+        Files.createDirectories(directory);
+        Properties state = readState(directory);
+        String prefix = format.extension + ".";
+        Map<Integer, Long> previous = incremental ? fingerprints(state, prefix) : Map.of();
+        Set<String> files = incremental ? fileNames(directory) : Set.of();
+        List<Student> students = new ArrayList<>(system.getStudents());
+        Grouped grouped = group(journal, journal.size(), students);
+        long[] fingerprints = new long[students.size()];
+        AtomicInteger written = new AtomicInteger();
+        IntStream.range(0, students.size()).parallel().forEach(i -> {
+            Student student = students.get(i);
+            String transcript = render(format, student, grouped, i);
+            fingerprints[i] = fingerprint(transcript);
+            String fileName = format.fileName(student);
+            Long last = previous.get(student.getId());
+            if (last != null && last == fingerprints[i] && files.contains(fileName)) {
+                return;
+            }
+            try {
+                Files.writeString(directory.resolve(fileName), transcript, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error writing the transcript of " + student.getName(), e);
+            }
+            written.incrementAndGet();
+        });
+        WRITTEN.add(written.get());
+        state.stringPropertyNames().stream().filter(key -> key.startsWith(prefix)).forEach(state::remove);
+        for (int i = 0; i < students.size(); i++) {
+            state.setProperty(prefix + students.get(i).getId(), Long.toHexString(fingerprints[i]));
+        }
+        writeState(directory, state);
+        return new Report(directory, students.size(), written.get(), System.nanoTime() - start);
+    }
+
+    // Every transcript in one file, by student name. Rendered a chunk at a time and written in order.
+    public Report writeCombined(Path file, Format format) throws IOException {
+        long start = System.nanoTime();
+        JournalStore journal = system.getJournal();
+        List<Student> students = new ArrayList<>();
+        system.getStudentsByName().ordered().forEach(students::add);
+        Grouped grouped = group(journal, journal.size(), students);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (format == Format.JSON) {
+                out.write("[");
+            }
+            for (int first = 0; first < students.size(); first += CHUNK_SIZE) {
+                List<String> rendered = IntStream.range(first, Math.min(first + CHUNK_SIZE, students.size())).parallel()
+                        .mapToObj(i -> render(format, students.get(i), grouped, i))
+                        .toList();
+                // JSON transcripts go one to a line, text ones are separated by a blank line
+                for (int i = 0; i < rendered.size(); i++) {
+                    if (format == Format.JSON) {
+                        out.write(first + i > 0 ? "," : "");
+                        out.newLine();
+                    } else if (first + i > 0) {
+                        out.newLine();
+                    }
+                    out.write(rendered.get(i));
+                }
+            }
+            if (format == Format.JSON) {
+                out.newLine();
+                out.write("]");
+                out.newLine();
+            }
+        }
+        WRITTEN.add(students.size());
+        return new Report(file, students.size(), students.size(), System.nanoTime() - start);
+    }
+
+    // The fingerprints the last run of a format wrote, by student id. Keys that are not ids, such as the journal
+    // row counts kept by earlier versions, are left out.
+    private static Map<Integer, Long> fingerprints(Properties state, String prefix) {
+        Map<Integer, Long> fingerprints = new HashMap<>();
+        for (String key : state.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                try {
+                    fingerprints.put(Integer.parseInt(key.substring(prefix.length())),
+                            Long.parseUnsignedLong(state.getProperty(key), 16));
+                } catch (NumberFormatException e) {
+                    // Not a fingerprint
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    private static Set<String> fileNames(Path directory) throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.map(path -> path.getFileName().toString()).collect(HashSet::new, Set::add, Set::addAll);
+        }
+    }
+
+    // 64 bits, so that two versions of a transcript practically never look the same
+    private static long fingerprint(String transcript) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < transcript.length(); i++) {
+            hash = 31 * hash + transcript.charAt(i);
+        }
+        return hash;
+    }
+
+    // The one pass over the journal: copies the rows of the students into arrays in journal order,
+    // then sorts their positions by student, which keeps them in journal order for each student
+    private static Grouped group(JournalStore journal, int rows, List<Student> students) {
+        int maxId = students.stream().mapToInt(Student::getId).max().orElse(0);
+        int[] indexById = new int[maxId + 1];
+        Arrays.fill(indexById, -1);
+        for (int i = 0; i < students.size(); i++) {
+            indexById[students.get(i).getId()] = i;
+        }
+        int capacity = students.size() == 0 ? 0 : Math.min(rows, 1024);
+        int[] studentIndexes = new int[capacity];
+        int[] courseIds = new int[capacity];
+        int[] teacherIds = new int[capacity];
+        byte[] grades = new byte[capacity];
+        int[] epochDays = new int[capacity];
+        String[] comments = new String[capacity];
+        int[] start = new int[students.size() + 1];
+        int count = 0;
+        for (int row = 0; row < rows && students.size() > 0; row++) {
+            int id = journal.getStudentId(row);
+            int index = id <= maxId ? indexById[id] : -1;
+            if (index < 0) {
+                continue;
+            }
+            if (count == studentIndexes.length) {
+                int grown = Math.min(rows, count * 2);
+                studentIndexes = Arrays.copyOf(studentIndexes, grown);
+                courseIds = Arrays.copyOf(courseIds, grown);
+                teacherIds = Arrays.copyOf(teacherIds, grown);
+                grades = Arrays.copyOf(grades, grown);
+                epochDays = Arrays.copyOf(epochDays, grown);
+                comments = Arrays.copyOf(comments, grown);
+            }
+            studentIndexes[count] = index;
+            courseIds[count] = journal.getCourseId(row);
+            teacherIds[count] = journal.getTeacherId(row);
+            grades[count] = (byte) journal.getGrade(row).ordinal();
+            epochDays[count] = journal.getEpochDay(row);
+            comments[count] = journal.getComment(row);
+            start[index + 1]++;
+            count++;
+        }
+        for (int i = 0; i < students.size(); i++) {
+            start[i + 1] += start[i];
+        }
+        int[] next = Arrays.copyOf(start, students.size());
+        int[] order = new int[count];
+        for (int position = 0; position < count; position++) {
+            order[next[studentIndexes[position]]++] = position;
+        }
+        return new Grouped(start, order, courseIds, teacherIds, grades, epochDays, comments);
+    }
+
+    private String render(Format format, Student student, Grouped grouped, int index) {
+        List<Line> lines = lines(student, grouped, index);
+        return format == Format.TEXT ? renderText(student, lines) : renderJson(student, lines);
+    }
+
+    // A later row for a course replaces the grade of an earlier one; the teachers of all of them are listed,
+    // and for courses without grades the teachers of the course
+    private List<Line> lines(Student student, Grouped grouped, int index) {
+        LinkedHashMap<Integer, Integer> latest = new LinkedHashMap<>();
+        LinkedHashMap<Integer, Set<Integer>> teachers = new LinkedHashMap<>();
+        for (int i = grouped.start()[index]; i < grouped.start()[index + 1]; i++) {
+            int position = grouped.order()[i];
+            int courseId = grouped.courseIds()[position];
+            latest.put(courseId, position);
+            teachers.computeIfAbsent(courseId, id -> new LinkedHashSet<>()).add(grouped.teacherIds()[position]);
+        }
+        Grade[] gradeValues = Grade.values();
+        List<Line> lines = new ArrayList<>();
+        latest.forEach((courseId, position) -> {
+            Course course = system.findCourse(courseId);
+            List<String> names = teachers.get(courseId).stream()
+                    .map(system::findTeacher)
+                    .map(teacher -> teacher == null ? "?" : teacher.getName())
+                    .toList();
+            lines.add(new Line(course == null ? "?" : course.getSubject(), gradeValues[grouped.grades()[position]],
+                    LocalDate.ofEpochDay(grouped.epochDays()[position]), grouped.comments()[position], names));
+        });
+        for (Course course : student.getCourses()) {
+            if (!latest.containsKey(course.getId())) {
+                lines.add(new Line(course.getSubject(), null, null, null, course.getTeachers().stream()
+                        .map(Teacher::getName)
+                        .sorted()
+                        .toList()));
+            }
+        }
+        lines.sort(Comparator.comparing(Line::subject));
+        return lines;
+    }
+
+    private static String renderText(Student student, List<Line> lines) {
+        StringBuilder out = new StringBuilder();
+        out.append("Transcript for ").append(student.getName()).append(System.lineSeparator());
+        out.append("Student id ").append(student.getId()).append(", class year ").append(student.getClassYear())
+                .append(System.lineSeparator()).append(System.lineSeparator());
+        if (lines.isEmpty()) {
+            out.append("No courses.").append(System.lineSeparator());
+        } else {
+            TABLE.print(out, lines);
+        }
+        return out.toString();
+    }
+
+    private static String renderJson(Student student, List<Line> lines) {
+        StringWriter text = new StringWriter();
+        try (JsonWriter out = new JsonWriter(text)) {
+            out.setSerializeNulls(false);
+            out.beginObject();
+            out.name("id").value(student.getId());
+            out.name("name").value(student.getName());
+            out.name("classYear").value(student.getClassYear());
+            out.name("courses").beginArray();
+            for (Line line : lines) {
+                out.beginObject();
+                out.name("subject").value(line.subject());
+                out.name("grade").value(line.grade() == null ? null : line.grade().name());
+                out.name("date").value(line.date() == null ? null : line.date().toString());
+                out.name("comment").value(line.comment());
+                out.name("teachers").beginArray();
+                for (String teacher : line.teachers()) {
+                    out.value(teacher);
+                }
+                out.endArray();
+                out.endObject();
+            }
+            out.endArray();
+            out.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+
+    private static Properties readState(Path directory) throws IOException {
+        Properties state = new Properties();
+        Path file = directory.resolve(STATE_FILE);
+        if (Files.exists(file)) {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                state.load(in);
+            }
+        }
+        return state;
+    }
+
+    private static void writeState(Path directory, Properties state) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(directory.resolve(STATE_FILE), StandardCharsets.UTF_8)) {
+            state.store(out, "Fingerprints of the transcripts written by the last run of each format, by student id");
+        }
+    }
+}
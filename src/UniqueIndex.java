@@ -0,0 +1,73 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+// Hash index over a unique key of an entity, such as the security number of a student.
+// Entities whose key is indexed hold a reference to the index and call rekey() from their setters,
+// so a key can't be changed to one another entity already has and lookups keep finding the entity.
+public class UniqueIndex<T> {
+    private final Function<T, String> key;
+    private final UnaryOperator<String> normalize;
+    private final Function<String, RuntimeException> duplicate;
+    private final ConcurrentHashMap<String, T> entries = new ConcurrentHashMap<>();
+
+    // normalize maps keys that mean the same to one, duplicate makes the exception for a key that is taken
+    public UniqueIndex(Function<T, String> key, UnaryOperator<String> normalize, Function<String, RuntimeException> duplicate) {
+        this.key = key;
+        this.normalize = normalize;
+        this.duplicate = duplicate;
+    }
+
+    public T get(String key) {
+        return key == null ? null : entries.get(normalize.apply(key));
+    }
+
+    public boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    // The key as this index compares it
+    public String normalize(String key) {
+        return normalize.apply(key);
+    }
+
+    // Returns false if another entity already has the key
+    public boolean add(T entity) {
+        T existing = entries.putIfAbsent(normalize.apply(key.apply(entity)), entity);
+        return existing == null || existing == entity;
+    }
+
+    // Throws the duplicate exception if another entity already has the key
+    public void addOrThrow(T entity) {
+        if (!add(entity)) {
+            throw duplicate.apply(key.apply(entity));
+        }
+    }
+
+    public void remove(T entity) {
+        entries.remove(normalize.apply(key.apply(entity)), entity);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Called by the entity before its key changes. Entities that are not in this index, like those of a replaced
+    // model or of a snapshot copy, are left alone. The caller holds the entity's lock.
+    @SuppressWarnings("unchecked")
+    void rekey(Object entity, String oldKey, String newKey) {
+        String oldNormalized = normalize.apply(oldKey);
+        String newNormalized = normalize.apply(newKey);
+        if (oldNormalized.equals(newNormalized) || entries.get(oldNormalized) != entity) {
+            return;
+        }
+        if (entries.putIfAbsent(newNormalized, (T) entity) != null) {
+            throw duplicate.apply(newKey);
+        }
+        entries.remove(oldNormalized, entity);
+    }
+}
@@ -0,0 +1,10 @@
+import java.io.UncheckedIOException;
+
+// A change was applied to the model, but its record couldn't be written to the mutation log. The change stays,
+// and a snapshot is saved to get it on disk; a crash before that loses it.
+public class UnloggedChange extends UncheckedIOException {
+    public UnloggedChange(UncheckedIOException cause) {
+        super("Change applied but not logged: " + cause.getMessage() + ". A snapshot is being saved to keep it.",
+                cause.getCause());
+    }
+}
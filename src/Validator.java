@@ -1,50 +1,154 @@
-import java.util.ArrayList;
-import java.util.regex.Pattern;
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
+// The check* methods return the problems found as a bit set of ValidationError codes, VALID (0) when there are none.
+// They allocate nothing, messages are only built by describe() for data that failed.
+// The validate* methods are the message based API the menus use.
 public class Validator {
-    public static String validatePersonalData(String name, String securityNumber, String email, int year) {
-        ArrayList<String> errors = new ArrayList<>() {
-            @Override
-            public boolean add(String s) {
-                return !s.isBlank() && super.add(s);
-            }
-        };
-        // validate name
+    public static final int VALID = 0;
+
+    public enum ValidationError {
+        BLANK_NAME("blank name"),
+        EMPTY_SECURITY_NUMBER("empty security number"),
+        SECURITY_NUMBER_LENGTH("security number length must be 10 or 12 digits"),
+        SECURITY_NUMBER_NOT_DIGITS("security number must have decimal digits only"),
+        SECURITY_NUMBER_CHECKSUM("security number check digit does not match"),
+        EMPTY_EMAIL("empty email"),
+        EMAIL_FORMAT("email is not in the format <address>@<domain>.<ext>"),
+        YEAR_NOT_POSITIVE("year must be positive");
+
+        private static final ValidationError[] VALUES = values();
+
+        private final String message;
+
+        ValidationError(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public int bit() {
+            return 1 << ordinal();
+        }
+
+        public boolean isIn(int errors) {
+            return (errors & bit()) != 0;
+        }
+    }
+
+    public static int checkPersonalData(String name, String securityNumber, String email, int year) {
+        int errors = VALID;
         if (name.isBlank()) {
-            errors.add("blank name");
+            errors |= ValidationError.BLANK_NAME.bit();
         }
-        // validate security number
-        errors.add(validateSecurityNumber(securityNumber));
-        // validate email
-        errors.add(validateEmail(email));
-        // validate year
+        errors |= checkSecurityNumber(securityNumber);
+        errors |= checkEmail(email);
         if (year <= 0) {
-            errors.add("year must be positive");
+            errors |= ValidationError.YEAR_NOT_POSITIVE.bit();
         }
-        return Capitalize(String.join(", ", errors));
+        return errors;
     }
 
-    public static String validateEmail(String email) {
+    // Checks a batch of records, returning the errors of each in iteration order
+    public static <T> int[] validateAll(Collection<T> records, Function<T, String> name, Function<T, String> securityNumber,
+                                        Function<T, String> email, ToIntFunction<T> year) {
+        int[] results = new int[records.size()];
+        int i = 0;
+        for (T record : records) {
+            results[i++] = checkPersonalData(name.apply(record), securityNumber.apply(record), email.apply(record),
+                    year.applyAsInt(record));
+        }
+        return results;
+    }
+
+    public static int checkEmail(String email) {
         if (email.isBlank()) {
-            return "empty email";
-        } else if(!email.contains("@") || !email.contains(".")) {
-            return "email is not in the format <address>@<domain>.<ext>";
+            return ValidationError.EMPTY_EMAIL.bit();
+        } else if (email.indexOf('@') < 0 || email.indexOf('.') < 0) {
+            return ValidationError.EMAIL_FORMAT.bit();
+        }
+        return VALID;
+    }
+
+    // Swedish personnummer, YYMMDDNNNC or YYYYMMDDNNNC, where C is the Luhn check digit of the last ten digits
+    public static int checkSecurityNumber(String securityNumber) {
+        if (securityNumber.isBlank()) {
+            return ValidationError.EMPTY_SECURITY_NUMBER.bit();
         }
-        return "";
+        int length = securityNumber.length();
+        if (length != 10 && length != 12) {
+            return ValidationError.SECURITY_NUMBER_LENGTH.bit();
+        }
+        for (int i = 0; i < length; i++) {
+            char c = securityNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return ValidationError.SECURITY_NUMBER_NOT_DIGITS.bit();
+            }
+        }
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            int digit = securityNumber.charAt(length - 10 + i) - '0';
+            // Every other digit is doubled, starting with the first of the ten
+            if ((i & 1) == 0) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return sum % 10 == 0 ? VALID : ValidationError.SECURITY_NUMBER_CHECKSUM.bit();
+    }
+
+    // Messages of the errors joined into a sentence, "" for VALID
+    public static String describe(int errors) {
+        if (errors == VALID) {
+            return "";
+        }
+        StringBuilder description = new StringBuilder();
+        for (ValidationError error : ValidationError.VALUES) {
+            if (error.isIn(errors)) {
+                description.append(description.isEmpty() ? "" : ", ").append(error.getMessage());
+            }
+        }
+        if (!description.isEmpty()) {
+            description.setCharAt(0, Character.toUpperCase(description.charAt(0)));
+        }
+        return description.toString();
     }
 
+    public static String validatePersonalData(String name, String securityNumber, String email, int year) {
+        return describe(checkPersonalData(name, securityNumber, email, year));
+    }
+
+    public static String validateEmail(String email) {
+        return message(checkEmail(email));
+    }
+
+    // The string itself when it is blank or starts upper case already, otherwise one copy with the first char changed
     public static String Capitalize(String string) {
-        return string.isBlank() ? string : string.substring(0, 1).toUpperCase() + string.substring(1);
+        if (string.isBlank()) {
+            return string;
+        }
+        char first = string.charAt(0);
+        char upper = Character.toUpperCase(first);
+        if (first == upper) {
+            return string;
+        }
+        char[] chars = string.toCharArray();
+        chars[0] = upper;
+        return new String(chars);
     }
 
     public static String validateSecurityNumber(String securityNumber) {
-        if (securityNumber.isBlank()) {
-            return "empty security number";
-        } else if (securityNumber.length() != 10 && securityNumber.length() != 12) {
-            return "security number length must be 10 or 12 digits";
-        } else if (!Pattern.compile("\\d+").matcher(securityNumber).matches()) {
-            return "security number must have decimal digits only";
-        }
-        return "";
+        return message(checkSecurityNumber(securityNumber));
+    }
+
+    // Message of a single error, lower case like the validate* methods always returned
+    private static String message(int error) {
+        return error == VALID ? "" : ValidationError.VALUES[Integer.numberOfTrailingZeros(error)].getMessage();
     }
 }
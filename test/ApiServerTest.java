@@ -0,0 +1,103 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives the API through a localhost client, as other programs use it
+class ApiServerTest {
+    private final SchoolSystem system = SchoolSystem.getInstance();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ApiServer server;
+
+    private record Response(int status, JsonObject body) {}
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new ApiServer(system, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    void addsPeopleAndCoursesAndEnrolls() throws Exception {
+        String securityNumber = TestData.uniqueSecurityNumber();
+        String student = "{\"name\":\"Api Anna\",\"securityNumber\":\"" + securityNumber + "\",\"email\":\"api."
+                + securityNumber + "@x.se\",\"classYear\":2}";
+        Response created = send("POST", "/students", student);
+        assertEquals(201, created.status());
+        assertEquals("Api Anna", created.body().get("name").getAsString());
+        int studentId = created.body().get("id").getAsInt();
+
+        Response duplicate = send("POST", "/students", student.replace("api.", "other."));
+        assertEquals(409, duplicate.status());
+        assertTrue(duplicate.body().get("error").getAsString().contains(securityNumber));
+        assertEquals(400, send("POST", "/students", "{\"name\":\"Api Bo\"}").status());
+        assertEquals(400, send("POST", "/students", "not json").status());
+
+        String subject = "Api course " + securityNumber;
+        Response course = send("POST", "/courses", "{\"subject\":\"" + subject + "\"}");
+        assertEquals(201, course.status());
+        int courseId = course.body().get("id").getAsInt();
+        assertEquals(409, send("POST", "/courses", "{\"subject\":\"" + subject.toUpperCase() + "\"}").status());
+
+        String enrollment = "{\"role\":\"STUDENT\",\"person\":" + studentId + ",\"course\":" + courseId + "}";
+        Response enrolled = send("POST", "/enrollments", enrollment);
+        assertEquals(200, enrolled.status());
+        assertEquals("enrolled", enrolled.body().get("status").getAsString());
+        assertEquals(409, send("POST", "/enrollments", enrollment).status());
+
+        Response details = send("GET", "/courses/" + courseId, null);
+        assertEquals(200, details.status());
+        assertEquals(subject, details.body().get("subject").getAsString());
+        assertEquals(studentId, details.body().getAsJsonArray("students").get(0).getAsJsonObject().get("id").getAsInt());
+        assertEquals(1, details.body().get("seatsTaken").getAsInt());
+
+        assertEquals(400, send("PUT", "/courses/" + courseId, "{\"capacity\":-1}").status());
+        assertEquals(404, send("GET", "/courses/" + Integer.MAX_VALUE, null).status());
+        assertEquals(404, send("GET", "/students/1", null).status());
+        assertEquals(400, send("GET", "/grades?limit=0", null).status());
+        assertEquals(405, send("GET", "/save", null).status());
+    }
+
+    @Test
+    void failedSaveIsAnError() throws Exception {
+        Path dataFile = Path.of(System.getProperty("school.dataFile"));
+        Files.createDirectories(dataFile.getParent());
+        // A directory where the temporary file goes makes the write fail
+        Path blocker = dataFile.resolveSibling(dataFile.getFileName() + ".tmp");
+        Files.createDirectories(blocker);
+        try {
+            Response failed = send("POST", "/save", "");
+            assertEquals(500, failed.status());
+            assertTrue(failed.body().get("error").getAsString().startsWith("Error saving"));
+        } finally {
+            Files.delete(blocker);
+        }
+        assertEquals(200, send("POST", "/save", "").status());
+        assertTrue(Files.exists(dataFile));
+    }
+
+    private Response send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        return new Response(response.statusCode(), JsonParser.parseString(response.body()).getAsJsonObject());
+    }
+}
@@ -0,0 +1,62 @@
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// A damaged binary snapshot fails to read with IOException, whatever part of it is damaged
+class BinaryStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void truncatedFileIsAnIOException() throws IOException {
+        byte[] bytes = snapshot();
+        Path damaged = directory.resolve("damaged.bin");
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(damaged, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> BinaryStore.read(damaged), "cut at " + length);
+        }
+    }
+
+    @Test
+    void damagedBytesAreReadOrAnIOException() throws IOException {
+        byte[] bytes = snapshot();
+        Path damaged = directory.resolve("damaged.bin");
+        for (int at = 0; at < bytes.length; at++) {
+            byte[] copy = bytes.clone();
+            copy[at] = (byte) 0xFF;
+            Files.write(damaged, copy);
+            try {
+                BinaryStore.read(damaged);
+            } catch (IOException | JsonParseException e) {
+                // Unknown ids are reported by the reference resolver
+            }
+        }
+    }
+
+    private byte[] snapshot() throws IOException {
+        Course math = new Course("Math");
+        math.setId(1);
+        Student anna = new Student("Anna", "0001010008", "anna@school.se", 2);
+        anna.setId(2);
+        Teacher carl = new Teacher("Carl", "7001010009", "carl@school.se", 10);
+        carl.setId(3);
+        anna.assignCourse(math);
+        carl.assignCourse(math);
+        JournalStore journal = new JournalStore();
+        journal.append(new JournalEntry(math, carl, anna, Grade.A, "Well done", LocalDate.of(2024, 5, 1)));
+        Path file = directory.resolve("data.bin");
+        BinaryStore.write(file, new SchoolData(Set.of(math), Set.of(anna), Set.of(carl), journal, 3, 0));
+        assertEquals(1, BinaryStore.read(file).journal().size());
+        return Files.readAllBytes(file);
+    }
+}
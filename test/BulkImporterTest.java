@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkImporterTest {
+    private final SchoolSystem system = SchoolSystem.getInstance();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyEnrollmentRowIsImportedOrRejected() throws IOException {
+        Course course = system.createCourse("Import full course");
+        system.setCapacity(course, 1);
+        Student first = TestData.student("Import First");
+        Student second = TestData.student("Import Second");
+        Student waiting = TestData.student("Import Waiting");
+        system.assignCourse(TestData.student("Import Seated"), course);
+        system.assignCourse(waiting, course);
+        assertTrue(waiting.isWaitingFor(course));
+
+        Path file = directory.resolve("enrollments.csv");
+        Files.write(file, List.of("role,securityNumber,subject",
+                "STUDENT," + first.getSecurityNumber() + "," + course.getSubject(),
+                "STUDENT," + second.getSecurityNumber() + "," + course.getSubject(),
+                "STUDENT," + second.getSecurityNumber() + "," + course.getSubject(),
+                "STUDENT," + waiting.getSecurityNumber() + "," + course.getSubject()));
+        BulkImporter.Report report = new BulkImporter(system).importFile(file);
+
+        assertEquals(4, report.rows());
+        assertEquals(2, report.imported());
+        assertEquals(2, report.waitlisted());
+        assertEquals(List.of(4L, 5L), report.errors().stream().map(BulkImporter.RowError::line).toList());
+        assertEquals(List.of(waiting, first, second), course.getWaitlist());
+    }
+
+    @Test
+    void importBatchReportsWhatItLeftOut() {
+        Course course = system.createCourse("Import batch course");
+        Student student = TestData.student("Import Batch");
+        system.assignCourse(student, course);
+        Course taken = new Course(" import BATCH course");
+        SchoolSystem.Enrollment again = new SchoolSystem.Enrollment(student, course);
+
+        SchoolSystem.ImportResult result = system.importBatch(List.of(taken), List.of(), List.of(), List.of(again));
+
+        assertEquals(0, result.added());
+        assertEquals(2, result.rejected().size());
+        assertTrue(result.rejected().containsKey(taken));
+        assertTrue(result.rejected().get(again).contains("already in"));
+    }
+}
@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Thousands of students enroll in a small course at once: nobody gets a seat beyond the capacity, everybody
+// is either in the course or on its waitlist, and freed seats go to the waitlist in order
+class EnrollmentConcurrencyTest {
+    private static final int CAPACITY = 10;
+    private static final int ENROLLERS = 2000;
+
+    private final SchoolSystem system = SchoolSystem.getInstance();
+
+    @Test
+    @Timeout(120)
+    void enrollersNeverTakeMoreSeatsThanTheCapacity() throws InterruptedException {
+        Course course = system.createCourse("Concurrent enrollment");
+        system.setCapacity(course, CAPACITY);
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < ENROLLERS; i++) {
+            students.add(TestData.student("Enroller " + i));
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger changed = new AtomicInteger();
+        AtomicInteger overbooked = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (Student student : students) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (system.assignCourse(student, course)) {
+                    changed.incrementAndGet();
+                }
+                if (course.getSeatsTaken() > CAPACITY) {
+                    overbooked.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        // Watches the seats while the enrollers run
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread watcher = new Thread(() -> {
+            while (running.get()) {
+                if (course.getSeatsTaken() > CAPACITY || course.getStudents().size() > CAPACITY) {
+                    overbooked.incrementAndGet();
+                }
+            }
+        });
+        watcher.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        running.set(false);
+        watcher.join();
+
+        assertEquals(0, overbooked.get());
+        assertEquals(ENROLLERS, changed.get());
+        assertEquals(CAPACITY, course.getSeatsTaken());
+        assertEquals(CAPACITY, course.getStudents().size());
+        List<Student> waitlist = course.getWaitlist();
+        assertEquals(ENROLLERS, course.getStudents().size() + waitlist.size());
+        for (Student student : students) {
+            assertNotEquals(course.getStudents().contains(student), student.isWaitingFor(course), student.getName());
+        }
+        assertTicketOrder(course, waitlist);
+
+        // Every freed seat goes to the first in line
+        List<Student> enrolled = new ArrayList<>(course.getStudents());
+        for (int i = 0; i < enrolled.size(); i++) {
+            assertTrue(system.removeCourse(enrolled.get(i), course));
+            Student next = waitlist.get(i);
+            assertTrue(course.getStudents().contains(next), "seat " + i + " went to another than " + next.getName());
+            assertFalse(next.isWaitingFor(course));
+            assertEquals(CAPACITY, course.getSeatsTaken());
+        }
+        assertEquals(waitlist.subList(CAPACITY, waitlist.size()), course.getWaitlist());
+    }
+
+    private static void assertTicketOrder(Course course, List<Student> waitlist) {
+        long last = Long.MIN_VALUE;
+        for (Student student : waitlist) {
+            Map<Course, Long> tickets = student.getWaitlistTickets();
+            long ticket = tickets.get(course);
+            assertTrue(ticket > last, "waitlist out of ticket order at " + student.getName());
+            last = ticket;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JournalIndexTest {
+    @Test
+    void historyFollowsTheRowsOfOneStudentAndCourse() {
+        Course math = course(1, "Math");
+        Course art = course(2, "Art");
+        Teacher teacher = new Teacher("Carl", "7001010009", "carl@school.se", 10);
+        teacher.setId(3);
+        Student anna = new Student("Anna", "0001010008", "anna@school.se", 2);
+        anna.setId(4);
+        Student bob = new Student("Bob", "0002020006", "bob@school.se", 2);
+        bob.setId(5);
+
+        JournalStore journal = new JournalStore();
+        JournalIndex index = new JournalIndex(journal);
+        List<Object[]> rows = List.of(new Object[]{math, anna, Grade.C}, new Object[]{art, anna, Grade.A},
+                new Object[]{math, bob, Grade.F}, new Object[]{math, anna, Grade.B}, new Object[]{math, anna, Grade.A});
+        for (Object[] row : rows) {
+            index.add(journal.append(new JournalEntry((Course) row[0], teacher, (Student) row[1], (Grade) row[2], null,
+                    LocalDate.of(2025, 9, 1))));
+        }
+
+        assertEquals(List.of(Grade.C, Grade.B, Grade.A),
+                index.history(anna, math).stream().map(JournalEntry::getGrade).toList());
+        assertEquals(4, index.latestRow(anna, math));
+        assertEquals(List.of(Grade.F), index.history(bob, math).stream().map(JournalEntry::getGrade).toList());
+        assertEquals(List.of(), index.history(bob, art));
+        assertNull(index.latest(bob, art));
+    }
+
+    private static Course course(int id, String subject) {
+        Course course = new Course(subject);
+        course.setId(id);
+        return course;
+    }
+}
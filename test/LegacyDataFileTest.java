@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Data files saved before entities had ids: people come before courses, and enrollments and journal entries
+// hold whole copies of the courses and people they refer to
+class LegacyDataFileTest {
+    private static final String LEGACY_FILE = """
+            {
+              "students": [
+                {
+                  "classYear": 2,
+                  "name": "Anna",
+                  "securityNumber": "0001010008",
+                  "email": "anna@school.se",
+                  "courses": [{"subject": "Math"}, {"subject": "History"}]
+                },
+                {
+                  "classYear": 3,
+                  "name": "Bob",
+                  "securityNumber": "0545345",
+                  "email": "bob@school.se",
+                  "courses": []
+                }
+              ],
+              "teachers": [
+                {
+                  "experienceYear": 10,
+                  "name": "Carl",
+                  "securityNumber": "7001010009",
+                  "email": "carl@school.se",
+                  "courses": [{"subject": "Math"}]
+                }
+              ],
+              "courses": [{"subject": "Math"}, {"subject": "History"}, {"subject": "Art"}],
+              "journal": [
+                {
+                  "course": {"subject": "Math"},
+                  "grade": "A",
+                  "gradeComment": "Well done",
+                  "date": "2024-05-01",
+                  "teacher": {"experienceYear": 10, "name": "Carl", "securityNumber": "7001010009",
+                              "email": "carl@school.se", "courses": [{"subject": "Math"}]},
+                  "student": {"classYear": 2, "name": "Anna", "securityNumber": "0001010008",
+                              "email": "anna@school.se", "courses": [{"subject": "Math"}, {"subject": "History"}]}
+                }
+              ]
+            }
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsLegacyFileWithIdsAndSharedReferences() throws IOException {
+        Path file = directory.resolve("data.txt");
+        Files.writeString(file, LEGACY_FILE);
+
+        SchoolData data = JsonStore.read(file);
+
+        assertEquals(3, data.courses().size());
+        assertEquals(2, data.students().size());
+        assertEquals(1, data.teachers().size());
+        assertUniqueIds(data);
+        Course math = course(data, "Math");
+        Student anna = student(data, "0001010008");
+        Teacher carl = data.teachers().iterator().next();
+        assertEquals(Set.of(math, course(data, "History")), anna.getCourses());
+        assertTrue(math.getStudents().contains(anna));
+        assertTrue(math.getTeachers().contains(carl));
+
+        JournalEntry entry = data.journal().get(0);
+        assertSame(math, entry.getCourse());
+        assertSame(anna, entry.getStudent());
+        assertSame(carl, entry.getTeacher());
+        assertEquals(Grade.A, entry.getGrade());
+        assertEquals("Well done", entry.getGradeComment());
+    }
+
+    @Test
+    void legacyFileIsSavedWithIds() throws IOException {
+        Path file = directory.resolve("data.txt");
+        Files.writeString(file, LEGACY_FILE);
+        SchoolData legacy = JsonStore.read(file);
+
+        Path saved = directory.resolve("saved.json");
+        JsonStore.write(saved, legacy, false);
+        SchoolData data = JsonStore.read(saved);
+
+        assertEquals(legacy.maxId(), data.maxId());
+        assertEquals(course(legacy, "Math").getId(), course(data, "Math").getId());
+        assertEquals(student(legacy, "0001010008").getId(), student(data, "0001010008").getId());
+        assertSame(course(data, "Math"), data.journal().get(0).getCourse());
+        assertEquals(2, student(data, "0001010008").getCourses().size());
+    }
+
+    private static void assertUniqueIds(SchoolData data) {
+        Set<Integer> ids = new HashSet<>();
+        List.of(data.courses(), data.students(), data.teachers()).forEach(entities -> entities.forEach(entity -> {
+            int id = entity instanceof Course course ? course.getId() : ((Person) entity).getId();
+            assertTrue(id > 0 && id <= data.maxId(), "id " + id);
+            assertTrue(ids.add(id), "duplicate id " + id);
+        }));
+    }
+
+    private static Course course(SchoolData data, String subject) {
+        return data.courses().stream().filter(c -> c.getSubject().equals(subject)).findFirst().orElseThrow();
+    }
+
+    private static Student student(SchoolData data, String securityNumber) {
+        return data.students().stream().filter(s -> s.getSecurityNumber().equals(securityNumber)).findFirst().orElseThrow();
+    }
+}
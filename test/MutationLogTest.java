@@ -0,0 +1,65 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MutationLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void cutsOffTornLastLine() throws IOException {
+        Path file = directory.resolve("data.log");
+        Files.writeString(file, "{\"op\":\"a\",\"seq\":1}\n{\"op\":\"b\",\"seq\":2}\n{\"op\":\"c\",\"se");
+
+        List<JsonObject> records = new ArrayList<>();
+        MutationLog.Recovery recovery = MutationLog.replay(file, 0, records::add);
+        assertEquals(2, records.size());
+        assertEquals(2, recovery.lastSequence());
+
+        JsonObject next = new JsonObject();
+        next.addProperty("op", "d");
+        try (MutationLog log = MutationLog.open(file, recovery)) {
+            log.append(next);
+        }
+        records.clear();
+        MutationLog.replay(file, 0, records::add);
+        assertEquals(List.of("a", "b", "d"), records.stream().map(record -> record.get("op").getAsString()).toList());
+    }
+
+    @Test
+    void damagedLastCompleteLineIsCutOff() throws IOException {
+        Path file = directory.resolve("data.log");
+        Files.writeString(file, "{\"op\":\"a\",\"seq\":1}\n{\"op\":\n");
+
+        MutationLog.Recovery recovery = MutationLog.replay(file, 0, record -> {});
+        assertEquals("{\"op\":\"a\",\"seq\":1}\n".length(), recovery.validLength());
+    }
+
+    @Test
+    void damagedRecordInTheMiddleFailsInsteadOfDroppingTheRest() throws IOException {
+        Path file = directory.resolve("data.log");
+        String log = "{\"op\":\"a\",\"seq\":1}\n{\"op\":\"b\"\n{\"op\":\"c\",\"seq\":3}\n";
+        Files.writeString(file, log);
+
+        assertThrows(JsonParseException.class, () -> MutationLog.replay(file, 0, record -> {}));
+        assertEquals(log, Files.readString(file));
+    }
+
+    @Test
+    void recordWithoutSequenceNumberIsDamaged() throws IOException {
+        Path file = directory.resolve("data.log");
+        Files.writeString(file, "{\"op\":\"a\"}\n{\"op\":\"b\",\"seq\":2}\n");
+
+        assertThrows(JsonParseException.class, () -> MutationLog.replay(file, 0, record -> {}));
+    }
+}
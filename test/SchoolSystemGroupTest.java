@@ -0,0 +1,72 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A group whose actions throw part way leaves the school as it was before the group
+class SchoolSystemGroupTest {
+    private final SchoolSystem system = SchoolSystem.getInstance();
+
+    @Test
+    void emailTakenInTheSameGroupUndoesTheGroup() {
+        String first = TestData.uniqueSecurityNumber();
+        String second = TestData.uniqueSecurityNumber();
+
+        assertThrows(DuplicatePersonalData.class, () -> system.group(() -> {
+            system.createStudent("Anna", first, "anna." + first + "@x.se", 1);
+            system.createStudent("Anna", second, "ANNA." + first + "@x.se", 1);
+        }));
+
+        assertNull(system.findStudentBySecurityNumber(first));
+        assertNull(system.findStudentByEmail("anna." + first + "@x.se"));
+        assertNotNull(system.createStudent("Anna", first, "anna." + first + "@x.se", 1));
+    }
+
+    @Test
+    void failedGroupLeavesNoPartOfItBehind() {
+        Course course = system.createCourse("Group full course");
+        system.setCapacity(course, 1);
+        Teacher teacher = TestData.teacher("Group Teacher");
+        Student seated = TestData.student("Group Seated");
+        Student waiting = TestData.student("Group Waiting");
+        Student last = TestData.student("Group Last");
+        system.assignCourse(teacher, course);
+        system.assignCourse(seated, course);
+        system.assignCourse(waiting, course);
+        system.assignCourse(last, course);
+        int journalRows = system.getJournal().size();
+        long version = system.getVersion();
+        String subject = "Group new course " + TestData.uniqueSecurityNumber();
+        AtomicReference<Student> added = new AtomicReference<>();
+
+        assertThrows(IllegalStateException.class, () -> system.group(() -> {
+            Course newCourse = system.createCourse(subject);
+            added.set(TestData.student("Group Added"));
+            system.assignCourse(added.get(), newCourse);
+            system.addJournalEntry(new JournalEntry(course, teacher, seated, Grade.A, "undone", LocalDate.now()));
+            // Gives the seat to the first in line, then takes the last off the waitlist
+            system.removeCourse(seated, course);
+            system.removeCourse(last, course);
+            system.setCapacity(course, 3);
+            throw new IllegalStateException("Failed part way");
+        }));
+
+        assertNull(system.findCourseBySubject(subject));
+        assertNull(system.findStudentBySecurityNumber(added.get().getSecurityNumber()));
+        assertEquals(journalRows, system.getJournal().size());
+        assertEquals(1, course.getCapacity());
+        assertEquals(Set.of(seated), course.getStudents());
+        assertEquals(1, course.getSeatsTaken());
+        assertEquals(List.of(waiting, last), course.getWaitlist());
+        assertTrue(seated.getCourses().contains(course));
+        assertTrue(system.getVersion() > version);
+    }
+}
@@ -0,0 +1,81 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ScriptRunnerTest {
+    private final SchoolSystem system = SchoolSystem.getInstance();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void groupWithEmailsDifferingInCaseIsNotApplied() throws IOException {
+        String subject = "Script course " + TestData.uniqueSecurityNumber();
+        String first = TestData.uniqueSecurityNumber();
+        String second = TestData.uniqueSecurityNumber();
+        ScriptRunner.Report report = run(
+                "begin",
+                "add-course," + subject,
+                "add-student,Anna," + first + ",anna." + first + "@x.se,1",
+                "add-student,Anna," + second + ",ANNA." + first + "@x.se,1",
+                "commit");
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), report.errors().stream().map(BulkImporter.RowError::line).toList());
+        assertNull(system.findCourseBySubject(subject));
+        assertNull(system.findStudentBySecurityNumber(first));
+        assertNull(system.findStudentBySecurityNumber(second));
+    }
+
+    @Test
+    void groupComparesSubjectsAndSecurityNumbersAsTheSchoolDoes() throws IOException {
+        String subject = "Script Mixed Case " + TestData.uniqueSecurityNumber();
+        Student student = TestData.student("Script Student");
+        ScriptRunner.Report report = run(
+                "begin",
+                "add-course," + subject,
+                "add-course," + subject.toLowerCase(),
+                "commit",
+                "begin",
+                "add-course," + subject,
+                "assign,student," + student.getSecurityNumber() + "," + subject,
+                "assign,student," + student.getSecurityNumber() + "," + subject.toUpperCase(),
+                "commit");
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L),
+                report.errors().stream().map(BulkImporter.RowError::line).toList());
+        assertEquals("student " + student.getSecurityNumber() + " is already in " + subject.toUpperCase()
+                + " or waiting for it", report.errors().get(7).message());
+        assertNull(system.findCourseBySubject(subject));
+    }
+
+    @Test
+    void groupWithoutErrorsIsApplied() throws IOException {
+        String subject = "Script applied " + TestData.uniqueSecurityNumber();
+        String securityNumber = TestData.uniqueSecurityNumber();
+        ScriptRunner.Report report = run(
+                "begin",
+                "add-course," + subject,
+                "add-student,Bo," + securityNumber + ",bo." + securityNumber + "@x.se,1",
+                "assign,student," + securityNumber + "," + subject.toUpperCase(),
+                "commit");
+
+        assertEquals(List.of(), report.errors());
+        Course course = system.findCourseBySubject(subject);
+        assertNotNull(course);
+        assertEquals(List.of(securityNumber), course.getStudents().stream().map(Student::getSecurityNumber).toList());
+    }
+
+    private ScriptRunner.Report run(String... lines) throws IOException {
+        Path file = directory.resolve("script.csv");
+        Files.write(file, List.of(lines));
+        return new ScriptRunner(system).run(file);
+    }
+}
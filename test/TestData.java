@@ -0,0 +1,34 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Unique valid personal data for people added by the tests, which all share SchoolSystem.getInstance()
+final class TestData {
+    private static final AtomicInteger NEXT = new AtomicInteger(1);
+
+    private TestData() {
+    }
+
+    static Student student(String name) {
+        int n = NEXT.getAndIncrement();
+        return SchoolSystem.getInstance().createStudent(name, securityNumber(n), "student" + n + "@test.se", 1);
+    }
+
+    static Teacher teacher(String name) {
+        int n = NEXT.getAndIncrement();
+        return SchoolSystem.getInstance().createTeacher(name, securityNumber(n), "teacher" + n + "@test.se", 1);
+    }
+
+    // Ten digits ending in the Luhn check digit, unique for each n
+    static String securityNumber(int n) {
+        String digits = String.format("%09d", n);
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            int digit = (digits.charAt(i) - '0') * (i % 2 == 0 ? 2 : 1);
+            sum += digit > 9 ? digit - 9 : digit;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    static String uniqueSecurityNumber() {
+        return securityNumber(NEXT.getAndIncrement());
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Incremental runs write the transcripts that changed in any way since the last run, and only those
+class TranscriptGeneratorTest {
+    private static final TranscriptGenerator.Format TEXT = TranscriptGenerator.Format.TEXT;
+
+    private final SchoolSystem system = SchoolSystem.getInstance();
+    private final TranscriptGenerator generator = new TranscriptGenerator(system);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void incrementalRunsWriteChangedTranscripts() throws IOException {
+        Student student = TestData.student("Transcript Student");
+        Course course = system.createCourse("Transcript subject");
+        assertTrue(system.assignCourse(student, course));
+        Path file = directory.resolve(student.getId() + ".txt");
+
+        int all = system.getStudents().size();
+        assertEquals(all, generator.writeFiles(directory, TEXT, true).written());
+        assertEquals(0, generator.writeFiles(directory, TEXT, true).written());
+
+        student.setName("Renamed Transcript Student");
+        assertEquals(1, generator.writeFiles(directory, TEXT, true).written());
+        assertTrue(Files.readString(file, StandardCharsets.UTF_8).contains("Renamed Transcript Student"));
+
+        course.setSubject("Renamed transcript subject");
+        assertEquals(1, generator.writeFiles(directory, TEXT, true).written());
+        assertTrue(Files.readString(file, StandardCharsets.UTF_8).contains("Renamed transcript subject"));
+
+        assertTrue(system.assignCourse(student, system.createCourse("Second transcript subject")));
+        assertEquals(1, generator.writeFiles(directory, TEXT, true).written());
+
+        Files.delete(file);
+        assertEquals(1, generator.writeFiles(directory, TEXT, true).written());
+        assertTrue(Files.exists(file));
+        assertEquals(all, generator.writeFiles(directory, TEXT, false).written());
+    }
+}
@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ValidatorTest {
+    private static final String VALID_NUMBER = "8112189876";
+
+    private record Person(String name, String securityNumber, String email, int year) {}
+
+    @Test
+    void securityNumbers() {
+        assertEquals(Validator.VALID, Validator.checkSecurityNumber(VALID_NUMBER));
+        assertEquals(Validator.VALID, Validator.checkSecurityNumber("19" + VALID_NUMBER));
+        assertEquals(bits(Validator.ValidationError.SECURITY_NUMBER_CHECKSUM), Validator.checkSecurityNumber("8112189875"));
+        assertEquals(bits(Validator.ValidationError.SECURITY_NUMBER_CHECKSUM),
+                Validator.checkSecurityNumber("198112189875"));
+        // Only the last ten digits count towards the check digit
+        assertEquals(Validator.VALID, Validator.checkSecurityNumber("20" + VALID_NUMBER));
+        assertEquals(bits(Validator.ValidationError.EMPTY_SECURITY_NUMBER), Validator.checkSecurityNumber(" "));
+        assertEquals(bits(Validator.ValidationError.SECURITY_NUMBER_LENGTH), Validator.checkSecurityNumber("811218987"));
+        assertEquals(bits(Validator.ValidationError.SECURITY_NUMBER_LENGTH), Validator.checkSecurityNumber("81121898760"));
+        // The hyphenated forms are not stored, the separator makes them the wrong length
+        assertEquals(bits(Validator.ValidationError.SECURITY_NUMBER_LENGTH), Validator.checkSecurityNumber("811218-9876"));
+        assertEquals(bits(Validator.ValidationError.SECURITY_NUMBER_LENGTH),
+                Validator.checkSecurityNumber("19811218-9876"));
+        assertEquals(bits(Validator.ValidationError.SECURITY_NUMBER_NOT_DIGITS),
+                Validator.checkSecurityNumber("811218-987"));
+        assertEquals(bits(Validator.ValidationError.SECURITY_NUMBER_NOT_DIGITS),
+                Validator.checkSecurityNumber("1981121-9876"));
+    }
+
+    @Test
+    void emails() {
+        assertEquals(Validator.VALID, Validator.checkEmail("anna@school.se"));
+        assertEquals(bits(Validator.ValidationError.EMPTY_EMAIL), Validator.checkEmail(""));
+        assertEquals(bits(Validator.ValidationError.EMAIL_FORMAT), Validator.checkEmail("anna.school.se"));
+        assertEquals(bits(Validator.ValidationError.EMAIL_FORMAT), Validator.checkEmail("anna@school"));
+    }
+
+    @Test
+    void personalDataCollectsEveryError() {
+        assertEquals(Validator.VALID, Validator.checkPersonalData("Anna", VALID_NUMBER, "anna@school.se", 1));
+        assertEquals(bits(Validator.ValidationError.YEAR_NOT_POSITIVE),
+                Validator.checkPersonalData("Anna", VALID_NUMBER, "anna@school.se", 0));
+        assertEquals(bits(Validator.ValidationError.YEAR_NOT_POSITIVE),
+                Validator.checkPersonalData("Anna", VALID_NUMBER, "anna@school.se", -3));
+        assertEquals(bits(Validator.ValidationError.BLANK_NAME, Validator.ValidationError.SECURITY_NUMBER_CHECKSUM,
+                        Validator.ValidationError.EMAIL_FORMAT, Validator.ValidationError.YEAR_NOT_POSITIVE),
+                Validator.checkPersonalData(" ", "8112189875", "anna", 0));
+        assertEquals("Blank name, security number check digit does not match, "
+                        + "email is not in the format <address>@<domain>.<ext>, year must be positive",
+                Validator.validatePersonalData(" ", "8112189875", "anna", 0));
+        assertEquals("security number length must be 10 or 12 digits", Validator.validateSecurityNumber("123"));
+        assertEquals("", Validator.validateEmail("anna@school.se"));
+    }
+
+    @Test
+    void validateAllKeepsTheOrderOfTheRecords() {
+        List<Person> people = List.of(
+                new Person("Anna", VALID_NUMBER, "anna@school.se", 1),
+                new Person("Bo", "8112189875", "bo@school.se", 2),
+                new Person("", "19" + VALID_NUMBER, "", 3),
+                new Person("Cecilia", "811218-9876", "cecilia@school.se", 0));
+        int[] errors = Validator.validateAll(people, Person::name, Person::securityNumber, Person::email, Person::year);
+        assertArrayEquals(new int[]{
+                Validator.VALID,
+                bits(Validator.ValidationError.SECURITY_NUMBER_CHECKSUM),
+                bits(Validator.ValidationError.BLANK_NAME, Validator.ValidationError.EMPTY_EMAIL),
+                bits(Validator.ValidationError.SECURITY_NUMBER_LENGTH, Validator.ValidationError.YEAR_NOT_POSITIVE)
+        }, errors);
+        assertArrayEquals(new int[0], Validator.validateAll(List.<Person>of(), Person::name, Person::securityNumber,
+                Person::email, Person::year));
+    }
+
+    @Test
+    void capitalizeReturnsTheStringWhenNothingChanges() {
+        String upper = "Already upper case";
+        assertSame(upper, Validator.Capitalize(upper));
+        String blank = "  ";
+        assertSame(blank, Validator.Capitalize(blank));
+        String digits = "1 digit first";
+        assertSame(digits, Validator.Capitalize(digits));
+    }
+
+    @Test
+    void capitalizeChangesOnlyTheFirstChar() {
+        assertEquals("Email is empty", Validator.Capitalize("email is empty"));
+        assertEquals("Å", Validator.Capitalize("å"));
+    }
+
+    @Test
+    void describeStartsUpperCase() {
+        String description = Validator.describe(Validator.checkPersonalData("Anna", "", "anna", 1));
+        assertEquals(Character.toUpperCase(description.charAt(0)), description.charAt(0));
+        assertEquals("", Validator.describe(Validator.VALID));
+    }
+
+    private static int bits(Validator.ValidationError... errors) {
+        int bits = Validator.VALID;
+        for (Validator.ValidationError error : errors) {
+            bits |= error.bit();
+        }
+        return bits;
+    }
+}